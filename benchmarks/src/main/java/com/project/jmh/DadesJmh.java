@@ -0,0 +1,92 @@
+package com.project.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.project.dao.ArrencadaHibernate;
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+
+/**
+ * Base de dades dels benchmarks, compartida per tots els fils.
+ *
+ * Amb url = "sqlite" es fa servir un fitxer data/jmh-<prestecs>.db, que es
+ * genera el primer cop amb GeneradorDades (llavor per defecte) i es
+ * reaprofita a les execucions següents; generar 10M de préstecs triga
+ * minuts. Qualsevol altre valor es pren com a URL JDBC (per exemple de
+ * MySQL), amb l'esquema ja creat.
+ *
+ * Amb cache = true s'activa la cache de segon nivell (entitats i claus
+ * naturals), per comparar les lectures amb cache i sense. Amb
+ * metriques = true s'activen les mètriques del Manager, per mesurar-ne el cost.
+ */
+@State(Scope.Benchmark)
+public class DadesJmh {
+    @Param({"10000"})
+    public int prestecs;
+
+    @Param({"sqlite"})
+    public String url;
+
+    @Param({"false"})
+    public boolean cache;
+
+    @Param({"false"})
+    public boolean metriques;
+
+    List<Long> exemplarsDisponibles;
+    List<Long> persones;
+    List<String> codisBarres;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        ArrencadaHibernate arrencada = new ArrencadaHibernate();
+        boolean generar = false;
+        if ("sqlite".equals(url)) {
+            Path fitxer = Paths.get("data", "jmh-" + prestecs + ".db");
+            generar = !Files.exists(fitxer);
+            arrencada.ambPropietat("hibernate.connection.url", "jdbc:sqlite:" + fitxer);
+        } else {
+            arrencada.ambPropietat("hibernate.connection.url", url);
+        }
+        arrencada.ambPropietat("hibernate.hbm2ddl.auto", generar ? "create" : "none");
+        if (cache) {
+            arrencada.ambCacheSegonNivell();
+        }
+        if (metriques) {
+            arrencada.ambMetriques(0);
+        }
+        Manager.createSessionFactory(arrencada);
+        if (generar) {
+            new GeneradorDades(prestecs).generar();
+        }
+
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            exemplarsDisponibles = session.createQuery(
+                "select e.exemplarId from Exemplar e where e.disponible = true order by e.exemplarId", Long.class)
+                .setMaxResults(10_000)
+                .list();
+            persones = session.createQuery("select p.personaId from Persona p order by p.personaId", Long.class)
+                .setMaxResults(10_000)
+                .list();
+            codisBarres = session.createQuery("select e.codiBarres from Exemplar e order by e.exemplarId", String.class)
+                .setMaxResults(10_000)
+                .list();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tancar() {
+        Manager.close();
+    }
+}
@@ -0,0 +1,180 @@
+package com.project.jmh;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/**
+ * Camins calents del Manager. Cada mètode es mesura en throughput i en
+ * temps per operació mostrejat (percentils p50, p90, p99...). Per veure
+ * també les assignacions de memòria cal afegir el perfilador de GC:
+ *
+ *   java -jar target/benchmarks.jar -prof gc -p prestecs=10000,1000000
+ *
+ * Els préstecs i retorns es fan sobre exemplars repartits entre els fils,
+ * de manera que amb -t N dos fils no competeixen pel mateix exemplar.
+ * Tots els mètodes reben DadesJmh, encara que no el facin servir, perquè
+ * JMH prepari la base de dades abans de la primera invocació.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ManagerBenchmark {
+
+    @State(Scope.Thread)
+    public static class Fil {
+        SplittableRandom random;
+        long seguentDni;
+
+        @Setup(Level.Trial)
+        public void preparar(ThreadParams fil) {
+            random = new SplittableRandom(fil.getThreadIndex());
+            seguentDni = (long) fil.getThreadIndex() << 40 | System.nanoTime() & 0xFFFFFFFFFFL;
+        }
+    }
+
+    /**
+     * Exemplars reservats per a aquest fil i el préstec en curs
+     */
+    public abstract static class Prestecs {
+        SplittableRandom random;
+        List<Long> exemplars;
+        List<Long> persones;
+        Prestec prestec;
+
+        @Setup(Level.Trial)
+        public void preparar(DadesJmh dades, ThreadParams fil) {
+            random = new SplittableRandom(fil.getThreadIndex());
+            exemplars = new ArrayList<>();
+            for (int i = fil.getThreadIndex(); i < dades.exemplarsDisponibles.size(); i += fil.getThreadCount()) {
+                exemplars.add(dades.exemplarsDisponibles.get(i));
+            }
+            persones = dades.persones;
+        }
+
+        /**
+         * Presta un exemplar i una persona desconnectats, només amb
+         * l'identificador, com els que arriben d'una petició
+         */
+        Prestec prestar() {
+            Exemplar exemplar = new Exemplar();
+            exemplar.setExemplarId(exemplars.get(random.nextInt(exemplars.size())));
+            Persona persona = new Persona();
+            persona.setPersonaId(persones.get(random.nextInt(persones.size())));
+            LocalDate avui = LocalDate.now();
+            prestec = Manager.ferPrestec(exemplar, persona, avui, avui.plusDays(15));
+            return prestec;
+        }
+    }
+
+    /**
+     * Per mesurar ferPrestec: després de cada invocació es retorna el préstec
+     */
+    @State(Scope.Thread)
+    public static class PerPrestar extends Prestecs {
+        @TearDown(Level.Invocation)
+        public void retornar() {
+            if (prestec != null) {
+                Manager.retornarPrestec(prestec, LocalDate.now());
+                prestec = null;
+            }
+        }
+    }
+
+    /**
+     * Per mesurar retornarPrestec: abans de cada invocació es fa un préstec
+     */
+    @State(Scope.Thread)
+    public static class PerRetornar extends Prestecs {
+        @Setup(Level.Invocation)
+        public void prestarAbans() {
+            prestar();
+        }
+    }
+
+    @Benchmark
+    public Persona save(Fil fil, DadesJmh dades) {
+        long dni = fil.seguentDni++;
+        return Manager.save(new Persona("B-" + dni, "Persona " + dni));
+    }
+
+    @Benchmark
+    public Prestec ferPrestec(PerPrestar estat) {
+        return estat.prestar();
+    }
+
+    @Benchmark
+    public Prestec retornarPrestec(PerRetornar estat) {
+        Prestec prestec = estat.prestec;
+        Manager.retornarPrestec(prestec, LocalDate.now());
+        estat.prestec = null;
+        return prestec;
+    }
+
+    @Benchmark
+    public List<Llibre> cercarLlibrePerTitol(Fil fil, DadesJmh dades) {
+        return Manager.cercarLlibrePerTitol(
+            GeneradorDades.PARAULES.get(fil.random.nextInt(GeneradorDades.PARAULES.size())));
+    }
+
+    @Benchmark
+    public List<Llibre> cercarLlibrePerAutor(Fil fil, DadesJmh dades) {
+        return Manager.cercarLlibrePerAutor(
+            GeneradorDades.COGNOMS.get(fil.random.nextInt(GeneradorDades.COGNOMS.size())));
+    }
+
+    /**
+     * Lectura d'un codi de barres al taulell de préstec
+     */
+    @Benchmark
+    public Exemplar getPerClauNatural(Fil fil, DadesJmh dades) {
+        return Manager.getPerClauNatural(Exemplar.class,
+            dades.codisBarres.get(fil.random.nextInt(dades.codisBarres.size())));
+    }
+
+    /**
+     * El mateix amb una consulta HQL, com a referència
+     */
+    @Benchmark
+    public Exemplar getPerCodiAmbConsulta(Fil fil, DadesJmh dades) {
+        String codi = dades.codisBarres.get(fil.random.nextInt(dades.codisBarres.size()));
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            return session.createQuery("from Exemplar e where e.codiBarres = :codi", Exemplar.class)
+                .setParameter("codi", codi)
+                .getSingleResult();
+        }
+    }
+
+    @Benchmark
+    public List<Prestec> getPrestecsRetardats(DadesJmh dades) {
+        return Manager.getPrestecsRetardats();
+    }
+
+    @Benchmark
+    public List<Exemplar> getExemplarsDisponibles(DadesJmh dades) {
+        return Manager.getExemplarsDisponibles();
+    }
+}
@@ -0,0 +1,167 @@
+package com.project.jmh;
+
+import com.project.domain.*;
+
+/**
+ * Còpia dels toString de les entitats d'abans de Descripcio (un
+ * String.format per camp i totes les col·leccions senceres), com a
+ * referència per a ToStringBenchmark. Només funciona amb les col·leccions
+ * carregades.
+ */
+final class ToStringAnterior {
+
+    private ToStringAnterior() {}
+
+    static String text(Object entitat) {
+        if (entitat instanceof Biblioteca biblioteca) return text(biblioteca);
+        if (entitat instanceof Llibre llibre) return text(llibre);
+        if (entitat instanceof Exemplar exemplar) return text(exemplar);
+        if (entitat instanceof Prestec prestec) return text(prestec);
+        if (entitat instanceof Persona persona) return text(persona);
+        if (entitat instanceof Autor autor) return text(autor);
+        throw new IllegalArgumentException("Entitat desconeguda: " + entitat.getClass());
+    }
+
+    static String text(Biblioteca biblioteca) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Biblioteca[id=%d, nom='%s', ciutat='%s'",
+            biblioteca.getBibliotecaId(), biblioteca.getNom(), biblioteca.getCiutat()));
+        if (biblioteca.getAdreca() != null) {
+            sb.append(String.format(", adreca='%s'", biblioteca.getAdreca()));
+        }
+        if (biblioteca.getTelefon() != null) {
+            sb.append(String.format(", tel='%s'", biblioteca.getTelefon()));
+        }
+        if (biblioteca.getEmail() != null) {
+            sb.append(String.format(", email='%s'", biblioteca.getEmail()));
+        }
+        if (!biblioteca.getExemplars().isEmpty()) {
+            sb.append(", exemplars={");
+            boolean first = true;
+            for (Exemplar e : biblioteca.getExemplars()) {
+                if (!first) sb.append(", ");
+                sb.append(e.getCodiBarres());
+                first = false;
+            }
+            sb.append("}");
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    static String text(Llibre llibre) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Llibre[id=%d, isbn='%s', titol='%s'",
+            llibre.getLlibreId(), llibre.getIsbn(), llibre.getTitol()));
+        if (llibre.getEditorial() != null) {
+            sb.append(String.format(", editorial='%s'", llibre.getEditorial()));
+        }
+        if (llibre.getAnyPublicacio() != null) {
+            sb.append(String.format(", any=%d", llibre.getAnyPublicacio()));
+        }
+        if (!llibre.getAutors().isEmpty()) {
+            sb.append(", autors={");
+            boolean first = true;
+            for (Autor a : llibre.getAutors()) {
+                if (!first) sb.append(", ");
+                sb.append(a.getNom());
+                first = false;
+            }
+            sb.append("}");
+        }
+        if (!llibre.getExemplars().isEmpty()) {
+            sb.append(", exemplars={");
+            boolean first = true;
+            for (Exemplar e : llibre.getExemplars()) {
+                if (!first) sb.append(", ");
+                sb.append(e.getCodiBarres());
+                first = false;
+            }
+            sb.append("}");
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    static String text(Exemplar exemplar) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Exemplar[id=%d, codi='%s', disponible=%s",
+            exemplar.getExemplarId(), exemplar.getCodiBarres(), exemplar.isDisponible()));
+        if (exemplar.getLlibre() != null) {
+            sb.append(String.format(", llibre='%s'", exemplar.getLlibre().getTitol()));
+        }
+        if (exemplar.getBiblioteca() != null) {
+            sb.append(String.format(", biblioteca='%s'", exemplar.getBiblioteca().getNom()));
+        }
+        if (!exemplar.getHistorialPrestecs().isEmpty()) {
+            long prestectsActius = exemplar.getHistorialPrestecs().stream()
+                .filter(p -> p.isActiu())
+                .count();
+            sb.append(String.format(", prestecs=%d (actius=%d)",
+                exemplar.getHistorialPrestecs().size(), prestectsActius));
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    static String text(Prestec prestec) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Prestec[id=%d", prestec.getPrestecId()));
+        if (prestec.getExemplar() != null) {
+            sb.append(String.format(", exemplar='%s'", prestec.getExemplar().getCodiBarres()));
+        }
+        if (prestec.getPersona() != null) {
+            sb.append(String.format(", persona='%s'", prestec.getPersona().getNom()));
+        }
+        sb.append(String.format(", dataPrestec='%s'", prestec.getDataPrestec()));
+        sb.append(String.format(", dataRetornPrevista='%s'", prestec.getDataRetornPrevista()));
+        if (prestec.getDataRetornReal() != null) {
+            sb.append(String.format(", dataRetornReal='%s'", prestec.getDataRetornReal()));
+        }
+        sb.append(String.format(", actiu=%s", prestec.isActiu()));
+        long diesRetard = prestec.getDiesRetard();
+        if (diesRetard > 0) {
+            sb.append(String.format(", diesRetard=%d", diesRetard));
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    static String text(Persona persona) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Persona[id=%d, dni='%s', nom='%s'",
+            persona.getPersonaId(), persona.getDni(), persona.getNom()));
+        if (persona.getTelefon() != null) {
+            sb.append(String.format(", tel='%s'", persona.getTelefon()));
+        }
+        if (persona.getEmail() != null) {
+            sb.append(String.format(", email='%s'", persona.getEmail()));
+        }
+        int prestecsActius = persona.getNumPrestecsActius();
+        if (prestecsActius > 0) {
+            sb.append(String.format(", prestecsActius=%d", prestecsActius));
+            if (persona.tePrestecsRetardats()) {
+                sb.append(" (amb retards)");
+            }
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    static String text(Autor autor) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Autor[id=%d, nom='%s'", autor.getAutorId(), autor.getNom()));
+        if (!autor.getLlibres().isEmpty()) {
+            sb.append(", llibres={");
+            boolean first = true;
+            for (Llibre ll : autor.getLlibres()) {
+                if (!first) sb.append(", ");
+                sb.append(String.format("'%s'", ll.getTitol()));
+                first = false;
+            }
+            sb.append("}");
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.project.jmh;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.project.domain.*;
+
+/**
+ * Ritme d'escriptura d'entitats en un log: el toString de 100.000 entitats
+ * de les sis classes barrejades, comparat amb la versió anterior basada en
+ * String.format (ToStringAnterior). Els resultats són per entitat. Les
+ * entitats es construeixen en memòria amb totes les col·leccions carregades,
+ * perquè la versió anterior no falli; no cal base de dades.
+ *
+ *   java -jar target/benchmarks.jar ToStringBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ToStringBenchmark {
+    static final int ENTITATS = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class Entitats {
+        List<Object> entitats;
+
+        @Setup(Level.Trial)
+        public void preparar() {
+            SplittableRandom random = new SplittableRandom(42);
+            LocalDate avui = LocalDate.now();
+            List<Biblioteca> biblioteques = new ArrayList<>();
+            for (int i = 1; i <= 50; i++) {
+                Biblioteca biblioteca = new Biblioteca("Biblioteca " + i, "Ciutat " + i % 10);
+                biblioteca.setBibliotecaId(i);
+                biblioteca.setTelefon("972000" + (100 + i));
+                biblioteques.add(biblioteca);
+            }
+            List<Autor> autors = new ArrayList<>();
+            for (int i = 1; i <= 5_000; i++) {
+                Autor autor = new Autor("Autor " + i);
+                autor.setAutorId(i);
+                autors.add(autor);
+            }
+            List<Persona> persones = new ArrayList<>();
+            for (int i = 1; i <= 5_000; i++) {
+                Persona persona = new Persona(String.format("%08dX", i), "Persona " + i);
+                persona.setPersonaId(i);
+                persona.setEmail("lector" + i + "@example.cat");
+                persones.add(persona);
+            }
+            List<Llibre> llibres = new ArrayList<>();
+            List<Exemplar> exemplars = new ArrayList<>();
+            List<Prestec> prestecs = new ArrayList<>();
+            for (int i = 1; llibres.size() < 20_000; i++) {
+                Llibre llibre = new Llibre(String.format("978%010d", i), "Títol del llibre " + i);
+                llibre.setLlibreId(i);
+                llibre.setEditorial("Editorial " + i % 100);
+                llibre.setAnyPublicacio(1950 + i % 70);
+                for (int a = 0; a < 1 + random.nextInt(2); a++) {
+                    llibre.addAutor(autors.get(random.nextInt(autors.size())));
+                }
+                for (int e = 0; e < 1 + random.nextInt(3); e++) {
+                    Exemplar exemplar = new Exemplar(String.format("EX%09d", exemplars.size()), llibre,
+                        biblioteques.get(random.nextInt(biblioteques.size())));
+                    exemplar.setExemplarId(exemplars.size() + 1);
+                    llibre.getExemplars().add(exemplar);
+                    exemplar.getBiblioteca().getExemplars().add(exemplar);
+                    exemplars.add(exemplar);
+
+                    LocalDate data = avui.minusDays(random.nextInt(60));
+                    Prestec prestec = new Prestec(exemplar, persones.get(random.nextInt(persones.size())),
+                        data, data.plusDays(15));
+                    prestec.setPrestecId(prestecs.size() + 1);
+                    if (random.nextInt(3) > 0) {
+                        prestec.setDataRetornReal(data.plusDays(random.nextInt(20)));
+                    }
+                    exemplar.getHistorialPrestecs().add(prestec);
+                    prestec.getPersona().getPrestecs().add(prestec);
+                    prestecs.add(prestec);
+                }
+                llibres.add(llibre);
+            }
+
+            entitats = new ArrayList<>(ENTITATS);
+            entitats.addAll(biblioteques);
+            entitats.addAll(autors);
+            entitats.addAll(persones);
+            entitats.addAll(llibres);
+            entitats.addAll(exemplars);
+            entitats.addAll(prestecs);
+            Collections.shuffle(entitats, new java.util.Random(42));
+            entitats = new ArrayList<>(entitats.subList(0, ENTITATS));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITATS)
+    public void toStringActual(Entitats dades, Blackhole blackhole) {
+        for (Object entitat : dades.entitats) {
+            blackhole.consume(entitat.toString());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITATS)
+    public void toStringAnterior(Entitats dades, Blackhole blackhole) {
+        for (Object entitat : dades.entitats) {
+            blackhole.consume(ToStringAnterior.text(entitat));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.project.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.hibernate.Session;
+
+import com.project.dao.CarregadorMassiu;
+import com.project.dao.Manager;
+import com.project.domain.Llibre;
+
+/*
+ * Compara la cerca amb LIKE '%text%' (recorregut complet de la taula) amb
+ * l'índex de text complet FTS5 sobre un catàleg sintètic de N títols.
+ *
+ * Ús: ./run.sh com.project.benchmark.BenchmarkCerca [numLlibres]
+ */
+
+public class BenchmarkCerca {
+    private static final String[] PARAULES = {
+        "amor", "soledad", "casa", "mar", "nit", "ciutat", "temps", "guerra", "pau", "jardí",
+        "història", "somni", "muntanya", "riu", "llum", "ombra", "viatge", "memòria", "foc", "vent",
+        "espíritus", "años", "camí", "silenci", "estrella", "hivern", "estiu", "secret", "illa", "bosc"
+    };
+    private static final String[] NOMS = {"Gabriel", "Isabel", "Mercè", "Joan", "Maria", "Pere", "Núria", "Jordi"};
+    private static final String[] COGNOMS = {"García", "Márquez", "Allende", "Rodoreda", "Martí", "Puig", "Solà", "Ferrer"};
+    private static final String[] CERQUES = {"soledad", "garcia marquez", "muntanya silenci", "espiritus", "hist"};
+
+    public static void main(String[] args) throws IOException {
+        int numLlibres = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        Manager.createSessionFactory();
+        try {
+            Path fitxer = Files.createTempFile("llibres", ".jsonl");
+            generar(fitxer, numLlibres);
+            System.out.println(new CarregadorMassiu(10_000).carregarLlibres(fitxer));
+            Files.delete(fitxer);
+
+            for (String cerca : CERQUES) {
+                // Escalfament
+                cercaLike(cerca);
+                Manager.cercarLlibres(cerca, 0, 20);
+
+                long inici = System.nanoTime();
+                int trobatsLike = cercaLike(cerca).size();
+                double msLike = (System.nanoTime() - inici) / 1_000_000.0;
+
+                inici = System.nanoTime();
+                int trobatsFts = Manager.cercarLlibres(cerca, 0, 20).size();
+                double msFts = (System.nanoTime() - inici) / 1_000_000.0;
+
+                System.out.printf("'%s': LIKE %.1f ms (%d), FTS5 %.1f ms (%d)%n",
+                    cerca, msLike, trobatsLike, msFts, trobatsFts);
+            }
+        } finally {
+            Manager.close();
+        }
+    }
+
+    /**
+     * Primera pàgina de 20 amb LIKE, com feia la cerca original (totes les paraules al títol o autor).
+     * S'ordena per títol perquè, igual que amb FTS5, calgui examinar totes les coincidències
+     */
+    private static List<Llibre> cercaLike(String cerca) {
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            StringBuilder hql = new StringBuilder("select distinct l from Llibre l join l.autors a where 1 = 1");
+            String[] paraules = cerca.split(" ");
+            for (int i = 0; i < paraules.length; i++) {
+                hql.append(" and (lower(l.titol) like :p").append(i).append(" or lower(a.nom) like :p").append(i).append(")");
+            }
+            hql.append(" order by l.titol");
+            var query = session.createQuery(hql.toString(), Llibre.class).setMaxResults(20);
+            for (int i = 0; i < paraules.length; i++) {
+                query.setParameter("p" + i, "%" + paraules[i] + "%");
+            }
+            return query.list();
+        }
+    }
+
+    private static void generar(Path fitxer, int numLlibres) throws IOException {
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(fitxer, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < numLlibres; i++) {
+                String titol = PARAULES[random.nextInt(PARAULES.length)] + " " + PARAULES[random.nextInt(PARAULES.length)]
+                    + " " + PARAULES[random.nextInt(PARAULES.length)] + " " + i;
+                String autor = NOMS[random.nextInt(NOMS.length)] + " " + COGNOMS[random.nextInt(COGNOMS.length)]
+                    + " " + COGNOMS[random.nextInt(COGNOMS.length)] + " " + random.nextInt(5_000);
+                writer.write("{\"isbn\":\"BC-" + i + "\",\"titol\":\"" + titol + "\",\"autors\":\"" + autor + "\"}");
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.project.benchmark;
+
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Session;
+
+import com.project.dao.ArrencadaHibernate;
+import com.project.dao.EscriptorUnic;
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Compara el rendiment de les escriptures concurrents amb cada fil fent la
+ * seva transacció (com fins ara, amb SQLITE_BUSY i reintents) i amb el mode
+ * escriptor únic, que agrupa les escriptures en cua en una sola transacció.
+ * Cada fil presta i retorna exemplars d'un grup que només fa servir ell, de
+ * manera que cap operació falla per disponibilitat. En acabar cada nivell
+ * comprova que no queda cap préstec de la prova actiu. En mode escriptor
+ * únic també comprova que una alta amb un DNI repetit, enmig d'altes
+ * concurrents, només fa fallar aquella alta.
+ *
+ * Ús: ./run.sh com.project.benchmark.BenchmarkEscriptorUnic [numPrestecs] [segons] [rondes] [fils...]
+ */
+
+public class BenchmarkEscriptorUnic {
+    private static final int EXEMPLARS_PER_FIL = 10;
+    private static final int FILS_ESCALFAMENT = 4;
+
+    public static void main(String[] args) throws InterruptedException {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int segons = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int rondes = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int[] nivells = args.length > 3
+            ? Arrays.stream(args, 3, args.length).mapToInt(Integer::parseInt).toArray()
+            : new int[] {1, 2, 4, 8, 16, 32, 64};
+        // L'escalfament fa servir FILS_ESCALFAMENT fils
+        int maxFils = Math.max(Arrays.stream(nivells).max().orElse(1), FILS_ESCALFAMENT);
+
+        int codiSortida = 0;
+        List<Exemplar> exemplars;
+        List<Persona> persones;
+        Manager.createSessionFactory();
+        try {
+            new GeneradorDades(numPrestecs).generar();
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                exemplars = session.createQuery(
+                    "from Exemplar e where e.disponible = true order by e.exemplarId", Exemplar.class)
+                    .setMaxResults(maxFils * EXEMPLARS_PER_FIL)
+                    .list();
+                persones = session.createQuery("from Persona p order by p.personaId", Persona.class)
+                    .setMaxResults(maxFils)
+                    .list();
+                // Buida el WAL de la generació: si no, el primer mode que es
+                // mesura paga els checkpoints de tota la càrrega inicial
+                session.doWork(connexio -> {
+                    try (Statement statement = connexio.createStatement()) {
+                        statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+                    }
+                });
+            }
+        } finally {
+            Manager.close();
+        }
+
+        // Cada ronda mesura els dos modes, cadascun amb una SessionFactory
+        // nova. El rendiment de les dues primeres rondes encara creix a
+        // mesura que la JVM s'escalfa, i el mode que es mesura primer
+        // sortiria perjudicat: només es mostra l'última ronda.
+        double[] normal = new double[nivells.length];
+        double[] agrupat = new double[nivells.length];
+        double[] perCommit = new double[nivells.length];
+        for (int ronda = 0; ronda < rondes; ronda++) {
+            codiSortida |= mesurar(false, nivells, segons, exemplars, persones, normal, null);
+            codiSortida |= mesurar(true, nivells, segons, exemplars, persones, agrupat, perCommit);
+        }
+
+        System.out.println(" fils   transacció per fil   escriptor únic   operacions per commit");
+        for (int i = 0; i < nivells.length; i++) {
+            System.out.printf("%5d   %12.0f op/s   %10.0f op/s   %8.1f%n", nivells[i], normal[i], agrupat[i], perCommit[i]);
+        }
+        System.exit(codiSortida);
+    }
+
+    /**
+     * Mesura tots els nivells de fils en un mode amb una SessionFactory nova
+     */
+    private static int mesurar(boolean escriptorUnic, int[] nivells, int segons, List<Exemplar> exemplars,
+                               List<Persona> persones, double[] resultats, double[] perCommit)
+            throws InterruptedException {
+        ArrencadaHibernate arrencada = new ArrencadaHibernate().ambPropietat("hibernate.hbm2ddl.auto", "none");
+        if (escriptorUnic) {
+            arrencada.ambEscriptorUnic();
+        }
+        Manager.createSessionFactory(arrencada);
+        int codiSortida = 0;
+        try {
+            // Escalfament
+            executar(FILS_ESCALFAMENT, segons, exemplars, persones);
+            EscriptorUnic escriptor = Manager.getEscriptorUnic();
+            for (int i = 0; i < nivells.length; i++) {
+                long transaccions = escriptorUnic ? escriptor.getTransaccions() : 0;
+                long operacions = escriptorUnic ? escriptor.getOperacions() : 0;
+                resultats[i] = executar(nivells[i], segons, exemplars, persones);
+                codiSortida |= comprovar(exemplars);
+                if (escriptorUnic) {
+                    perCommit[i] = (escriptor.getOperacions() - operacions)
+                        / (double) (escriptor.getTransaccions() - transaccions);
+                }
+            }
+            if (escriptorUnic) {
+                codiSortida |= comprovarAltes(persones.get(0).getDni());
+            }
+        } finally {
+            Manager.close();
+        }
+        return codiSortida;
+    }
+
+    /**
+     * Fa quaranta altes de persones alhora, una d'elles amb un DNI que ja
+     * existeix: a l'escriptor únic van a parar a pocs lots i la repetida no
+     * ha d'arrossegar les altres
+     */
+    private static int comprovarAltes(String dniRepetit) throws InterruptedException {
+        final int altes = 40;
+        String prefix = "A" + System.nanoTime() % 1_000_000_000L + "-";
+        AtomicLong correctes = new AtomicLong();
+        List<RuntimeException> errors = new CopyOnWriteArrayList<>();
+        CountDownLatch sortida = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(altes);
+        for (int i = 0; i < altes; i++) {
+            Persona persona = new Persona(i == altes / 2 ? dniRepetit : prefix + i, "Alta " + i);
+            executor.submit(() -> {
+                try {
+                    sortida.await();
+                    Manager.save(persona);
+                    correctes.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    errors.add(e);
+                }
+            });
+        }
+        sortida.countDown();
+        executor.shutdown();
+        executor.awaitTermination(60, TimeUnit.SECONDS);
+        long desades;
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            desades = session.createQuery("select count(*) from Persona p where p.dni like :prefix", Long.class)
+                .setParameter("prefix", prefix + "%")
+                .getSingleResult();
+        }
+        boolean correcte = correctes.get() == altes - 1 && errors.size() == 1 && desades == altes - 1;
+        System.out.printf("%s %d altes amb un DNI repetit: %d correctes, %d fallides, %d desades%n",
+            correcte ? "OK   " : "ERROR", altes, correctes.get(), errors.size(), desades);
+        errors.stream().limit(3).forEach(e -> System.out.println("  " + e));
+        return correcte ? 0 : 1;
+    }
+
+    /**
+     * Operacions d'escriptura per segon (un préstec o un retorn és una operació)
+     */
+    private static double executar(int fils, int segons, List<Exemplar> exemplars, List<Persona> persones)
+            throws InterruptedException {
+        AtomicLong operacions = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        LocalDate avui = LocalDate.now();
+        long fi = System.nanoTime() + TimeUnit.SECONDS.toNanos(segons);
+        ExecutorService executor = Executors.newFixedThreadPool(fils);
+        long inici = System.nanoTime();
+        for (int f = 0; f < fils; f++) {
+            List<Exemplar> propis = exemplars.subList(f * EXEMPLARS_PER_FIL, (f + 1) * EXEMPLARS_PER_FIL);
+            Persona persona = persones.get(f);
+            executor.submit(() -> {
+                for (int i = 0; System.nanoTime() < fi; i++) {
+                    try {
+                        Prestec prestec = Manager.ferPrestec(propis.get(i % propis.size()), persona, avui, avui.plusDays(15));
+                        Manager.retornarPrestec(prestec, avui);
+                        operacions.addAndGet(2);
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(segons + 120L, TimeUnit.SECONDS);
+        double durada = (System.nanoTime() - inici) / 1_000_000_000.0;
+        if (errors.get() > 0) {
+            System.out.printf("%d fils: %d errors%n", fils, errors.get());
+        }
+        return operacions.get() / durada;
+    }
+
+    private static int comprovar(List<Exemplar> exemplars) {
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            long actius = session.createQuery(
+                "select count(*) from Prestec p where p.actiu = true and p.exemplar.exemplarId in :ids", Long.class)
+                .setParameter("ids", exemplars.stream().map(Exemplar::getExemplarId).toList())
+                .getSingleResult();
+            if (actius > 0) {
+                System.out.println("ERROR: queden " + actius + " préstecs de la prova actius");
+                return 1;
+            }
+            return 0;
+        }
+    }
+}
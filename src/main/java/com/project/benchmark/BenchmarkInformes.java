@@ -0,0 +1,214 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.hibernate.Session;
+
+import com.project.dao.GeneradorDades;
+import com.project.dao.InformesPrestecs;
+import com.project.dao.LlibrePrestat;
+import com.project.dao.Manager;
+import com.project.dao.PrestecsBiblioteca;
+import com.project.dao.PrestecsMes;
+import com.project.domain.*;
+
+/*
+ * Compara els informes de préstecs (per mes, per biblioteca i llibres més
+ * prestats dels dotze mesos tancats abans de la data de referència de
+ * GeneradorDades) calculats a la base de dades amb InformesPrestecs i
+ * calculats com es feia abans, llegint tots els préstecs amb el seu
+ * exemplar i agrupant en Java. Mesura el temps de les
+ * dues maneres, amb l'informe per biblioteca en un fil i en paral·lel, i el
+ * de tornar a demanar els informes quan ja són a la cache. Surt amb codi 1
+ * si els resultats no coincideixen.
+ *
+ * Ús: ./run.sh com.project.benchmark.BenchmarkInformes [numPrestecs] [fils]
+ */
+
+public class BenchmarkInformes {
+    private static final int LLIBRES = 10;
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int fils = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        Manager.createSessionFactory();
+        int codiSortida = 0;
+        try {
+            new GeneradorDades(numPrestecs).generar().forEach(System.out::println);
+            YearMonth finsA = YearMonth.from(GeneradorDades.DATA_REFERENCIA_PER_DEFECTE).minusMonths(1);
+            YearMonth desDe = finsA.minusMonths(11);
+
+            long inici = System.nanoTime();
+            InformeJava java = new InformeJava(desDe, finsA);
+            System.out.printf("en Java (%d préstecs llegits): %.0f ms%n", java.llegits, msDes(inici));
+
+            InformesPrestecs informes = new InformesPrestecs();
+            List<PrestecsMes> mesos = mesurar("per mes", () -> informes.prestecsPerMes(desDe, finsA));
+            List<PrestecsBiblioteca> biblioteques = mesurar("per biblioteca, 1 fil",
+                () -> informes.prestecsPerBiblioteca(desDe, finsA));
+            List<LlibrePrestat> llibres = mesurar("llibres més prestats",
+                () -> informes.llibresMesPrestats(desDe, finsA, LLIBRES));
+            mesurar("de la cache", () -> {
+                informes.prestecsPerMes(desDe, finsA);
+                informes.prestecsPerBiblioteca(desDe, finsA);
+                return informes.llibresMesPrestats(desDe, finsA, LLIBRES);
+            });
+            informes.buidarCache();
+            mesurar("altra vegada amb la cache buida", () -> {
+                informes.prestecsPerMes(desDe, finsA);
+                informes.prestecsPerBiblioteca(desDe, finsA);
+                return informes.llibresMesPrestats(desDe, finsA, LLIBRES);
+            });
+            mesurar("mes en curs (sense cache)", () -> informes.prestecsPerMes(YearMonth.now(), YearMonth.now()));
+
+            List<PrestecsBiblioteca> enParallel = mesurar("per biblioteca, " + fils + " fils",
+                () -> new InformesPrestecs(fils).prestecsPerBiblioteca(desDe, finsA));
+
+            codiSortida |= comprovar("préstecs per mes", mesos, java.mesos());
+            codiSortida |= comprovar("préstecs per biblioteca", biblioteques, java.biblioteques());
+            codiSortida |= comprovar("préstecs per biblioteca en paral·lel", enParallel, java.biblioteques());
+            codiSortida |= comprovar("llibres més prestats", llibres, java.llibres());
+            mesos.stream().limit(3).forEach(System.out::println);
+            llibres.stream().limit(3).forEach(System.out::println);
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    private static <T> T mesurar(String nom, Supplier<T> informe) {
+        long inici = System.nanoTime();
+        T resultat = informe.get();
+        System.out.printf("%s: %.1f ms%n", nom, msDes(inici));
+        return resultat;
+    }
+
+    /**
+     * Els registres coincideixen si són iguals, llevat de les mitjanes, que
+     * poden diferir en l'últim decimal segons l'ordre de la suma
+     */
+    private static int comprovar(String nom, List<? extends Record> obtingut, List<? extends Record> esperat) {
+        boolean correcte = obtingut.size() == esperat.size();
+        for (int i = 0; correcte && i < obtingut.size(); i++) {
+            correcte = arrodonit(obtingut.get(i)).equals(arrodonit(esperat.get(i)));
+            if (!correcte) {
+                System.out.printf("  %s%n  esperat %s%n", obtingut.get(i), esperat.get(i));
+            }
+        }
+        System.out.printf("%s %s: %d files%n", correcte ? "OK   " : "ERROR", nom, obtingut.size());
+        return correcte ? 0 : 1;
+    }
+
+    private static Record arrodonit(Record fila) {
+        if (fila instanceof PrestecsMes m) {
+            return new PrestecsMes(m.mes(), m.prestecs(), m.retorns(), m.retornsAmbRetard(),
+                Math.round(m.diesRetardMitja() * 1e6) / 1e6);
+        }
+        if (fila instanceof PrestecsBiblioteca b) {
+            return new PrestecsBiblioteca(b.bibliotecaId(), b.nom(), b.prestecs(), b.retorns(),
+                b.retornsAmbRetard(), Math.round(b.diesRetardMitja() * 1e6) / 1e6);
+        }
+        return fila;
+    }
+
+    private static double msDes(long inici) {
+        return (System.nanoTime() - inici) / 1_000_000.0;
+    }
+
+    /**
+     * Els mateixos informes llegint tots els préstecs amb l'exemplar, el
+     * llibre i la biblioteca i agrupant en memòria
+     */
+    private static class InformeJava {
+        private final Map<YearMonth, long[]> perMes = new TreeMap<>();
+        private final Map<Long, long[]> perBiblioteca = new TreeMap<>();
+        private final Map<Long, String> noms = new HashMap<>();
+        private final Map<Long, long[]> perLlibre = new HashMap<>();
+        private final Map<Long, String> titols = new HashMap<>();
+        private final YearMonth desDe;
+        private final YearMonth finsA;
+        private long llegits;
+
+        InformeJava(YearMonth desDe, YearMonth finsA) {
+            this.desDe = desDe;
+            this.finsA = finsA;
+            for (YearMonth mes = desDe; !mes.isAfter(finsA); mes = mes.plusMonths(1)) {
+                perMes.put(mes, new long[4]);
+            }
+            for (Biblioteca biblioteca : Manager.getAllBiblioteques()) {
+                perBiblioteca.put(biblioteca.getBibliotecaId(), new long[4]);
+                noms.put(biblioteca.getBibliotecaId(), biblioteca.getNom());
+            }
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                List<Prestec> prestecs = session.createQuery("from Prestec p", Prestec.class)
+                    .applyFetchGraph(session.getEntityGraph(Prestec.GRAF_DETALL))
+                    .list();
+                llegits = prestecs.size();
+                prestecs.forEach(this::afegir);
+            }
+        }
+
+        private void afegir(Prestec prestec) {
+            Exemplar exemplar = prestec.getExemplar();
+            if (dins(prestec.getDataPrestec())) {
+                perMes.get(YearMonth.from(prestec.getDataPrestec()))[0]++;
+                perBiblioteca.get(exemplar.getBiblioteca().getBibliotecaId())[0]++;
+                perLlibre.computeIfAbsent(exemplar.getLlibre().getLlibreId(), id -> new long[1])[0]++;
+                titols.put(exemplar.getLlibre().getLlibreId(), exemplar.getLlibre().getTitol());
+            }
+            LocalDate retorn = prestec.getDataRetornReal();
+            if (retorn != null && dins(retorn)) {
+                long dies = ChronoUnit.DAYS.between(prestec.getDataRetornPrevista(), retorn);
+                for (long[] comptadors : List.of(perMes.get(YearMonth.from(retorn)),
+                        perBiblioteca.get(exemplar.getBiblioteca().getBibliotecaId()))) {
+                    comptadors[1]++;
+                    if (dies > 0) {
+                        comptadors[2]++;
+                        comptadors[3] += dies;
+                    }
+                }
+            }
+        }
+
+        private boolean dins(LocalDate data) {
+            YearMonth mes = YearMonth.from(data);
+            return !mes.isBefore(desDe) && !mes.isAfter(finsA);
+        }
+
+        List<PrestecsMes> mesos() {
+            List<PrestecsMes> mesos = new ArrayList<>();
+            perMes.forEach((mes, c) -> mesos.add(new PrestecsMes(mes, c[0], c[1], c[2], mitjana(c))));
+            return mesos;
+        }
+
+        List<PrestecsBiblioteca> biblioteques() {
+            List<PrestecsBiblioteca> biblioteques = new ArrayList<>();
+            perBiblioteca.forEach((id, c) ->
+                biblioteques.add(new PrestecsBiblioteca(id, noms.get(id), c[0], c[1], c[2], mitjana(c))));
+            return biblioteques;
+        }
+
+        List<LlibrePrestat> llibres() {
+            return perLlibre.entrySet().stream()
+                .map(e -> new LlibrePrestat(e.getKey(), titols.get(e.getKey()), e.getValue()[0]))
+                .sorted(Comparator.comparingLong(LlibrePrestat::prestecs).reversed()
+                    .thenComparingLong(LlibrePrestat::llibreId))
+                .limit(LLIBRES)
+                .toList();
+        }
+
+        private static double mitjana(long[] comptadors) {
+            return comptadors[2] == 0 ? 0 : (double) comptadors[3] / comptadors[2];
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.project.benchmark;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Mesura el ritme d'insercions de préstecs i exemplars en ràfegues grans
+ * (una transacció per ràfega), que és el cas on el lot JDBC marca la diferència.
+ *
+ * Ús: ./run.sh com.project.benchmark.BenchmarkInsercions [numFiles] [midaRafega]
+ */
+
+public class BenchmarkInsercions {
+
+    public static void main(String[] args) {
+        int numFiles = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int midaRafega = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+
+        Manager.createSessionFactory();
+        try {
+            SessionFactory factory = Manager.getSessionFactory();
+
+            Biblioteca biblioteca = Manager.save(new Biblioteca("Biblioteca Benchmark", "Barcelona"));
+            Llibre llibre = Manager.save(new Llibre("BENCH-0001", "Llibre de benchmark"));
+            Persona persona = Manager.save(new Persona("BENCH-DNI", "Persona Benchmark"));
+
+            // Escalfament de la JVM i de la connexió
+            inserir(factory, "W", Math.min(numFiles, 10_000), midaRafega, llibre, biblioteca, persona);
+
+            long inici = System.nanoTime();
+            inserir(factory, "B", numFiles, midaRafega, llibre, biblioteca, persona);
+            double segons = (System.nanoTime() - inici) / 1_000_000_000.0;
+
+            // Cada fila del benchmark és un exemplar més el seu préstec
+            System.out.printf("%d exemplars + %d préstecs en %.2f s -> %.0f insercions/s%n",
+                numFiles, numFiles, segons, (2.0 * numFiles) / segons);
+        } finally {
+            Manager.close();
+        }
+    }
+
+    private static void inserir(SessionFactory factory, String prefix, int numFiles, int midaRafega,
+                                Llibre llibre, Biblioteca biblioteca, Persona persona) {
+        java.time.LocalDate avui = java.time.LocalDate.now();
+        for (int inici = 0; inici < numFiles; inici += midaRafega) {
+            int fi = Math.min(numFiles, inici + midaRafega);
+            try (Session session = factory.openSession()) {
+                Transaction tx = session.beginTransaction();
+                Llibre llibreRef = session.getReference(Llibre.class, llibre.getLlibreId());
+                Biblioteca bibliotecaRef = session.getReference(Biblioteca.class, biblioteca.getBibliotecaId());
+                Persona personaRef = session.getReference(Persona.class, persona.getPersonaId());
+                for (int i = inici; i < fi; i++) {
+                    Exemplar exemplar = new Exemplar(prefix + "-" + i, llibreRef, bibliotecaRef);
+                    exemplar.setDisponible(false);
+                    session.persist(exemplar);
+                    session.persist(new Prestec(exemplar, personaRef, avui, avui.plusDays(15)));
+                }
+                tx.commit();
+            }
+        }
+    }
+}
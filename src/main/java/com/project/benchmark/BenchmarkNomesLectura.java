@@ -0,0 +1,151 @@
+package com.project.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import com.project.dao.ArrencadaHibernate;
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Compara les consultes del Manager amb sessions normals i de només lectura.
+ *
+ * Primer mesura el heap per fila mentre la sessió és oberta, que és quan hi
+ * ha el context de persistència: tots els préstecs amb l'exemplar, el llibre
+ * i la persona, amb una sessió normal i amb una de només lectura. Després,
+ * el temps i la memòria assignada per fila de getPrestecsActius,
+ * getAllLlibres i getAllPersones, normals i dins de Manager.nomesLectura().
+ * Finalment crea una SessionFactory de lectura amb un pool propi i comprova
+ * que retorna el mateix que la principal i que no deixa escriure.
+ * Surt amb codi 1 si alguna comprovació falla.
+ *
+ * Ús: ./run.sh com.project.benchmark.BenchmarkNomesLectura [numPrestecs]
+ */
+
+public class BenchmarkNomesLectura {
+    private static final int REPETICIONS = 5;
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        Manager.createSessionFactory();
+        int codiSortida = 0;
+        try {
+            DadesBenchmark.crearPrestecs("BL", numPrestecs);
+
+            long[] normal = heapPerFilaAmbSessioOberta(Manager::obrirSessioLectura);
+            long[] lectura = heapPerFilaAmbSessioOberta(() -> Manager.nomesLectura(Manager::obrirSessioLectura));
+            System.out.printf("heap amb la sessió oberta (%d préstecs amb exemplar, llibre i persona): "
+                + "normal %d bytes/fila (%d del context), només lectura %d bytes/fila (%d del context)%n",
+                numPrestecs, normal[0], normal[1], lectura[0], lectura[1]);
+
+            comparar("getPrestecsActius", Manager::getPrestecsActius);
+            comparar("getAllLlibres", Manager::getAllLlibres);
+            comparar("getAllPersones", Manager::getAllPersones);
+
+            codiSortida = comprovarFactoryLectura();
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    /**
+     * Memòria retinguda per fila amb la sessió encara oberta (les entitats més
+     * el que en guarda el context de persistència) i, un cop tancada, la part
+     * que era només del context
+     */
+    private static long[] heapPerFilaAmbSessioOberta(Supplier<Session> obrirSessio) {
+        long[] ambSessio = new long[3];
+        long[] context = new long[3];
+        for (int i = 0; i < ambSessio.length; i++) {
+            long abans = DadesBenchmark.memoriaUsada();
+            List<Prestec> prestecs;
+            long oberta;
+            try (Session session = obrirSessio.get()) {
+                prestecs = session.createQuery("from Prestec p", Prestec.class)
+                    .applyFetchGraph(session.getEntityGraph(Prestec.GRAF_DETALL))
+                    .list();
+                oberta = DadesBenchmark.memoriaUsada();
+            }
+            long tancada = DadesBenchmark.memoriaUsada();
+            ambSessio[i] = (oberta - abans) / prestecs.size();
+            context[i] = (oberta - tancada) / prestecs.size();
+        }
+        Arrays.sort(ambSessio);
+        Arrays.sort(context);
+        return new long[] {ambSessio[1], context[1]};
+    }
+
+    private static void comparar(String consulta, Supplier<List<?>> lectura) {
+        Mesura normal = mesurar(lectura);
+        Mesura nomesLectura = mesurar(() -> Manager.nomesLectura(lectura));
+        System.out.printf("%s (%d files): normal %.1f ms, %d bytes assignats/fila; "
+            + "només lectura %.1f ms, %d bytes assignats/fila%n",
+            consulta, normal.files, normal.ms, normal.bytesPerFila, nomesLectura.ms, nomesLectura.bytesPerFila);
+    }
+
+    private record Mesura(int files, double ms, long bytesPerFila) {}
+
+    private static Mesura mesurar(Supplier<List<?>> lectura) {
+        // Escalfament
+        lectura.get();
+        lectura.get();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long fil = Thread.currentThread().getId();
+        int files = 0;
+        long assignats = threads.getThreadAllocatedBytes(fil);
+        long inici = System.nanoTime();
+        for (int i = 0; i < REPETICIONS; i++) {
+            files = lectura.get().size();
+        }
+        double ms = (System.nanoTime() - inici) / 1_000_000.0 / REPETICIONS;
+        assignats = threads.getThreadAllocatedBytes(fil) - assignats;
+        return new Mesura(files, ms, files == 0 ? 0 : assignats / REPETICIONS / files);
+    }
+
+    /**
+     * La SessionFactory de lectura llegeix el mateix que la principal i les
+     * seves connexions no poden escriure
+     */
+    private static int comprovarFactoryLectura() {
+        int principal = Manager.getPrestecsActius().size();
+        Manager.createSessionFactoryLectura(new ArrencadaHibernate().modeRapid());
+        int codiSortida = 0;
+
+        int deLectura = Manager.getPrestecsActius().size();
+        boolean iguals = principal == deLectura;
+        System.out.printf("%s getPrestecsActius amb la SessionFactory de lectura: %d (principal %d)%n",
+            iguals ? "OK   " : "ERROR", deLectura, principal);
+        if (!iguals) {
+            codiSortida = 1;
+        }
+
+        boolean escriuLaPrincipal = Manager.save(new Biblioteca("Biblioteca BL2", "Reus")) != null;
+        boolean escriuLaDeLectura;
+        try (Session session = Manager.getSessionFactoryLectura().openSession()) {
+            Transaction tx = session.beginTransaction();
+            try {
+                session.persist(new Biblioteca("Biblioteca BL3", "Valls"));
+                tx.commit();
+                escriuLaDeLectura = true;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                escriuLaDeLectura = false;
+            }
+        }
+        boolean correcte = escriuLaPrincipal && !escriuLaDeLectura;
+        System.out.printf("%s escriptura: principal %s, de lectura %s%n", correcte ? "OK   " : "ERROR",
+            escriuLaPrincipal ? "permesa" : "rebutjada", escriuLaDeLectura ? "permesa" : "rebutjada");
+        if (!correcte) {
+            codiSortida = 1;
+        }
+        return codiSortida;
+    }
+}
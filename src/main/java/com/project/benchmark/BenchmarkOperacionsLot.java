@@ -0,0 +1,136 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.dao.ResultatExemplar;
+import com.project.domain.*;
+
+/*
+ * Compara préstecs i retorns d'un en un (ferPrestec / retornarPrestec) amb
+ * les operacions en lot (ferPrestecs / retornarPrestecs) sobre el mateix
+ * conjunt d'exemplars, com les ràfegues d'un punt d'autopréstec. El camí
+ * d'un en un rep els exemplars ja carregats; el de lot només els codis de
+ * barres. Abans de mesurar comprova els resultats per codi (inexistents,
+ * duplicats i ja prestats) i surt amb codi 1 si no són els esperats.
+ *
+ * Ús: ./run.sh com.project.benchmark.BenchmarkOperacionsLot [numPrestecs] [midaLot] [rondes]
+ */
+
+public class BenchmarkOperacionsLot {
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int midaLot = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int rondes = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Manager.createSessionFactory();
+        int codiSortida = 0;
+        try {
+            new GeneradorDades(numPrestecs).generar();
+            List<Exemplar> exemplars;
+            Persona persona;
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                exemplars = session.createQuery(
+                    "from Exemplar e where e.disponible = true order by e.exemplarId", Exemplar.class)
+                    .setMaxResults(midaLot)
+                    .list();
+                persona = session.createQuery("from Persona p order by p.personaId", Persona.class)
+                    .setMaxResults(1)
+                    .getSingleResult();
+            }
+            List<String> codis = exemplars.stream().map(Exemplar::getCodiBarres).toList();
+            LocalDate avui = LocalDate.now();
+
+            if (!comprovarResultats(codis, persona, avui)) {
+                codiSortida = 1;
+            }
+
+            // Escalfament
+            unPerUn(exemplars, persona, avui);
+            enLot(codis, persona, avui);
+
+            long tempsUnPerUn = 0;
+            long tempsLot = 0;
+            for (int ronda = 0; ronda < rondes; ronda++) {
+                tempsUnPerUn += unPerUn(exemplars, persona, avui);
+                tempsLot += enLot(codis, persona, avui);
+            }
+            long operacions = 2L * midaLot * rondes;
+            System.out.printf("un per un: %d préstecs + retorns en %d ms -> %.0f operacions/s%n",
+                operacions, tempsUnPerUn / 1_000_000, operacions / (tempsUnPerUn / 1e9));
+            System.out.printf("en lot:    %d préstecs + retorns en %d ms -> %.0f operacions/s%n",
+                operacions, tempsLot / 1_000_000, operacions / (tempsLot / 1e9));
+        } catch (RuntimeException e) {
+            System.err.println("El benchmark ha fallat: " + e);
+            codiSortida = 1;
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    private static long unPerUn(List<Exemplar> exemplars, Persona persona, LocalDate avui) {
+        long inici = System.nanoTime();
+        List<Prestec> prestecs = new ArrayList<>(exemplars.size());
+        for (Exemplar exemplar : exemplars) {
+            prestecs.add(Manager.ferPrestec(exemplar, persona, avui, avui.plusDays(15)));
+        }
+        for (Prestec prestec : prestecs) {
+            Manager.retornarPrestec(prestec, avui);
+        }
+        return System.nanoTime() - inici;
+    }
+
+    private static long enLot(List<String> codis, Persona persona, LocalDate avui) {
+        long inici = System.nanoTime();
+        boolean correcte = Manager.ferPrestecs(codis, persona, avui, avui.plusDays(15)).stream()
+            .allMatch(ResultatExemplar::correcte);
+        correcte &= Manager.retornarPrestecs(codis, avui).stream().allMatch(ResultatExemplar::correcte);
+        if (!correcte) {
+            throw new IllegalStateException("Alguna operació en lot no s'ha pogut fer");
+        }
+        return System.nanoTime() - inici;
+    }
+
+    /**
+     * Un lot amb un codi inexistent, un de repetit i, en el préstec, un
+     * exemplar que ja està prestat
+     */
+    private static boolean comprovarResultats(List<String> codis, Persona persona, LocalDate avui) {
+        List<String> lot = new ArrayList<>(codis.subList(1, Math.min(4, codis.size())));
+        lot.add("NO-EXISTEIX");
+        lot.add(lot.get(0));
+
+        Manager.ferPrestecs(List.of(codis.get(0)), persona, avui, avui.plusDays(15));
+        List<String> ambPrestat = new ArrayList<>(lot);
+        ambPrestat.add(codis.get(0));
+        List<ResultatExemplar.Estat> prestec = Manager.ferPrestecs(ambPrestat, persona, avui, avui.plusDays(15))
+            .stream().map(ResultatExemplar::estat).toList();
+        List<ResultatExemplar.Estat> retorn = Manager.retornarPrestecs(ambPrestat, avui)
+            .stream().map(ResultatExemplar::estat).toList();
+        List<ResultatExemplar.Estat> segonRetorn = Manager.retornarPrestecs(lot, avui)
+            .stream().map(ResultatExemplar::estat).toList();
+
+        int n = lot.size() - 2;
+        boolean correcte = prestec.subList(0, n).stream().allMatch(e -> e == ResultatExemplar.Estat.PRESTAT)
+            && prestec.get(n) == ResultatExemplar.Estat.NO_EXISTEIX
+            && prestec.get(n + 1) == ResultatExemplar.Estat.DUPLICAT
+            && prestec.get(n + 2) == ResultatExemplar.Estat.NO_DISPONIBLE
+            && retorn.subList(0, n).stream().allMatch(e -> e == ResultatExemplar.Estat.RETORNAT)
+            && retorn.get(n + 2) == ResultatExemplar.Estat.RETORNAT
+            && segonRetorn.subList(0, n).stream().allMatch(e -> e == ResultatExemplar.Estat.SENSE_PRESTEC);
+        System.out.println("préstec: " + prestec);
+        System.out.println("retorn: " + retorn);
+        System.out.println("segon retorn: " + segonRetorn);
+        if (!correcte) {
+            System.out.println("ERROR: els resultats per codi no són els esperats");
+        }
+        return correcte;
+    }
+}
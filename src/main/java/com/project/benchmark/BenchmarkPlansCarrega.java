@@ -0,0 +1,66 @@
+package com.project.benchmark;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+
+import com.project.dao.ArrencadaHibernate;
+import com.project.dao.Manager;
+import com.project.domain.Prestec;
+
+/*
+ * Files per segon, sentències SQL i memòria per Prestec carregat amb una
+ * consulta simple 'from Prestec' (les associacions a un queden com a proxies
+ * sense inicialitzar) i amb el pla de càrrega complet de getPrestecsActius
+ * (exemplar, llibre, biblioteca i persona).
+ *
+ * Ús: ./run.sh com.project.benchmark.BenchmarkPlansCarrega [numPrestecs]
+ */
+
+public class BenchmarkPlansCarrega {
+    private static final int REPETICIONS = 5;
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+
+        Manager.createSessionFactory(new ArrencadaHibernate()
+            .ambPropietat("hibernate.generate_statistics", "true")
+            .ambPropietat("hibernate.session.events.log", "false"));
+        try {
+            DadesBenchmark.crearPrestecs("PC", numPrestecs);
+
+            mesurar("consulta simple", () -> {
+                try (Session session = Manager.getSessionFactory().openSession()) {
+                    return session.createQuery("from Prestec p where p.actiu = true", Prestec.class).list();
+                }
+            });
+            mesurar("pla Prestec.detall", Manager::getPrestecsActius);
+        } finally {
+            Manager.close();
+        }
+    }
+
+    private static void mesurar(String nom, Supplier<List<Prestec>> lectura) {
+        Statistics statistics = Manager.getSessionFactory().getStatistics();
+        // Escalfament
+        lectura.get();
+
+        statistics.clear();
+        int files = 0;
+        long inici = System.nanoTime();
+        for (int i = 0; i < REPETICIONS; i++) {
+            files = lectura.get().size();
+        }
+        double segons = (System.nanoTime() - inici) / 1_000_000_000.0;
+        long sentencies = statistics.getPrepareStatementCount() / REPETICIONS;
+
+        long abans = DadesBenchmark.memoriaUsada();
+        List<Prestec> prestecs = lectura.get();
+        long despres = DadesBenchmark.memoriaUsada();
+
+        System.out.printf("%s: %d préstecs, %.0f files/s, %d sentències SQL, %d bytes/préstec%n",
+            nom, prestecs.size(), files * REPETICIONS / segons, sentencies, (despres - abans) / prestecs.size());
+    }
+}
@@ -0,0 +1,68 @@
+package com.project.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.project.dao.Manager;
+
+/*
+ * Compara les llistes d'entitats del Manager amb les projeccions equivalents
+ * (registres construïts a la consulta): temps de la consulta i memòria que
+ * ocupa la llista retornada.
+ *
+ * Ús: ./run.sh com.project.benchmark.BenchmarkProjeccions [numPrestecs]
+ */
+
+public class BenchmarkProjeccions {
+    private static final int REPETICIONS = 5;
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+
+        Manager.createSessionFactory();
+        try {
+            DadesBenchmark.crearPrestecs("BP", numPrestecs);
+
+            comparar("préstecs actius", Manager::getPrestecsActius, Manager::getResumPrestecsActius);
+            comparar("llibres", Manager::getAllLlibres, Manager::getResumLlibres);
+            comparar("persones", Manager::getAllPersones, Manager::getResumPersones);
+        } finally {
+            Manager.close();
+        }
+    }
+
+    private static void comparar(String llista, Supplier<List<?>> entitats, Supplier<List<?>> projeccio) {
+        Mesura mesuraEntitats = mesurar(entitats);
+        Mesura mesuraProjeccio = mesurar(projeccio);
+        System.out.printf("%s (%d files): entitats %.1f ms, %d bytes/fila; projecció %.1f ms, %d bytes/fila%n",
+            llista, mesuraEntitats.files, mesuraEntitats.ms, mesuraEntitats.bytesPerFila,
+            mesuraProjeccio.ms, mesuraProjeccio.bytesPerFila);
+    }
+
+    private record Mesura(int files, double ms, long bytesPerFila) {}
+
+    private static Mesura mesurar(Supplier<List<?>> lectura) {
+        // Escalfament
+        lectura.get();
+
+        long inici = System.nanoTime();
+        for (int i = 0; i < REPETICIONS; i++) {
+            lectura.get();
+        }
+        double ms = (System.nanoTime() - inici) / 1_000_000.0 / REPETICIONS;
+
+        // Memòria retinguda per la llista: mediana de tres mesures per reduir el soroll del GC
+        long[] bytes = new long[3];
+        int files = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            long abans = DadesBenchmark.memoriaUsada();
+            List<?> resultat = lectura.get();
+            long despres = DadesBenchmark.memoriaUsada();
+            files = resultat.size();
+            bytes[i] = despres - abans;
+        }
+        Arrays.sort(bytes);
+        return new Mesura(files, ms, files == 0 ? 0 : bytes[1] / files);
+    }
+}
@@ -0,0 +1,193 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.Session;
+
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.dao.ReconciliacioComptadors;
+import com.project.dao.ResultatReconciliacio;
+import com.project.domain.*;
+
+/*
+ * Comprova els comptadors de disponibilitat: després de préstecs i retorns
+ * (d'un en un i en lot), d'un llibre nou amb exemplars desats en cascada,
+ * de la baixa d'un exemplar i del llibre sencer, de canvis d'exemplars i
+ * préstecs amb update, i de la baixa d'una persona amb préstecs actius, la
+ * reconciliació no ha de trobar cap diferència. Després compara el temps de consultar la disponibilitat d'un
+ * llibre a una biblioteca amb els comptadors, comptant exemplars amb una
+ * consulta i com es feia abans (getExemplarsDisponibles i comptar en Java).
+ * Surt amb codi 1 si algun comptador no quadra.
+ *
+ * Ús: ./run.sh com.project.benchmark.ComprovacioComptadors [numPrestecs] [lectures]
+ */
+
+public class ComprovacioComptadors {
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int lectures = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        Manager.createSessionFactory();
+        int codiSortida = 0;
+        try {
+            new GeneradorDades(numPrestecs).generar().forEach(System.out::println);
+            codiSortida |= comprovar("després de generar les dades");
+
+            List<Exemplar> exemplars;
+            List<Persona> persones;
+            List<Biblioteca> biblioteques = Manager.getAllBiblioteques();
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                exemplars = session.createQuery(
+                    "from Exemplar e join fetch e.llibre join fetch e.biblioteca " +
+                    "where e.disponible = true order by e.exemplarId", Exemplar.class)
+                    .setMaxResults(200)
+                    .list();
+                persones = session.createQuery("from Persona p order by p.personaId", Persona.class)
+                    .setMaxResults(3)
+                    .list();
+            }
+            LocalDate avui = LocalDate.now();
+
+            // Préstecs i retorns d'un en un: la meitat dels exemplars queden prestats
+            List<Prestec> prestats = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                Prestec prestec = Manager.ferPrestec(exemplars.get(i), persones.get(0), avui, avui.plusDays(15));
+                if (i % 2 == 0) {
+                    Manager.retornarPrestec(prestec, avui);
+                } else {
+                    prestats.add(prestec);
+                }
+            }
+            // En lot, amb un codi repetit i un d'inexistent
+            List<String> codis = exemplars.subList(100, 200).stream().map(Exemplar::getCodiBarres)
+                .collect(Collectors.toList());
+            codis.add(codis.get(0));
+            codis.add("NO-EXISTEIX");
+            Manager.ferPrestecs(codis, persones.get(1), avui, avui.plusDays(15));
+            Manager.retornarPrestecs(codis.subList(0, 50), avui);
+            codiSortida |= comprovar("després dels préstecs i retorns");
+
+            // Llibre nou amb un exemplar desat en cascada i dos més desats a part,
+            // a dues biblioteques
+            Llibre llibre = new Llibre("978-0-00-000000-2", "Llibre de la comprovació");
+            Exemplar primer = new Exemplar("COMPROVACIO-0", llibre, biblioteques.get(0));
+            llibre.getExemplars().add(primer);
+            Manager.save(llibre);
+            Manager.save(new Exemplar("COMPROVACIO-1", llibre, biblioteques.get(1)));
+            Exemplar tercer = Manager.save(new Exemplar("COMPROVACIO-2", llibre, biblioteques.get(0)));
+            DisponibilitatLlibre disponibilitat = Manager.getDisponibilitat(llibre, biblioteques.get(0));
+            codiSortida |= comprovar("disponibles del llibre nou", disponibilitat.getExemplarsDisponibles(), 2);
+            Manager.ferPrestec(primer, persones.get(2), avui, avui.plusDays(15));
+            disponibilitat = Manager.getDisponibilitat(llibre, biblioteques.get(0));
+            codiSortida |= comprovar("disponibles després de prestar-ne un", disponibilitat.getExemplarsDisponibles(), 1);
+            codiSortida |= comprovar("total després de prestar-ne un", disponibilitat.getTotalExemplars(), 2);
+            codiSortida |= comprovar("préstecs actius de la persona",
+                Manager.getNombrePrestecsActius(persones.get(2)), comptarPrestecsActius(persones.get(2)));
+
+            Manager.delete(Manager.get(Exemplar.class, tercer.getExemplarId()));
+            disponibilitat = Manager.getDisponibilitat(llibre, biblioteques.get(0));
+            codiSortida |= comprovar("total després d'esborrar-ne un", disponibilitat.getTotalExemplars(), 1);
+            codiSortida |= comprovar("després d'esborrar un exemplar");
+
+            // Canvis amb update: un exemplar que deixa d'estar disponible, un
+            // que canvia de biblioteca i un préstec tancat amb setDataRetornReal
+            Exemplar retirat = Manager.get(Exemplar.class, exemplars.get(0).getExemplarId());
+            retirat.setDisponible(false);
+            Manager.update(retirat);
+            Exemplar traslladat = Manager.get(Exemplar.class, exemplars.get(2).getExemplarId());
+            long origen = exemplars.get(2).getBiblioteca().getBibliotecaId();
+            traslladat.setBiblioteca(biblioteques.stream().filter(b -> b.getBibliotecaId() != origen)
+                .findFirst().orElseThrow());
+            Manager.update(traslladat);
+            prestats.get(0).setDataRetornReal(avui);
+            Manager.update(prestats.get(0));
+            codiSortida |= comprovar("préstecs actius després de tancar-ne un amb update",
+                Manager.getNombrePrestecsActius(persones.get(0)), comptarPrestecsActius(persones.get(0)));
+            codiSortida |= comprovar("després de modificar exemplars i préstecs amb update");
+
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                session.getTransaction().begin();
+                session.remove(session.get(Llibre.class, llibre.getLlibreId()));
+                session.remove(session.get(Persona.class, persones.get(2).getPersonaId()));
+                session.getTransaction().commit();
+            }
+            codiSortida |= comprovar("biblioteques amb el llibre esborrat", Manager.getDisponibilitat(llibre).size(), 0);
+            codiSortida |= comprovar("després d'esborrar el llibre i la persona");
+
+            // Temps de consulta: comptadors, recompte a la base de dades i en Java
+            Exemplar mostra = exemplars.get(0);
+            Llibre llibreMostra = mostra.getLlibre();
+            Biblioteca bibliotecaMostra = mostra.getBiblioteca();
+            for (int ronda = 0; ronda < 2; ronda++) {
+                long inici = System.nanoTime();
+                long total = 0;
+                for (int i = 0; i < lectures; i++) {
+                    total += Manager.getDisponibilitat(llibreMostra, bibliotecaMostra).getExemplarsDisponibles();
+                }
+                double comptadors = (System.nanoTime() - inici) / 1_000.0 / lectures;
+
+                inici = System.nanoTime();
+                for (int i = 0; i < lectures; i++) {
+                    total -= comptarDisponibles(llibreMostra, bibliotecaMostra);
+                }
+                double recompte = (System.nanoTime() - inici) / 1_000.0 / lectures;
+
+                inici = System.nanoTime();
+                long enJava = Manager.getExemplarsDisponibles().stream()
+                    .filter(e -> e.getLlibre().equals(llibreMostra) && e.getBiblioteca().equals(bibliotecaMostra))
+                    .count();
+                double getExemplarsDisponibles = (System.nanoTime() - inici) / 1_000.0;
+                if (total != 0 || enJava != comptarDisponibles(llibreMostra, bibliotecaMostra)) {
+                    System.out.println("ERROR: els recomptes no coincideixen amb els comptadors");
+                    codiSortida = 1;
+                }
+                System.out.printf("Disponibilitat d'un llibre a una biblioteca: comptadors %.1f us, "
+                    + "count a la base de dades %.1f us, getExemplarsDisponibles %.0f us%n",
+                    comptadors, recompte, getExemplarsDisponibles);
+            }
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    /**
+     * Reconstrueix els comptadors i comprova que no ha calgut corregir-ne cap
+     */
+    private static int comprovar(String moment) {
+        ResultatReconciliacio resultat = new ReconciliacioComptadors().executar();
+        System.out.printf("%s %s: %s%n", resultat.senseDiferencies() ? "OK   " : "ERROR", moment, resultat);
+        return resultat.senseDiferencies() ? 0 : 1;
+    }
+
+    private static int comprovar(String nom, long valor, long esperat) {
+        boolean correcte = valor == esperat;
+        System.out.printf("%s %s = %d (esperat %d)%n", correcte ? "OK   " : "ERROR", nom, valor, esperat);
+        return correcte ? 0 : 1;
+    }
+
+    private static long comptarDisponibles(Llibre llibre, Biblioteca biblioteca) {
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            return session.createQuery(
+                "select count(e) from Exemplar e where e.llibre = :llibre and e.biblioteca = :biblioteca " +
+                "and e.disponible = true", Long.class)
+                .setParameter("llibre", llibre)
+                .setParameter("biblioteca", biblioteca)
+                .getSingleResult();
+        }
+    }
+
+    private static long comptarPrestecsActius(Persona persona) {
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            return session.createQuery(
+                "select count(p) from Prestec p where p.persona = :persona and p.actiu = true", Long.class)
+                .setParameter("persona", persona)
+                .getSingleResult();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.stat.Statistics;
+
+import com.project.dao.ArrencadaHibernate;
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Detecta consultes N+1 en els camins de lectura del Manager. Compta les
+ * sentències SQL de cada mètode (estadístiques de Hibernate) amb un catàleg
+ * petit i després amb un de gran: si el nombre de consultes creix amb les
+ * files, o supera el màxim esperat, surt amb codi 1. També recorre els
+ * resultats un cop tancada la sessió, de manera que una col·lecció que no
+ * s'hagi carregat fa fallar la comprovació.
+ *
+ * Ús: ./run.sh com.project.benchmark.ComprovacioConsultes [llibresPetit] [llibresGran]
+ */
+
+public class ComprovacioConsultes {
+    private static final int MAX_CONSULTES = 4;
+
+    public static void main(String[] args) {
+        int llibresPetit = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int llibresGran = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Manager.createSessionFactory(new ArrencadaHibernate()
+            .ambPropietat("hibernate.generate_statistics", "true")
+            .ambPropietat("hibernate.session.events.log", "false"));
+        int codiSortida = 0;
+        try {
+            Persona persona = Manager.save(new Persona("CC-DNI-0", "Persona Consultes"));
+            Biblioteca[] biblioteques = {
+                Manager.save(new Biblioteca("Biblioteca Consultes A", "Girona")),
+                Manager.save(new Biblioteca("Biblioteca Consultes B", "Lleida"))
+            };
+
+            crearCataleg(0, llibresPetit, biblioteques, persona);
+            Map<String, Long> petit = comptar(persona);
+            crearCataleg(llibresPetit, llibresGran, biblioteques, persona);
+            Map<String, Long> gran = comptar(persona);
+
+            for (String metode : petit.keySet()) {
+                long consultesPetit = petit.get(metode);
+                long consultesGran = gran.get(metode);
+                boolean correcte = consultesGran == consultesPetit && consultesGran <= MAX_CONSULTES;
+                System.out.printf("%-28s %d llibres: %d consultes, %d llibres: %d consultes %s%n",
+                    metode, llibresPetit, consultesPetit, llibresPetit + llibresGran, consultesGran,
+                    correcte ? "OK" : "<-- N+1");
+                if (!correcte) {
+                    codiSortida = 1;
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("La comprovació ha fallat: " + e);
+            codiSortida = 1;
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    /**
+     * Consultes SQL de cada mètode de lectura, accedint a tot el que retorna
+     */
+    private static Map<String, Long> comptar(Persona persona) {
+        Map<String, Long> consultes = new LinkedHashMap<>();
+        consultes.put("cercarLlibrePerTitol", comptar(() -> {
+            List<Llibre> llibres = Manager.cercarLlibrePerTitol("consultes");
+            llibres.forEach(ComprovacioConsultes::recorrer);
+            return llibres.size();
+        }));
+        consultes.put("cercarLlibrePerAutor", comptar(() -> {
+            List<Llibre> llibres = Manager.cercarLlibrePerAutor("consultes");
+            llibres.forEach(ComprovacioConsultes::recorrer);
+            return llibres.size();
+        }));
+        consultes.put("cercarLlibres", comptar(() -> {
+            List<Llibre> llibres = Manager.cercarLlibres("consultes", 0, 1000);
+            llibres.forEach(ComprovacioConsultes::recorrer);
+            return llibres.size();
+        }));
+        consultes.put("getExemplarsDisponibles", comptar(() -> {
+            List<Exemplar> exemplars = Manager.getExemplarsDisponibles();
+            for (Exemplar exemplar : exemplars) {
+                exemplar.getLlibre().getTitol();
+                exemplar.getBiblioteca().getNom();
+                exemplar.getHistorialPrestecs().forEach(prestec -> prestec.getPersona().getNom());
+            }
+            return exemplars.size();
+        }));
+        consultes.put("getPrestecsActius", comptar(() -> {
+            List<Prestec> prestecs = Manager.getPrestecsActius();
+            prestecs.forEach(ComprovacioConsultes::recorrer);
+            return prestecs.size();
+        }));
+        consultes.put("getHistorialPrestecs", comptar(() -> {
+            List<Prestec> prestecs = Manager.getHistorialPrestecs(persona);
+            prestecs.forEach(ComprovacioConsultes::recorrer);
+            return prestecs.size();
+        }));
+        return consultes;
+    }
+
+    private static long comptar(Supplier<Integer> lectura) {
+        Statistics statistics = Manager.getSessionFactory().getStatistics();
+        statistics.clear();
+        if (lectura.get() == 0) {
+            throw new IllegalStateException("La lectura no ha retornat cap resultat");
+        }
+        return statistics.getPrepareStatementCount();
+    }
+
+    private static void recorrer(Llibre llibre) {
+        llibre.getAutors().forEach(Autor::getNom);
+        for (Exemplar exemplar : llibre.getExemplars()) {
+            exemplar.getBiblioteca().getNom();
+        }
+    }
+
+    private static void recorrer(Prestec prestec) {
+        prestec.getExemplar().getLlibre().getTitol();
+        prestec.getExemplar().getBiblioteca().getNom();
+        prestec.getPersona().getNom();
+    }
+
+    /**
+     * Llibres amb dos autors propis i un exemplar a cada biblioteca. Els
+     * exemplars del primer llibre de cada tanda tenen un préstec tornat i un
+     * altre d'actiu, de manera que hi ha historial i préstecs actius per llegir.
+     */
+    private static void crearCataleg(int primer, int quantitat, Biblioteca[] biblioteques, Persona persona) {
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            LocalDate avui = LocalDate.now();
+            List<Exemplar> exemplars = new ArrayList<>();
+            for (int i = primer; i < primer + quantitat; i++) {
+                Llibre llibre = new Llibre("CC-" + i, "Llibre de consultes " + i);
+                for (int a = 0; a < 2; a++) {
+                    Autor autor = new Autor("Autora Consultes " + i + "-" + a);
+                    session.persist(autor);
+                    llibre.addAutor(autor);
+                }
+                session.persist(llibre);
+                // L'exemplar es desa abans d'afegir-lo al Set: fins aleshores no té identificador
+                for (Biblioteca biblioteca : biblioteques) {
+                    Exemplar exemplar = new Exemplar("CC-" + i + "-" + biblioteca.getBibliotecaId(), llibre,
+                        session.getReference(Biblioteca.class, biblioteca.getBibliotecaId()));
+                    session.persist(exemplar);
+                    llibre.addExemplar(exemplar);
+                    exemplars.add(exemplar);
+                }
+            }
+            Persona gestionada = session.getReference(Persona.class, persona.getPersonaId());
+            for (int e = 0; e < exemplars.size(); e++) {
+                Prestec tornat = new Prestec(exemplars.get(e), gestionada, avui.minusDays(30), avui.minusDays(15));
+                tornat.setDataRetornReal(avui.minusDays(20));
+                session.persist(tornat);
+                if (e < biblioteques.length) {
+                    exemplars.get(e).setDisponible(false);
+                    session.persist(new Prestec(exemplars.get(e), gestionada, avui, avui.plusDays(15)));
+                }
+            }
+            tx.commit();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.project.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hibernate.Session;
+
+import com.project.dao.ArrencadaHibernate;
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Comprova les mètriques del Manager: fa un nombre conegut de crides a
+ * algunes operacions, llegeix els atributs per JMX (com ho faria jconsole o
+ * un agent de monitoratge) i comprova les crides i les sentències SQL per
+ * crida, també d'un stream, que es registra en tancar-lo. Escriu també la
+ * línia periòdica de mètriques. Surt amb codi 1 si algun valor no és
+ * l'esperat.
+ *
+ * Ús: ./run.sh com.project.benchmark.ComprovacioMetriques [numPrestecs] [crides]
+ */
+
+public class ComprovacioMetriques {
+    private static final MBeanServer SERVIDOR = ManagementFactory.getPlatformMBeanServer();
+
+    public static void main(String[] args) throws Exception {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int crides = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Manager.createSessionFactory(new ArrencadaHibernate().ambMetriques(5));
+        int codiSortida = 0;
+        try {
+            new GeneradorDades(numPrestecs).generar();
+            List<Exemplar> exemplars;
+            Persona persona;
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                exemplars = session.createQuery(
+                    "from Exemplar e where e.disponible = true order by e.exemplarId", Exemplar.class)
+                    .setMaxResults(crides)
+                    .list();
+                persona = session.createQuery("from Persona p order by p.personaId", Persona.class)
+                    .setMaxResults(1)
+                    .getSingleResult();
+            }
+            LocalDate avui = LocalDate.now();
+            int noDisponibles = 0;
+            for (Exemplar exemplar : exemplars) {
+                Manager.get(Exemplar.class, exemplar.getExemplarId());
+                Manager.getPerClauNatural(Exemplar.class, exemplar.getCodiBarres());
+                Prestec prestec = Manager.ferPrestec(exemplar, persona, avui, avui.plusDays(15));
+                try {
+                    Manager.ferPrestec(exemplar, persona, avui, avui.plusDays(15));
+                } catch (IllegalStateException e) {
+                    noDisponibles++;
+                }
+                Manager.retornarPrestec(prestec, avui);
+            }
+            Manager.getPaginaHistorialPrestecs(persona, 0, 20);
+            long persones;
+            try (Stream<Persona> stream = Manager.streamPersones()) {
+                persones = stream.count();
+            }
+            Thread.sleep(6_000);
+
+            int n = exemplars.size();
+            // get: una SELECT; ferPrestec: UPDATE, INSERT, la SELECT de la versió i els UPDATE dels comptadors
+            codiSortida |= comprovar("get", "Crides", n);
+            codiSortida |= comprovar("get", "SentenciesPerCrida", 1.0);
+            codiSortida |= comprovar("get", "EntitatsPerCrida", 1.0);
+            codiSortida |= comprovar("getPerClauNatural", "Crides", n);
+            codiSortida |= comprovar("ferPrestec", "Crides", 2L * n);
+            codiSortida |= comprovar("ferPrestec", "Errors", (long) noDisponibles);
+            codiSortida |= comprovar("retornarPrestec", "Crides", n);
+            codiSortida |= comprovar("getPaginaHistorialPrestecs", "Crides", 1);
+            // Un stream es registra en tancar-lo, amb les entitats de tot el recorregut
+            codiSortida |= comprovar("streamPersones", "Crides", 1);
+            codiSortida |= comprovar("streamPersones", "EntitatsPerCrida", persones);
+            for (String operacio : List.of("get", "getPerClauNatural", "ferPrestec", "retornarPrestec")) {
+                System.out.printf("%-20s p50=%.3f p99=%.3f p999=%.3f ms, sentències/crida=%.2f, flushes/crida=%.2f%n",
+                    operacio, atribut(operacio, "P50Ms"), atribut(operacio, "P99Ms"), atribut(operacio, "P999Ms"),
+                    atribut(operacio, "SentenciesPerCrida"), atribut(operacio, "FlushesPerCrida"));
+            }
+            Object consultes = SERVIDOR.getAttribute(new ObjectName("com.project:type=Hibernate"), "ConsultesExecutades");
+            System.out.println("Hibernate: consultes executades=" + consultes);
+        } finally {
+            Manager.close();
+        }
+        if (!SERVIDOR.queryNames(new ObjectName("com.project:*"), null).isEmpty()) {
+            System.out.println("ERROR: queden MBeans registrats després de tancar");
+            codiSortida = 1;
+        }
+        System.exit(codiSortida);
+    }
+
+    private static int comprovar(String operacio, String nom, Object esperat) throws JMException {
+        Object valor = atribut(operacio, nom);
+        boolean correcte = ((Number) valor).doubleValue() == ((Number) esperat).doubleValue();
+        System.out.printf("%s %s.%s = %s (esperat %s)%n", correcte ? "OK   " : "ERROR", operacio, nom, valor, esperat);
+        return correcte ? 0 : 1;
+    }
+
+    private static Object atribut(String operacio, String nom) throws JMException {
+        return SERVIDOR.getAttribute(
+            new ObjectName("com.project:type=Manager,operacio=" + ObjectName.quote(operacio)), nom);
+    }
+}
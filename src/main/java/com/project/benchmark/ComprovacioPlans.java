@@ -0,0 +1,191 @@
+package com.project.benchmark;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.hibernate.Session;
+import org.hibernate.community.dialect.SQLiteDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import com.project.dao.ArrencadaHibernate;
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Comprova que les consultes calentes del Manager fan servir índexs. Genera
+ * un conjunt de dades amb GeneradorDades, executa cada mètode capturant el
+ * SQL que envia Hibernate i en mostra l'EXPLAIN QUERY PLAN de SQLite. Si
+ * alguna taula es recorre sencera (SCAN sense índex, o amb un índex que no
+ * és parcial) surt amb codi 1. Les taules petites de referència
+ * (biblioteques) i l'índex FTS no compten.
+ *
+ * Ús: ./run.sh com.project.benchmark.ComprovacioPlans [numPrestecs]
+ */
+
+public class ComprovacioPlans {
+    private static final Set<String> TAULES_PETITES = Set.of("biblioteques");
+
+    private static final List<String> capturades = new ArrayList<>();
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        StatementInspector inspector = sql -> {
+            synchronized (capturades) {
+                capturades.add(sql);
+            }
+            return sql;
+        };
+        Manager.createSessionFactory(new ArrencadaHibernate()
+            .ambPropietat("hibernate.session_factory.statement_inspector", inspector));
+        int codiSortida = 0;
+        try {
+            if (!(Manager.getSessionFactory().unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices().getDialect() instanceof SQLiteDialect)) {
+                System.out.println("EXPLAIN QUERY PLAN només està disponible a SQLite");
+                System.exit(2);
+            }
+            new GeneradorDades(numPrestecs).generar();
+
+            for (Map.Entry<String, Runnable> consulta : consultes().entrySet()) {
+                synchronized (capturades) {
+                    capturades.clear();
+                }
+                consulta.getValue().run();
+                Set<String> sentencies;
+                synchronized (capturades) {
+                    sentencies = new LinkedHashSet<>(capturades);
+                }
+                System.out.println("== " + consulta.getKey());
+                for (String sql : sentencies) {
+                    String inici = sql.trim().toLowerCase();
+                    if (inici.startsWith("select") || inici.startsWith("update") || inici.startsWith("delete")) {
+                        if (!explicar(sql)) {
+                            codiSortida = 1;
+                        }
+                    }
+                }
+            }
+            System.out.println(codiSortida == 0 ? "Cap consulta calenta recorre una taula sencera"
+                : "ERROR: hi ha consultes calentes que recorren taules senceres");
+        } catch (RuntimeException e) {
+            System.err.println("La comprovació ha fallat: " + e);
+            codiSortida = 1;
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    /**
+     * Mètodes del Manager que s'executen a cada petició, amb dades reals del conjunt generat
+     */
+    private static Map<String, Runnable> consultes() {
+        Persona persona;
+        Exemplar exemplar;
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            // La persona amb més préstecs
+            persona = session.createQuery(
+                "select p.persona from Prestec p group by p.persona order by count(*) desc", Persona.class)
+                .setMaxResults(1).getSingleResult();
+            exemplar = session.createQuery("from Exemplar e where e.disponible = true", Exemplar.class)
+                .setMaxResults(1).getSingleResult();
+        }
+
+        Map<String, Runnable> consultes = new LinkedHashMap<>();
+        consultes.put("getPrestecsActius", Manager::getPrestecsActius);
+        consultes.put("getPrestecsRetardats", Manager::getPrestecsRetardats);
+        consultes.put("getResumPrestecsActius", Manager::getResumPrestecsActius);
+        consultes.put("getHistorialPrestecs", () -> Manager.getHistorialPrestecs(persona));
+        consultes.put("getPaginaHistorialPrestecs", () -> Manager.getPaginaHistorialPrestecs(persona, 0, 100));
+        consultes.put("streamHistorialPrestecs", () -> {
+            try (Stream<Prestec> prestecs = Manager.streamHistorialPrestecs(persona)) {
+                prestecs.limit(100).count();
+            }
+        });
+        consultes.put("getExemplarsDisponibles", Manager::getExemplarsDisponibles);
+        consultes.put("ferPrestec + retornarPrestec", () -> {
+            LocalDate avui = LocalDate.now();
+            Prestec prestec = Manager.ferPrestec(exemplar, persona, avui, avui.plusDays(15));
+            Manager.retornarPrestec(prestec, avui);
+        });
+        consultes.put("cercarLlibrePerTitol", () -> Manager.cercarLlibrePerTitol(GeneradorDades.PARAULES.get(0)));
+        consultes.put("cercarLlibrePerAutor", () -> Manager.cercarLlibrePerAutor(GeneradorDades.COGNOMS.get(0)));
+        consultes.put("cercarLlibres", () -> Manager.cercarLlibres(GeneradorDades.PARAULES.get(0), 0, 20));
+        return consultes;
+    }
+
+    /**
+     * Mostra el pla de la sentència i retorna false si recorre alguna taula sencera
+     */
+    private static boolean explicar(String sql) {
+        boolean[] correcte = {true};
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            session.doWork(connection -> {
+                Set<String> parcials = new HashSet<>();
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "select name from sqlite_master where type = 'index' and sql like '% where %'");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        parcials.add(rs.getString(1));
+                    }
+                }
+                Map<String, String> alies = alies(sql);
+                System.out.println("  " + (sql.length() > 160 ? sql.substring(0, 160) + "..." : sql));
+                try (PreparedStatement ps = connection.prepareStatement("explain query plan " + sql)) {
+                    // El pla no depèn dels valors: tots els paràmetres van a null
+                    for (int i = 1; i <= ps.getParameterMetaData().getParameterCount(); i++) {
+                        ps.setObject(i, null);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String detall = rs.getString("detail");
+                            boolean recorregut = recorreTaula(detall, parcials, alies);
+                            System.out.println("    " + detall + (recorregut ? "   <-- taula sencera" : ""));
+                            correcte[0] &= !recorregut;
+                        }
+                    }
+                }
+            });
+        }
+        return correcte[0];
+    }
+
+    private static boolean recorreTaula(String detall, Set<String> parcials, Map<String, String> alies) {
+        if (!detall.startsWith("SCAN ") || detall.contains("VIRTUAL TABLE")) {
+            return false;
+        }
+        String taula = detall.substring(5).split(" ")[0];
+        if (TAULES_PETITES.contains(alies.getOrDefault(taula, taula))) {
+            return false;
+        }
+        int index = detall.indexOf("INDEX ");
+        return index < 0 || !parcials.contains(detall.substring(index + 6).split(" ")[0]);
+    }
+
+    /**
+     * Àlies de taula de la sentència ("prestecs p1_0" -> p1_0 = prestecs)
+     */
+    private static Map<String, String> alies(String sql) {
+        Map<String, String> alies = new LinkedHashMap<>();
+        String[] paraules = sql.replace(",", " ").split("\\s+");
+        for (int i = 1; i + 1 < paraules.length; i++) {
+            String anterior = paraules[i - 1].toLowerCase();
+            if (anterior.equals("from") || anterior.equals("join") || anterior.equals("update")) {
+                alies.put(paraules[i + 1], paraules[i]);
+            }
+        }
+        return alies;
+    }
+}
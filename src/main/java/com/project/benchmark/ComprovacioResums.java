@@ -0,0 +1,239 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.hibernate.Session;
+
+import com.project.dao.GeneradorDades;
+import com.project.dao.InformesPrestecs;
+import com.project.dao.LlibrePrestat;
+import com.project.dao.Manager;
+import com.project.dao.PrestecsBiblioteca;
+import com.project.dao.PrestecsMes;
+import com.project.dao.ReconstruccioResums;
+import com.project.dao.ResultatResums;
+import com.project.domain.*;
+
+/*
+ * Comprova els resums diaris de préstecs: després de préstecs i retorns
+ * (d'un en un i en lot, a dies que ja tenien resum i a dies que no, amb
+ * retard i sense, i amb dates passades que canvien els préstecs en retard
+ * de molts dies), els resums mantinguts pel Manager han de ser iguals als
+ * que construeix ReconstruccioResums des de l'historial. Després compara
+ * els informes dels últims dotze mesos tancats sumant els resums diaris amb
+ * els que calcula InformesPrestecs recorrent els préstecs, i mesura la
+ * reconstrucció de tot l'historial amb un fil i amb diversos.
+ * Surt amb codi 1 si algun resum no quadra.
+ *
+ * Ús: ./run.sh com.project.benchmark.ComprovacioResums [numPrestecs] [fils]
+ */
+
+public class ComprovacioResums {
+
+    public static void main(String[] args) throws InterruptedException {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int fils = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        Manager.createSessionFactory();
+        int codiSortida = 0;
+        try {
+            // Dades d'avui: els resums fins a ahir han de ser complets
+            LocalDate avui = LocalDate.now();
+            new GeneradorDades(numPrestecs, GeneradorDades.LLAVOR_PER_DEFECTE, avui).generar()
+                .forEach(System.out::println);
+            LocalDate primerDia = avui.minusYears(20);
+            codiSortida |= comprovar("després de generar les dades", primerDia, avui);
+
+            List<Exemplar> exemplars;
+            List<Persona> persones;
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                exemplars = session.createQuery(
+                    "from Exemplar e join fetch e.llibre join fetch e.biblioteca " +
+                    "where e.disponible = true order by e.exemplarId", Exemplar.class)
+                    .setMaxResults(300)
+                    .list();
+                persones = session.createQuery("from Persona p order by p.personaId", Persona.class)
+                    .setMaxResults(2)
+                    .list();
+            }
+
+            // D'un en un: avui (dia amb resum), fa deu anys (dia sense resum) i
+            // retorns amb retard i a temps
+            LocalDate antic = avui.minusYears(10);
+            for (int i = 0; i < 100; i++) {
+                LocalDate data = i % 3 == 0 ? antic : i % 3 == 1 ? avui.minusDays(30) : avui;
+                Prestec prestec = Manager.ferPrestec(exemplars.get(i), persones.get(0), data, data.plusDays(15));
+                if (i % 2 == 0) {
+                    Manager.retornarPrestec(prestec, i % 4 == 0 ? data.plusDays(15 + i) : data.plusDays(3));
+                }
+            }
+            // En lot, amb un codi repetit i un d'inexistent
+            List<String> codis = exemplars.subList(100, 300).stream().map(Exemplar::getCodiBarres)
+                .collect(Collectors.toList());
+            codis.add(codis.get(0));
+            codis.add("NO-EXISTEIX");
+            Manager.ferPrestecs(codis.subList(0, 100), persones.get(1), antic.plusDays(1), antic.plusDays(16));
+            Manager.ferPrestecs(codis.subList(100, codis.size()), persones.get(1), avui.minusDays(40), avui.minusDays(25));
+            Manager.retornarPrestecs(codis.subList(0, 50), antic.plusDays(30));
+            Manager.retornarPrestecs(codis.subList(100, 180), avui);
+            codiSortida |= comprovar("després dels préstecs i retorns", primerDia, avui);
+
+            // Informes dels últims dotze mesos tancats: resums diaris i préstecs
+            YearMonth finsA = YearMonth.now().minusMonths(1);
+            YearMonth desDe = finsA.minusMonths(11);
+            LocalDate inici = desDe.atDay(1);
+            LocalDate fi = finsA.atEndOfMonth();
+            for (int ronda = 0; ronda < 2; ronda++) {
+                InformesPrestecs informes = new InformesPrestecs();
+                List<PrestecsMes> mesos = mesurar("per mes recorrent els préstecs",
+                    () -> informes.prestecsPerMes(desDe, finsA));
+                List<PrestecsBiblioteca> biblioteques = mesurar("per biblioteca recorrent els préstecs",
+                    () -> informes.prestecsPerBiblioteca(desDe, finsA));
+                LlibrePrestat llibre = informes.llibresMesPrestats(desDe, finsA, 1).get(0);
+                List<ResumDiariBiblioteca> resums = mesurar("per mes i per biblioteca amb els resums diaris",
+                    () -> Manager.getResumsDiarisBiblioteques(inici, fi));
+                Llibre llibreMostra = Manager.get(Llibre.class, llibre.llibreId());
+                List<ResumDiariLlibre> historial = mesurar("historial del llibre més prestat amb els resums diaris",
+                    () -> Manager.getResumsDiarisLlibre(llibreMostra, inici, fi));
+                if (ronda == 1) {
+                    codiSortida |= comprovar("préstecs per mes", perMes(resums), mesos);
+                    codiSortida |= comprovar("préstecs per biblioteca", perBiblioteca(resums, biblioteques),
+                        biblioteques);
+                    codiSortida |= comprovar("préstecs del llibre més prestat",
+                        historial.stream().mapToLong(ResumDiariLlibre::getPrestecs).sum(), llibre.prestecs());
+                }
+            }
+
+            for (int n : new int[] {1, fils}) {
+                ResultatResums resultat = new ReconstruccioResums(n, ReconstruccioResums.DIES_PER_TROS_PER_DEFECTE)
+                    .executar();
+                System.out.printf("Reconstrucció fins ahir amb %d fils: %s%n", n, resultat);
+                codiSortida |= resultat.complet() ? 0 : 1;
+            }
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    /**
+     * Llegeix els resums mantinguts pel Manager, els torna a construir des
+     * de l'historial i comprova que no ha canviat cap fila
+     */
+    private static int comprovar(String moment, LocalDate desDe, LocalDate finsA) throws InterruptedException {
+        List<String> abans = resums(desDe, finsA);
+        ResultatResums resultat = new ReconstruccioResums().executar(desDe, finsA);
+        List<String> despres = resums(desDe, finsA);
+        Set<String> incorrectes = new LinkedHashSet<>(abans);
+        incorrectes.removeAll(new HashSet<>(despres));
+        Set<String> corregides = new LinkedHashSet<>(despres);
+        corregides.removeAll(new HashSet<>(abans));
+        boolean correcte = incorrectes.isEmpty() && corregides.isEmpty() && resultat.complet();
+        System.out.printf("%s %s: %d files, %d incorrectes o que sobraven, %d corregides o que faltaven (%s)%n",
+            correcte ? "OK   " : "ERROR", moment, despres.size(), incorrectes.size(), corregides.size(), resultat);
+        incorrectes.stream().limit(3).forEach(fila -> System.out.println("  era " + fila));
+        corregides.stream().limit(3).forEach(fila -> System.out.println("  és  " + fila));
+        return correcte ? 0 : 1;
+    }
+
+    private static List<String> resums(LocalDate desDe, LocalDate finsA) {
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            List<String> files = new ArrayList<>();
+            session.createQuery("from ResumDiariBiblioteca r where r.dia between :desDe and :finsA " +
+                    "order by r.dia, r.bibliotecaId", ResumDiariBiblioteca.class)
+                .setParameter("desDe", desDe)
+                .setParameter("finsA", finsA)
+                .list().forEach(r -> files.add(r.toString()));
+            session.createQuery("from ResumDiariLlibre r where r.dia between :desDe and :finsA " +
+                    "order by r.dia, r.llibreId", ResumDiariLlibre.class)
+                .setParameter("desDe", desDe)
+                .setParameter("finsA", finsA)
+                .list().forEach(r -> files.add(r.toString()));
+            return files;
+        }
+    }
+
+    private static List<PrestecsMes> perMes(List<ResumDiariBiblioteca> resums) {
+        Map<YearMonth, long[]> mesos = new TreeMap<>();
+        resums.forEach(r -> sumar(mesos.computeIfAbsent(YearMonth.from(r.getDia()), mes -> new long[4]), r));
+        List<PrestecsMes> resultat = new ArrayList<>();
+        mesos.forEach((mes, c) -> resultat.add(new PrestecsMes(mes, c[0], c[1], c[2], mitjana(c))));
+        return resultat;
+    }
+
+    /**
+     * Una fila per biblioteca de l'informe, amb el mateix nom
+     */
+    private static List<PrestecsBiblioteca> perBiblioteca(List<ResumDiariBiblioteca> resums,
+                                                          List<PrestecsBiblioteca> informe) {
+        Map<Long, long[]> biblioteques = new TreeMap<>();
+        informe.forEach(b -> biblioteques.put(b.bibliotecaId(), new long[4]));
+        resums.forEach(r -> sumar(biblioteques.get(r.getBibliotecaId()), r));
+        List<PrestecsBiblioteca> resultat = new ArrayList<>();
+        for (PrestecsBiblioteca b : informe) {
+            long[] c = biblioteques.get(b.bibliotecaId());
+            resultat.add(new PrestecsBiblioteca(b.bibliotecaId(), b.nom(), c[0], c[1], c[2], mitjana(c)));
+        }
+        return resultat;
+    }
+
+    private static void sumar(long[] comptadors, ResumDiariBiblioteca resum) {
+        comptadors[0] += resum.getPrestecs();
+        comptadors[1] += resum.getRetorns();
+        comptadors[2] += resum.getRetornsAmbRetard();
+        comptadors[3] += resum.getDiesRetard();
+    }
+
+    private static double mitjana(long[] comptadors) {
+        return comptadors[2] == 0 ? 0 : Math.round((double) comptadors[3] / comptadors[2] * 1e6) / 1e6;
+    }
+
+    private static <T> T mesurar(String nom, Supplier<T> lectura) {
+        long inici = System.nanoTime();
+        T resultat = lectura.get();
+        System.out.printf("%s: %.1f ms%n", nom, (System.nanoTime() - inici) / 1_000_000.0);
+        return resultat;
+    }
+
+    /**
+     * Les mitjanes es comparen arrodonides, perquè poden diferir en l'últim
+     * decimal segons l'ordre de la suma
+     */
+    private static int comprovar(String nom, List<? extends Record> obtingut, List<? extends Record> esperat) {
+        List<Record> arrodonit = esperat.stream().map(ComprovacioResums::arrodonit).collect(Collectors.toList());
+        boolean correcte = obtingut.equals(arrodonit);
+        System.out.printf("%s %s: %d files%n", correcte ? "OK   " : "ERROR", nom, obtingut.size());
+        if (!correcte) {
+            System.out.printf("  %s%n  esperat %s%n", obtingut, arrodonit);
+        }
+        return correcte ? 0 : 1;
+    }
+
+    private static Record arrodonit(Record fila) {
+        if (fila instanceof PrestecsMes m) {
+            return new PrestecsMes(m.mes(), m.prestecs(), m.retorns(), m.retornsAmbRetard(),
+                Math.round(m.diesRetardMitja() * 1e6) / 1e6);
+        }
+        if (fila instanceof PrestecsBiblioteca b) {
+            return new PrestecsBiblioteca(b.bibliotecaId(), b.nom(), b.prestecs(), b.retorns(),
+                b.retornsAmbRetard(), Math.round(b.diesRetardMitja() * 1e6) / 1e6);
+        }
+        return fila;
+    }
+
+    private static int comprovar(String nom, long valor, long esperat) {
+        boolean correcte = valor == esperat;
+        System.out.printf("%s %s = %d (esperat %d)%n", correcte ? "OK   " : "ERROR", nom, valor, esperat);
+        return correcte ? 0 : 1;
+    }
+}
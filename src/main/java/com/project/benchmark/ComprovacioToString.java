@@ -0,0 +1,76 @@
+package com.project.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+
+import com.project.dao.ArrencadaHibernate;
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Comprova que el toString de les entitats no carrega res: llegeix
+ * entitats de les sis classes amb les associacions i col·leccions sense
+ * carregar, tanca la sessió i les escriu totes. No hi ha d'haver cap
+ * LazyInitializationException ni cap sentència SQL nova. Escriu també un
+ * exemple de cada classe desconnectada i un exemplar i un préstec amb el
+ * pla de càrrega de detall. Surt amb codi 1 si alguna cosa falla.
+ *
+ * Ús: ./run.sh com.project.benchmark.ComprovacioToString [numPrestecs] [entitatsPerClasse]
+ */
+
+public class ComprovacioToString {
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int entitatsPerClasse = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        Manager.createSessionFactory(new ArrencadaHibernate().ambPropietat("hibernate.generate_statistics", "true"));
+        int codiSortida = 0;
+        try {
+            new GeneradorDades(numPrestecs).generar();
+            List<Object> entitats = new ArrayList<>();
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                for (Class<?> classe : List.of(Biblioteca.class, Llibre.class, Exemplar.class,
+                        Prestec.class, Persona.class, Autor.class)) {
+                    List<?> llegides = session.createQuery("from " + classe.getSimpleName(), classe)
+                        .setMaxResults(entitatsPerClasse)
+                        .list();
+                    entitats.addAll(llegides);
+                    System.out.println(llegides.get(0));
+                }
+            }
+
+            Statistics estadistiques = Manager.getSessionFactory().getStatistics();
+            long sentencies = estadistiques.getPrepareStatementCount();
+            long caracters = 0;
+            int errors = 0;
+            for (Object entitat : entitats) {
+                try {
+                    caracters += entitat.toString().length();
+                } catch (RuntimeException e) {
+                    if (errors++ == 0) {
+                        System.out.println("ERROR: " + e);
+                    }
+                }
+            }
+            long noves = estadistiques.getPrepareStatementCount() - sentencies;
+            boolean correcte = errors == 0 && noves == 0;
+            System.out.printf("%s %d entitats desconnectades escrites (%d caràcters): %d errors, %d sentències SQL%n",
+                correcte ? "OK   " : "ERROR", entitats.size(), caracters, errors, noves);
+            if (!correcte) {
+                codiSortida = 1;
+            }
+
+            Prestec prestec = (Prestec) entitats.stream().filter(Prestec.class::isInstance).findFirst().orElseThrow();
+            System.out.println(Manager.get(Prestec.class, prestec.getPrestecId(), Prestec.GRAF_DETALL));
+            System.out.println(Manager.get(Exemplar.class, prestec.getExemplar().getExemplarId(), Exemplar.GRAF_HISTORIAL));
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+}
@@ -0,0 +1,69 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Dades i mesures compartides pels benchmarks de lectura
+ */
+
+class DadesBenchmark {
+
+    private DadesBenchmark() {}
+
+    /**
+     * Un préstec actiu per exemplar, repartits entre N/5 llibres i N/20 persones.
+     * El prefix distingeix els codis si se'n creen diverses tandes.
+     */
+    static void crearPrestecs(String prefix, int numPrestecs) {
+        int numLlibres = Math.max(1, numPrestecs / 5);
+        int numPersones = Math.max(1, numPrestecs / 20);
+        LocalDate avui = LocalDate.now();
+        try (StatelessSession session = Manager.getSessionFactory().openStatelessSession()) {
+            Transaction tx = session.beginTransaction();
+            Biblioteca biblioteca = new Biblioteca("Biblioteca " + prefix, "Tarragona");
+            session.insert(biblioteca);
+            Llibre[] llibres = new Llibre[numLlibres];
+            for (int i = 0; i < numLlibres; i++) {
+                llibres[i] = new Llibre(prefix + "-" + i, "Llibre " + prefix + " " + i);
+                llibres[i].setEditorial("Editorial " + (i % 50));
+                llibres[i].setAnyPublicacio(1950 + i % 70);
+                session.insert(llibres[i]);
+            }
+            Persona[] persones = new Persona[numPersones];
+            for (int i = 0; i < numPersones; i++) {
+                persones[i] = new Persona(prefix + "-DNI-" + i, "Persona " + i);
+                persones[i].setEmail("persona" + i + "@example.cat");
+                session.insert(persones[i]);
+            }
+            for (int i = 0; i < numPrestecs; i++) {
+                Exemplar exemplar = new Exemplar(prefix + "-" + i, llibres[i % numLlibres], biblioteca);
+                exemplar.setDisponible(false);
+                session.insert(exemplar);
+                session.insert(new Prestec(exemplar, persones[i % numPersones], avui, avui.plusDays(i % 30)));
+            }
+            tx.commit();
+        }
+    }
+
+    /**
+     * Memòria ocupada del heap després de forçar el GC
+     */
+    static long memoriaUsada() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
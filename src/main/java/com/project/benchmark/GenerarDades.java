@@ -0,0 +1,57 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.hibernate.Session;
+
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.dao.ResultatCarrega;
+
+/*
+ * Omple la base de dades configurada amb el conjunt sintètic de GeneradorDades
+ * i n'escriu una empremta (recomptes i sumes de control). Dues execucions amb
+ * la mateixa mida i llavor sobre una base de dades buida han de donar la
+ * mateixa empremta, també en dies diferents.
+ *
+ * Ús: ./run.sh com.project.benchmark.GenerarDades [numPrestecs] [llavor] [dataReferencia]
+ */
+
+public class GenerarDades {
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long llavor = args.length > 1 ? Long.parseLong(args[1]) : GeneradorDades.LLAVOR_PER_DEFECTE;
+        LocalDate dataReferencia = args.length > 2 ? LocalDate.parse(args[2])
+            : GeneradorDades.DATA_REFERENCIA_PER_DEFECTE;
+
+        Manager.createSessionFactory();
+        try {
+            long inici = System.nanoTime();
+            List<ResultatCarrega> resultats = new GeneradorDades(numPrestecs, llavor, dataReferencia).generar();
+            double segons = (System.nanoTime() - inici) / 1_000_000_000.0;
+            long files = 0;
+            for (ResultatCarrega resultat : resultats) {
+                System.out.println(resultat);
+                files += resultat.inserides();
+            }
+            System.out.printf("%d files en %.1f s -> %.0f files/s%n", files, segons, files / segons);
+
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                System.out.printf("Empremta: %d %d %d %d%n",
+                    session.createQuery("select count(*) from Prestec p where p.actiu = true", Long.class)
+                        .getSingleResult(),
+                    session.createQuery("select count(*) from Prestec p where p.actiu = true"
+                        + " and p.dataRetornPrevista < :data", Long.class)
+                        .setParameter("data", dataReferencia).getSingleResult(),
+                    session.createQuery("select sum(size(l.autors) * l.llibreId + length(l.titol)) from Llibre l",
+                        Long.class).getSingleResult(),
+                    session.createQuery("select sum(mod(p.exemplar.id * p.persona.id, 1000003)) from Prestec p",
+                        Long.class).getSingleResult());
+            }
+        } finally {
+            Manager.close();
+        }
+    }
+}
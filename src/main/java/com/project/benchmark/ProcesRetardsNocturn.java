@@ -0,0 +1,130 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.hibernate.Session;
+
+import com.project.dao.ArrencadaHibernate;
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.dao.ProcesRetards;
+import com.project.dao.ReconstruccioResums;
+import com.project.dao.ResultatResums;
+import com.project.dao.ResultatRetards;
+import com.project.domain.*;
+
+/*
+ * Executa el procés de retards sobre un conjunt generat i comprova el
+ * resultat: una sanció per préstec retardat, amb els mateixos dies de
+ * retard que Prestec.getDiesRetard a la data del conjunt generat. Després
+ * tanca el resum diari d'ahir (ReconstruccioResums.tancarAhir) i comprova
+ * que els préstecs en retard d'ahir són els de l'historial. Si s'atura a
+ * mitja execució (Ctrl+C, kill), tornar-lo a llançar amb numPrestecs = 0
+ * reaprofita la base de dades i només fa les particions pendents.
+ *
+ * Surt amb codi 1 si el procés no acaba o si les sancions o el resum no
+ * quadren.
+ *
+ * Ús: ./run.sh com.project.benchmark.ProcesRetardsNocturn [numPrestecs] [fils] [midaParticio]
+ */
+
+public class ProcesRetardsNocturn {
+
+    public static void main(String[] args) throws InterruptedException {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int fils = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int midaParticio = args.length > 2 ? Integer.parseInt(args[2]) : ProcesRetards.MIDA_PARTICIO_PER_DEFECTE;
+
+        ArrencadaHibernate arrencada = new ArrencadaHibernate();
+        if (numPrestecs == 0) {
+            arrencada.ambPropietat("hibernate.hbm2ddl.auto", "none");
+        }
+        Manager.createSessionFactory(arrencada);
+        int codiSortida = 0;
+        try {
+            if (numPrestecs > 0) {
+                long inici = System.nanoTime();
+                new GeneradorDades(numPrestecs).generar();
+                System.out.printf("%d préstecs generats en %.1f s%n", numPrestecs, (System.nanoTime() - inici) / 1e9);
+            }
+            // La data del conjunt generat: una execució represa continua la mateixa data de referència
+            LocalDate dataReferencia = GeneradorDades.DATA_REFERENCIA_PER_DEFECTE;
+
+            ResultatRetards resultat = new ProcesRetards(dataReferencia, fils, midaParticio).executar();
+            System.out.println(resultat);
+            if (!resultat.complet()) {
+                System.out.println("ERROR: queden particions pendents");
+                codiSortida = 1;
+            } else if (!comprovar(dataReferencia)) {
+                codiSortida = 1;
+            }
+
+            ResultatResums resums = new ReconstruccioResums().tancarAhir();
+            System.out.println(resums);
+            if (!resums.complet() || !comprovarResum(LocalDate.now().minusDays(1))) {
+                codiSortida = 1;
+            }
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    private static boolean comprovar(LocalDate dataReferencia) {
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            long retardats = session.createQuery(
+                "select count(*) from Prestec p where p.actiu = true and p.dataRetornPrevista < :data", Long.class)
+                .setParameter("data", dataReferencia)
+                .getSingleResult();
+            long sancions = session.createQuery(
+                "select count(*) from Sancio s where s.dataReferencia = :data", Long.class)
+                .setParameter("data", dataReferencia)
+                .getSingleResult();
+            System.out.printf("%d préstecs retardats, %d sancions%n", retardats, sancions);
+            if (retardats != sancions) {
+                System.out.println("ERROR: el nombre de sancions no coincideix amb el de préstecs retardats");
+                return false;
+            }
+
+            List<Sancio> mostra = session.createQuery(
+                "from Sancio s join fetch s.prestec where s.dataReferencia = :data order by s.sancioId", Sancio.class)
+                .setParameter("data", dataReferencia)
+                .setMaxResults(1000)
+                .list();
+            for (Sancio sancio : mostra) {
+                long esperats = sancio.getPrestec().getDiesRetard(dataReferencia);
+                if (sancio.getDiesRetard() != esperats
+                        || sancio.getQuantia().compareTo(ProcesRetards.quantia(esperats)) != 0) {
+                    System.out.println("ERROR: sanció incorrecta " + sancio + " per a " + sancio.getPrestec());
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Els préstecs en retard del dia, sumant els resums de les biblioteques
+     * i comptant-los a l'historial
+     */
+    private static boolean comprovarResum(LocalDate dia) {
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            long resums = session.createQuery(
+                "select coalesce(sum(r.prestecsEnRetard), 0) from ResumDiariBiblioteca r where r.dia = :dia", Long.class)
+                .setParameter("dia", dia)
+                .getSingleResult();
+            long historial = session.createQuery(
+                "select count(*) from Prestec p where p.dataPrestec <= :dia and p.dataRetornPrevista < :dia " +
+                "and (p.dataRetornReal is null or p.dataRetornReal > :dia)", Long.class)
+                .setParameter("dia", dia)
+                .getSingleResult();
+            System.out.printf("%s: %d préstecs en retard als resums, %d a l'historial%n", dia, resums, historial);
+            if (resums != historial) {
+                System.out.println("ERROR: els préstecs en retard del resum diari no quadren");
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.project.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.hibernate.Session;
+
+import com.project.dao.GeneradorDades;
+import com.project.dao.Manager;
+import com.project.dao.ResultatExemplar;
+import com.project.dao.ServeiAsincron;
+import com.project.domain.*;
+
+/*
+ * Prova de càrrega de ServeiAsincron amb 1, 10, 100 i 1000 clients
+ * concurrents. Cada client encadena peticions sense ocupar cap fil mentre
+ * espera la resposta: un 80% són lectures (un exemplar pel codi de barres o
+ * la primera pàgina de l'historial d'una persona) i un 20% un préstec i
+ * retorn d'un exemplar pel codi de barres. Per a cada nivell escriu les
+ * operacions per segon, la latència p50/p99 vista pel client i el màxim de
+ * fils vius de la JVM, que no ha de créixer amb el nombre de clients.
+ *
+ * Ús: ./run.sh com.project.benchmark.ProvaCarregaAsincrona [numPrestecs] [segons] [clients...]
+ */
+
+public class ProvaCarregaAsincrona {
+    private static final double PROPORCIO_ESCRIPTURES = 0.2;
+
+    public static void main(String[] args) throws InterruptedException {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int segons = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int[] nivells = args.length > 2
+            ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+            : new int[] {1, 10, 100, 1000};
+
+        Manager.createSessionFactory();
+        int codiSortida = 0;
+        try (ServeiAsincron servei = new ServeiAsincron()) {
+            new GeneradorDades(numPrestecs).generar();
+            List<String> codis;
+            List<Persona> persones;
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                codis = session.createQuery("select e.codiBarres from Exemplar e", String.class).list();
+                persones = session.createQuery("from Persona p", Persona.class).setMaxResults(10_000).list();
+            }
+            System.out.printf("%d exemplars, %d persones, fils virtuals: %s%n",
+                codis.size(), persones.size(), servei.usaFilsVirtuals() ? "sí" : "no (Java < 21, pool de plataforma)");
+
+            // Escalfament
+            executar(servei, codis, persones, 10, 2);
+            for (int clients : nivells) {
+                Nivell nivell = executar(servei, codis, persones, clients, segons);
+                System.out.printf("%5d clients: %8.0f operacions/s, p50=%.2f ms, p99=%.2f ms, errors=%d, màxim de fils=%d%n",
+                    clients, nivell.operacions.get() / nivell.segons, nivell.percentil(0.50), nivell.percentil(0.99),
+                    nivell.errors.get(), nivell.maximFils);
+                if (nivell.errors.get() > 0) {
+                    codiSortida = 1;
+                }
+            }
+            System.out.println(Manager.getEstadistiquesPool());
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    private static Nivell executar(ServeiAsincron servei, List<String> codis, List<Persona> persones,
+                                   int clients, int segons) throws InterruptedException {
+        ThreadMXBean fils = ManagementFactory.getThreadMXBean();
+        fils.resetPeakThreadCount();
+        Nivell nivell = new Nivell();
+        long fi = System.nanoTime() + TimeUnit.SECONDS.toNanos(segons);
+        CountDownLatch acabats = new CountDownLatch(clients);
+        long inici = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            peticio(servei, codis, persones, nivell, fi, acabats);
+        }
+        acabats.await();
+        nivell.segons = (System.nanoTime() - inici) / 1_000_000_000.0;
+        nivell.maximFils = fils.getPeakThreadCount();
+        return nivell;
+    }
+
+    /**
+     * Envia una petició i, quan acaba, la següent del mateix client
+     */
+    private static void peticio(ServeiAsincron servei, List<String> codis, List<Persona> persones,
+                                Nivell nivell, long fi, CountDownLatch acabats) {
+        if (System.nanoTime() >= fi) {
+            acabats.countDown();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String codi = codis.get(random.nextInt(codis.size()));
+        Persona persona = persones.get(random.nextInt(persones.size()));
+        long inici = System.nanoTime();
+        double tipus = random.nextDouble();
+        CompletableFuture<?> resposta;
+        if (tipus < PROPORCIO_ESCRIPTURES) {
+            LocalDate avui = LocalDate.now();
+            resposta = servei.ferPrestecs(List.of(codi), persona, avui, avui.plusDays(15))
+                .thenCompose(resultats -> resultats.get(0).estat() == ResultatExemplar.Estat.PRESTAT
+                    ? servei.retornarPrestecs(List.of(codi), avui)
+                    : CompletableFuture.completedFuture(resultats));
+        } else if (tipus < 0.6) {
+            resposta = servei.getPerClauNatural(Exemplar.class, codi);
+        } else {
+            resposta = servei.getPaginaHistorialPrestecs(persona, 0, 20);
+        }
+        resposta.whenComplete((resultat, error) -> {
+            if (error != null) {
+                nivell.errors.incrementAndGet();
+            } else {
+                nivell.registrar(System.nanoTime() - inici);
+            }
+            peticio(servei, codis, persones, nivell, fi, acabats);
+        });
+    }
+
+    /**
+     * Operacions i histograma de latències (cubetes de 0,1 ms fins a 10 s)
+     */
+    private static class Nivell {
+        private static final long AMPLADA_NANOS = 100_000;
+        private final AtomicLongArray cubetes = new AtomicLongArray(100_000);
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong operacions = new AtomicLong();
+        private double segons;
+        private int maximFils;
+
+        void registrar(long nanos) {
+            operacions.incrementAndGet();
+            cubetes.incrementAndGet((int) Math.min(nanos / AMPLADA_NANOS, cubetes.length() - 1));
+        }
+
+        double percentil(double p) {
+            long objectiu = (long) Math.ceil(operacions.get() * p);
+            long acumulat = 0;
+            for (int i = 0; i < cubetes.length(); i++) {
+                acumulat += cubetes.get(i);
+                if (acumulat >= objectiu) {
+                    return (i + 1) * AMPLADA_NANOS / 1_000_000.0;
+                }
+            }
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Recorre milions de préstecs d'una sola persona amb streamHistorialPrestecs
+ * i amb getPaginaHistorialPrestecs i comprova que els llegeix tots, en ordre,
+ * sense que la memòria creixi amb el nombre de files. S'ha d'executar amb un
+ * heap petit i fix perquè la prova tingui sentit, per exemple:
+ *
+ *   java -Xms64m -Xmx64m -cp ... com.project.benchmark.ProvaMemoriaStream 5000000
+ *
+ * Surt amb codi 1 si falten o sobren files o si l'ordre no és correcte.
+ *
+ * Ús: ./run.sh com.project.benchmark.ProvaMemoriaStream [numPrestecs]
+ */
+
+public class ProvaMemoriaStream {
+    private static final int NUM_EXEMPLARS = 1000;
+    private static final int MIDA_TRANSACCIO = 50_000;
+    private static final int MIDA_PAGINA = 1000;
+
+    public static void main(String[] args) {
+        int numPrestecs = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+
+        Manager.createSessionFactory();
+        int codiSortida = 0;
+        try {
+            System.out.printf("Heap màxim: %d MB%n", Runtime.getRuntime().maxMemory() / (1024 * 1024));
+            long inici = System.nanoTime();
+            Persona persona = crearHistorial(numPrestecs);
+            System.out.printf("%d préstecs creats en %.1f s%n", numPrestecs, segonsDes(inici));
+
+            MemoriaMaxima memoria = new MemoriaMaxima();
+            inici = System.nanoTime();
+            long llegits = 0;
+            long anterior = Long.MAX_VALUE;
+            boolean ordenat = true;
+            try (Stream<Prestec> prestecs = Manager.streamHistorialPrestecs(persona)) {
+                Iterator<Prestec> it = prestecs.iterator();
+                while (it.hasNext()) {
+                    Prestec prestec = it.next();
+                    // El pla de càrrega inclou l'exemplar i el llibre
+                    prestec.getExemplar().getLlibre().getTitol();
+                    ordenat &= prestec.getPrestecId() < anterior;
+                    anterior = prestec.getPrestecId();
+                    if (++llegits % 100_000 == 0) memoria.mostrar();
+                }
+            }
+            System.out.printf("stream: %d préstecs en %.1f s, heap màxim usat %d MB%n",
+                llegits, segonsDes(inici), memoria.maximMb());
+            if (llegits != numPrestecs || !ordenat) {
+                System.out.println("ERROR: el stream no ha retornat tots els préstecs en ordre");
+                codiSortida = 1;
+            }
+
+            memoria = new MemoriaMaxima();
+            inici = System.nanoTime();
+            llegits = 0;
+            long darrerId = 0;
+            List<Prestec> pagina;
+            while (!(pagina = Manager.getPaginaHistorialPrestecs(persona, darrerId, MIDA_PAGINA)).isEmpty()) {
+                llegits += pagina.size();
+                darrerId = pagina.get(pagina.size() - 1).getPrestecId();
+                if (llegits % 100_000 == 0) memoria.mostrar();
+            }
+            System.out.printf("pàgines de %d: %d préstecs en %.1f s, heap màxim usat %d MB%n",
+                MIDA_PAGINA, llegits, segonsDes(inici), memoria.maximMb());
+            if (llegits != numPrestecs) {
+                System.out.println("ERROR: les pàgines no han retornat tots els préstecs");
+                codiSortida = 1;
+            }
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    /**
+     * Una persona amb numPrestecs préstecs ja retornats, repartits entre uns
+     * quants exemplars. S'insereix per transaccions amb una StatelessSession
+     * perquè la creació tampoc depengui de la mida del heap.
+     */
+    private static Persona crearHistorial(int numPrestecs) {
+        Biblioteca biblioteca = Manager.save(new Biblioteca("Biblioteca Stream", "Vic"));
+        Llibre llibre = Manager.save(new Llibre("STREAM-0001", "Llibre de l'stream"));
+        Persona persona = Manager.save(new Persona("STREAM-DNI", "Persona Stream"));
+        Exemplar[] exemplars = new Exemplar[NUM_EXEMPLARS];
+        for (int i = 0; i < NUM_EXEMPLARS; i++) {
+            exemplars[i] = new Exemplar("STREAM-" + i, llibre, biblioteca);
+        }
+        LocalDate inici = LocalDate.of(2000, 1, 1);
+        for (int primer = -NUM_EXEMPLARS; primer < numPrestecs; primer += MIDA_TRANSACCIO) {
+            try (StatelessSession session = Manager.getSessionFactory().openStatelessSession()) {
+                Transaction tx = session.beginTransaction();
+                for (int i = primer; i < Math.min(numPrestecs, primer + MIDA_TRANSACCIO); i++) {
+                    if (i < 0) {
+                        // Els exemplars van primer, en la mateixa tanda
+                        session.insert(exemplars[i + NUM_EXEMPLARS]);
+                        continue;
+                    }
+                    LocalDate data = inici.plusDays(i / NUM_EXEMPLARS);
+                    Prestec prestec = new Prestec(exemplars[i % NUM_EXEMPLARS], persona, data, data.plusDays(15));
+                    prestec.setActiu(false);
+                    prestec.setDataRetornReal(data.plusDays(10));
+                    session.insert(prestec);
+                }
+                tx.commit();
+            }
+        }
+        return persona;
+    }
+
+    private static double segonsDes(long inici) {
+        return (System.nanoTime() - inici) / 1_000_000_000.0;
+    }
+
+    /**
+     * Heap ocupat just després d'un GC, el màxim de totes les mostres
+     */
+    private static class MemoriaMaxima {
+        private long maxim = 0;
+
+        void mostrar() {
+            maxim = Math.max(maxim, DadesBenchmark.memoriaUsada());
+        }
+
+        long maximMb() {
+            return maxim / (1024 * 1024);
+        }
+    }
+}
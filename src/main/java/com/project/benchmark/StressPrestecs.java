@@ -0,0 +1,164 @@
+package com.project.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.hibernate.Session;
+
+import com.project.dao.Manager;
+import com.project.domain.*;
+
+/*
+ * Prova d'estrès del préstec concurrent: molts fils intenten prestar i
+ * retornar els mateixos pocs exemplars alhora, i cada préstec es manté uns
+ * mil·lisegons abans de retornar-lo. Es detecten els dobles préstecs de tres
+ * maneres: un fil que presta un exemplar que un altre fil encara té, un fil
+ * que consulta periòdicament si algun exemplar té més d'un préstec actiu, i
+ * en acabar, amb l'últim préstec de cada fil sense retornar, la mateixa
+ * consulta i la comprovació que el camp 'disponible' quadra amb els préstecs
+ * actius. Surt amb codi 1 si es detecta un doble préstec.
+ *
+ * Ús: ./run.sh com.project.benchmark.StressPrestecs [fils] [exemplars] [segons]
+ */
+
+public class StressPrestecs {
+
+    public static void main(String[] args) throws InterruptedException {
+        int numFils = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int numExemplars = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int segons = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Manager.createSessionFactory();
+        int codiSortida = 0;
+        try {
+            Biblioteca biblioteca = Manager.save(new Biblioteca("Biblioteca Estrès", "Barcelona"));
+            Llibre llibre = Manager.save(new Llibre("STRESS-0001", "Llibre d'estrès"));
+            List<Exemplar> exemplars = new ArrayList<>();
+            for (int i = 0; i < numExemplars; i++) {
+                exemplars.add(Manager.save(new Exemplar("ST-" + i, llibre, biblioteca)));
+            }
+            List<Persona> persones = new ArrayList<>();
+            for (int i = 0; i < numFils; i++) {
+                persones.add(Manager.save(new Persona("ST-DNI-" + i, "Persona " + i)));
+            }
+
+            AtomicLong prestecs = new AtomicLong();
+            AtomicLong noDisponibles = new AtomicLong();
+            AtomicLong retorns = new AtomicLong();
+            AtomicLong errors = new AtomicLong();
+            AtomicLong doblesDurant = new AtomicLong();
+            AtomicLong doblesMostrejats = new AtomicLong();
+            AtomicLong mostres = new AtomicLong();
+            // Exemplars prestats ara mateix segons els fils: un segon préstec simultani és un error
+            Set<Long> prestats = ConcurrentHashMap.newKeySet();
+            long fi = System.nanoTime() + TimeUnit.SECONDS.toNanos(segons);
+            LocalDate avui = LocalDate.now();
+
+            ExecutorService executor = Executors.newFixedThreadPool(numFils);
+            long inici = System.nanoTime();
+            Thread mostreig = new Thread(() -> {
+                while (System.nanoTime() < fi) {
+                    try {
+                        doblesMostrejats.addAndGet(exemplarsAmbPrestecsDuplicats());
+                        mostres.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        // Base de dades ocupada: es torna a provar a la mostra següent
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                }
+            });
+            mostreig.start();
+            for (int f = 0; f < numFils; f++) {
+                Persona persona = persones.get(f);
+                executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < fi) {
+                        // Cada fil treballa amb la seva pròpia còpia desconnectada de l'exemplar
+                        Exemplar exemplar = new Exemplar();
+                        exemplar.setExemplarId(exemplars.get(random.nextInt(numExemplars)).getExemplarId());
+                        try {
+                            Prestec prestec = Manager.ferPrestec(exemplar, persona, avui, avui.plusDays(15));
+                            prestecs.incrementAndGet();
+                            if (!prestats.add(exemplar.getExemplarId())) {
+                                doblesDurant.incrementAndGet();
+                            }
+                            // Mentre el préstec és actiu cap altre fil hauria de poder prestar l'exemplar
+                            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(500 + random.nextInt(4_500)));
+                            prestats.remove(exemplar.getExemplarId());
+                            Manager.retornarPrestec(prestec, avui);
+                            retorns.incrementAndGet();
+                        } catch (IllegalStateException e) {
+                            noDisponibles.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    // L'últim préstec de cada fil es queda actiu per a la comprovació final
+                    Exemplar exemplar = new Exemplar();
+                    exemplar.setExemplarId(exemplars.get(random.nextInt(numExemplars)).getExemplarId());
+                    try {
+                        Manager.ferPrestec(exemplar, persona, avui, avui.plusDays(15));
+                        prestecs.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        noDisponibles.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(segons + 120L, TimeUnit.SECONDS);
+            mostreig.join();
+            double durada = (System.nanoTime() - inici) / 1_000_000_000.0;
+
+            System.out.printf("%d fils, %d exemplars, %.1f s%n", numFils, numExemplars, durada);
+            System.out.printf("préstecs=%d (%.0f/s), retorns=%d, no disponibles=%d, errors=%d%n",
+                prestecs.get(), prestecs.get() / durada, retorns.get(), noDisponibles.get(), errors.get());
+            System.out.println(Manager.getEstadistiquesPool());
+
+            try (Session session = Manager.getSessionFactory().openSession()) {
+                long actius = session.createQuery(
+                    "select count(*) from Prestec p where p.actiu = true and p.exemplar.llibre.llibreId = :llibre", Long.class)
+                    .setParameter("llibre", llibre.getLlibreId())
+                    .getSingleResult();
+                long dobles = exemplarsAmbPrestecsDuplicats();
+                long incoherents = session.createQuery(
+                    "select count(*) from Exemplar e where e.llibre.llibreId = :llibre and " +
+                    "((e.disponible = true and exists (select 1 from Prestec p where p.exemplar = e and p.actiu = true)) or " +
+                    " (e.disponible = false and not exists (select 1 from Prestec p where p.exemplar = e and p.actiu = true)))",
+                    Long.class).setParameter("llibre", llibre.getLlibreId()).getSingleResult();
+                System.out.printf("dobles préstecs vistos pels fils=%d, en %d mostres=%d; al final, amb %d préstecs actius: "
+                    + "exemplars amb préstecs duplicats=%d, amb disponibilitat incoherent=%d%n",
+                    doblesDurant.get(), mostres.get(), doblesMostrejats.get(), actius, dobles, incoherents);
+                if (doblesDurant.get() > 0 || doblesMostrejats.get() > 0 || dobles > 0 || incoherents > 0) {
+                    codiSortida = 1;
+                }
+            }
+        } finally {
+            Manager.close();
+        }
+        System.exit(codiSortida);
+    }
+
+    /**
+     * Exemplars que tenen ara mateix més d'un préstec actiu
+     */
+    private static long exemplarsAmbPrestecsDuplicats() {
+        try (Session session = Manager.getSessionFactory().openSession()) {
+            return session.createQuery(
+                "select p.exemplar.exemplarId from Prestec p where p.actiu = true " +
+                "group by p.exemplar.exemplarId having count(*) > 1", Long.class)
+                .list()
+                .size();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.project.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.Environment;
+
+import com.project.domain.*;
+
+/**
+ * Construeix la SessionFactory a partir d'una única llista d'entitats.
+ *
+ * Per defecte es comporta com sempre (hibernate.properties i hbm2ddl segons
+ * el fitxer). El mode ràpid evita la feina d'arrencada que no cal en producció:
+ * no genera ni valida l'esquema, no consulta les metadades JDBC en arrencar
+ * i desactiva la integració de Bean Validation i els mapatges XML.
+ */
+public class ArrencadaHibernate {
+    /**
+     * Totes les classes amb anotacions JPA del domini
+     */
+    static final Class<?>[] ENTITATS = {
+        Biblioteca.class,
+        Llibre.class,
+        Exemplar.class,
+        Prestec.class,
+        Persona.class,
+        Autor.class,
+        Sancio.class,
+        ParticioRetards.class,
+        DisponibilitatLlibre.class,
+        PrestecsPersona.class,
+        ResumDiariBiblioteca.class,
+        ResumDiariLlibre.class
+    };
+
+    /**
+     * Propietat que activa el mode escriptor únic del Manager
+     */
+    static final String ESCRIPTOR_UNIC = "project.escriptor_unic";
+
+    /**
+     * Propietat que marca una SessionFactory de només lectura (informes)
+     */
+    static final String NOMES_LECTURA = "project.nomes_lectura";
+
+    private final Map<String, Object> propietats = new HashMap<>();
+    private boolean mostrarTemps = false;
+    private long tempsPropietats = 0;
+    private final Map<String, Long> temps = new LinkedHashMap<>();
+
+    /**
+     * Parteix de hibernate.properties i de les propietats de sistema hibernate.*
+     */
+    public ArrencadaHibernate() {
+        Environment.getProperties().forEach((clau, valor) -> propietats.put((String) clau, valor));
+    }
+
+    /**
+     * Afegeix les propietats d'un fitxer del classpath, per sobre de hibernate.properties
+     */
+    public ArrencadaHibernate ambFitxerPropietats(String propertiesFileName) throws IOException {
+        long inici = System.nanoTime();
+        Properties properties = new Properties();
+        try (InputStream input = ArrencadaHibernate.class.getClassLoader().getResourceAsStream(propertiesFileName)) {
+            if (input == null) {
+                throw new IOException("No s'ha trobat " + propertiesFileName);
+            }
+            properties.load(input);
+        }
+        properties.forEach((clau, valor) -> propietats.put((String) clau, valor));
+        tempsPropietats += (System.nanoTime() - inici) / 1_000_000;
+        return this;
+    }
+
+    public ArrencadaHibernate ambPropietat(String clau, Object valor) {
+        propietats.put(clau, valor);
+        return this;
+    }
+
+    /**
+     * Arrencada per a producció i processos curts: l'esquema ha d'existir ja
+     */
+    public ArrencadaHibernate modeRapid() {
+        propietats.put("hibernate.hbm2ddl.auto", "none");
+        propietats.put("hibernate.boot.allow_jdbc_metadata_access", "false");
+        propietats.put("hibernate.xml_mapping_enabled", "false");
+        propietats.put("hibernate.query.startup_check", "false");
+        propietats.put("jakarta.persistence.validation.mode", "none");
+        return this;
+    }
+
+    /**
+     * Activa la cache de segon nivell i la de consultes (Caffeine dins del procés,
+     * regions definides a caffeine.conf) i les estadístiques per seguir-ne l'ús
+     */
+    public ArrencadaHibernate ambCacheSegonNivell() {
+        propietats.put("hibernate.cache.use_second_level_cache", "true");
+        propietats.put("hibernate.cache.use_query_cache", "true");
+        propietats.put("hibernate.cache.region.factory_class", "jcache");
+        propietats.put("hibernate.javax.cache.provider", "com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider");
+        propietats.put("hibernate.javax.cache.uri", "caffeine.conf");
+        propietats.put("hibernate.javax.cache.missing_cache_strategy", "create");
+        propietats.put("hibernate.generate_statistics", "true");
+        propietats.put("hibernate.session.events.log", "false");
+        return this;
+    }
+
+    /**
+     * Totes les escriptures del Manager les fa un sol fil, que agrupa les
+     * que fan cua en una sola transacció (veure EscriptorUnic)
+     */
+    public ArrencadaHibernate ambEscriptorUnic() {
+        propietats.put(ESCRIPTOR_UNIC, "true");
+        return this;
+    }
+
+    /**
+     * SessionFactory per a informes i consultes: les sessions del Manager són
+     * de només lectura i amb FlushMode.MANUAL, les connexions del pool es
+     * marquen com a només lectura (a SQLite s'obren en mode read-only) i
+     * l'esquema no es toca mai, sigui quin sigui hbm2ddl a hibernate.properties.
+     * Per llegir d'una altra base de dades (una rèplica), cal indicar-ne la
+     * URL amb ambPropietat("hibernate.connection.url", ...).
+     */
+    public ArrencadaHibernate ambNomesLectura() {
+        propietats.put(NOMES_LECTURA, "true");
+        propietats.put("hibernate.hbm2ddl.auto", "none");
+        propietats.put("hibernate.hikari.readOnly", "true");
+        propietats.putIfAbsent("hibernate.hikari.poolName", "pool-project-lectura");
+        return this;
+    }
+
+    /**
+     * Activa les Statistics de Hibernate i les mètriques per operació del
+     * Manager (latències i sentències per crida), publicades per JMX i en una
+     * línia per consola cada intervalLogSegons (0 per no escriure-la)
+     */
+    public ArrencadaHibernate ambMetriques(int intervalLogSegons) {
+        propietats.put(MetriquesManager.METRIQUES, "true");
+        propietats.put(MetriquesManager.INTERVAL_LOG, String.valueOf(intervalLogSegons));
+        propietats.put("hibernate.generate_statistics", "true");
+        propietats.put("hibernate.session.events.log", "false");
+        propietats.put("hibernate.session.events.auto", ComptadorSessio.class.getName());
+        propietats.put("hibernate.session_factory.interceptor", ComptadorSessio.class.getName());
+        return this;
+    }
+
+    /**
+     * Mostra per consola quant ha trigat cada fase de l'arrencada
+     */
+    public ArrencadaHibernate ambTempsArrencada(boolean mostrarTemps) {
+        this.mostrarTemps = mostrarTemps;
+        return this;
+    }
+
+    /**
+     * Temps en mil·lisegons de cada fase de l'última construcció
+     */
+    public Map<String, Long> getTemps() {
+        return temps;
+    }
+
+    public SessionFactory construir() {
+        long iniciTotal = System.nanoTime();
+        temps.clear();
+        if (tempsPropietats > 0) {
+            temps.put("propietats", tempsPropietats);
+        }
+        Map<String, Object> configuracio = configuracioFinal();
+
+        long inici = System.nanoTime();
+        StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
+            .applySettings(configuracio)
+            .build();
+        registrarTemps("registre de serveis", inici);
+
+        inici = System.nanoTime();
+        MetadataSources sources = new MetadataSources(serviceRegistry);
+        for (Class<?> entitat : ENTITATS) {
+            sources.addAnnotatedClass(entitat);
+        }
+        Metadata metadata = sources.getMetadataBuilder().build();
+        registrarTemps("metadades", inici);
+
+        inici = System.nanoTime();
+        SessionFactory factory = metadata.getSessionFactoryBuilder().build();
+        ComptadorsDisponibilitat.registrar(factory);
+        registrarTemps("session factory", inici);
+        registrarTemps("total", iniciTotal);
+
+        if (mostrarTemps) {
+            StringBuilder sb = new StringBuilder("Arrencada de Hibernate:");
+            temps.forEach((fase, ms) -> sb.append(String.format(" %s=%dms", fase, ms)));
+            System.out.println(sb);
+        }
+        return factory;
+    }
+
+    /**
+     * Propietats explícites més els valors per defecte del projecte, com ara
+     * els lots JDBC (insercions i actualitzacions ordenades per entitat)
+     */
+    private Map<String, Object> configuracioFinal() {
+        Map<String, Object> configuracio = new HashMap<>(propietats);
+        configuracio.putIfAbsent("hibernate.jdbc.batch_size", "50");
+        configuracio.putIfAbsent("hibernate.order_inserts", "true");
+        configuracio.putIfAbsent("hibernate.order_updates", "true");
+        return configuracio;
+    }
+
+    private void registrarTemps(String fase, long inici) {
+        temps.merge(fase, (System.nanoTime() - inici) / 1_000_000, Long::sum);
+    }
+}
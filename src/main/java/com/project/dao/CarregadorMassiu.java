@@ -0,0 +1,334 @@
+package com.project.dao;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import com.project.domain.*;
+
+/**
+ * Càrrega massiva del catàleg des de fitxers CSV o JSONL.
+ *
+ * A diferència de Manager.save, cada lot de files s'insereix amb una única
+ * StatelessSession i una única transacció, i les referències a autors,
+ * biblioteques i llibres es resolen per clau natural (nom o ISBN) amb mapes
+ * en memòria carregats una sola vegada. Les files sense els camps
+ * obligatoris, amb referències que no existeixen o amb una clau natural
+ * (nom, ISBN, codi de barres o DNI) que ja és a la base de dades o més amunt
+ * al fitxer no s'insereixen i es compten com a rebutjades.
+ *
+ * Columnes esperades per a cada entitat:
+ *   biblioteques: nom, ciutat, adreca, telefon, email
+ *   autors:       nom
+ *   llibres:      isbn, titol, editorial, anyPublicacio, autors (noms separats per ';')
+ *   exemplars:    codiBarres, isbn, biblioteca (nom de la biblioteca)
+ *   persones:     dni, nom, telefon, email
+ */
+public class CarregadorMassiu {
+    public static final int MIDA_LOT_PER_DEFECTE = 1000;
+
+    private final SessionFactory factory;
+    private final int midaLot;
+
+    private Map<String, Long> autorsPerNom;
+    private Map<String, Long> bibliotequesPerNom;
+    private Map<String, Long> llibresPerIsbn;
+    private Map<String, Long> exemplarsPerCodi;
+    private Map<String, Long> personesPerDni;
+
+    public CarregadorMassiu() {
+        this(MIDA_LOT_PER_DEFECTE);
+    }
+
+    public CarregadorMassiu(int midaLot) {
+        this(Manager.getSessionFactory(), midaLot);
+    }
+
+    public CarregadorMassiu(SessionFactory factory, int midaLot) {
+        if (midaLot <= 0) {
+            throw new IllegalArgumentException("La mida del lot ha de ser positiva");
+        }
+        this.factory = factory;
+        this.midaLot = midaLot;
+    }
+
+    @FunctionalInterface
+    private interface InsercioLot {
+        /**
+         * Insereix el lot i retorna quantes files s'han inserit realment
+         */
+        long inserir(StatelessSession sessio, List<Map<String, String>> lot);
+    }
+
+    public ResultatCarrega carregarBiblioteques(Path fitxer) throws IOException {
+        return carregar("Biblioteca", fitxer, (sessio, lot) -> {
+            Map<String, Long> claus = bibliotequesPerNom();
+            long inserides = 0;
+            for (Map<String, String> fila : lot) {
+                String nom = fila.get("nom");
+                String ciutat = fila.get("ciutat");
+                if (nom == null || ciutat == null || claus.containsKey(nom)) continue;
+                Biblioteca biblioteca = new Biblioteca(nom, ciutat);
+                biblioteca.setAdreca(fila.get("adreca"));
+                biblioteca.setTelefon(fila.get("telefon"));
+                biblioteca.setEmail(fila.get("email"));
+                sessio.insert(biblioteca);
+                claus.put(nom, biblioteca.getBibliotecaId());
+                inserides++;
+            }
+            return inserides;
+        });
+    }
+
+    public ResultatCarrega carregarAutors(Path fitxer) throws IOException {
+        return carregar("Autor", fitxer, (sessio, lot) -> {
+            Map<String, Long> claus = autorsPerNom();
+            long inserides = 0;
+            for (Map<String, String> fila : lot) {
+                String nom = fila.get("nom");
+                if (nom == null || claus.containsKey(nom)) continue;
+                claus.put(nom, inserirAutor(sessio, nom));
+                inserides++;
+            }
+            return inserides;
+        });
+    }
+
+    public ResultatCarrega carregarLlibres(Path fitxer) throws IOException {
+        return carregar("Llibre", fitxer, (sessio, lot) -> {
+            Map<String, Long> claus = llibresPerIsbn();
+            Map<String, Long> clausAutors = autorsPerNom();
+            List<long[]> relacions = new ArrayList<>();
+            long inserides = 0;
+            for (Map<String, String> fila : lot) {
+                String isbn = fila.get("isbn");
+                String titol = fila.get("titol");
+                if (isbn == null || titol == null || claus.containsKey(isbn)) continue;
+                Llibre llibre = new Llibre(isbn, titol);
+                llibre.setEditorial(fila.get("editorial"));
+                String any = fila.get("anyPublicacio");
+                if (any != null) {
+                    try {
+                        llibre.setAnyPublicacio(Integer.valueOf(any));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                }
+                sessio.insert(llibre);
+                claus.put(isbn, llibre.getLlibreId());
+                inserides++;
+
+                String autors = fila.get("autors");
+                if (autors != null) {
+                    // Un autor repetit a la fila donaria dues vegades la mateixa
+                    // clau a llibre_autor i faria fallar tot el lot
+                    Set<String> noms = new LinkedHashSet<>();
+                    for (String nom : autors.split(";")) {
+                        if (!nom.isBlank()) noms.add(nom.trim());
+                    }
+                    for (String nom : noms) {
+                        Long autorId = clausAutors.get(nom);
+                        if (autorId == null) {
+                            autorId = inserirAutor(sessio, nom);
+                            clausAutors.put(nom, autorId);
+                        }
+                        relacions.add(new long[] {llibre.getLlibreId(), autorId});
+                    }
+                }
+            }
+            inserirRelacionsAutors(sessio, relacions);
+            return inserides;
+        });
+    }
+
+    public ResultatCarrega carregarExemplars(Path fitxer) throws IOException {
+        return carregar("Exemplar", fitxer, (sessio, lot) -> {
+            Map<String, Long> claus = exemplarsPerCodi();
+            long inserides = 0;
+            Set<List<Long>> llibresBiblioteques = new HashSet<>();
+            for (Map<String, String> fila : lot) {
+                String codi = fila.get("codiBarres");
+                Long llibreId = fila.get("isbn") == null ? null : llibresPerIsbn().get(fila.get("isbn"));
+                Long bibliotecaId = fila.get("biblioteca") == null ? null : bibliotequesPerNom().get(fila.get("biblioteca"));
+                if (codi == null || llibreId == null || bibliotecaId == null || claus.containsKey(codi)) continue;
+
+                // Referències només amb l'identificador: no cal llegir el llibre ni la biblioteca
+                Llibre llibre = new Llibre();
+                llibre.setLlibreId(llibreId);
+                Biblioteca biblioteca = new Biblioteca();
+                biblioteca.setBibliotecaId(bibliotecaId);
+
+                Exemplar exemplar = new Exemplar(codi, llibre, biblioteca);
+                sessio.insert(exemplar);
+                claus.put(codi, exemplar.getExemplarId());
+                llibresBiblioteques.add(List.of(llibreId, bibliotecaId));
+                inserides++;
+            }
+            // La StatelessSession no passa pel listener dels comptadors: es
+            // recalculen a la mateixa transacció, amb els exemplars ja escrits
+            ((SharedSessionContractImplementor) sessio).getJdbcCoordinator().executeBatch();
+            for (List<Long> clau : llibresBiblioteques) {
+                ComptadorsDisponibilitat.recalcularDisponibilitat(sessio, clau.get(0), clau.get(1));
+            }
+            return inserides;
+        });
+    }
+
+    public ResultatCarrega carregarPersones(Path fitxer) throws IOException {
+        return carregar("Persona", fitxer, (sessio, lot) -> {
+            Map<String, Long> claus = personesPerDni();
+            long inserides = 0;
+            for (Map<String, String> fila : lot) {
+                String dni = fila.get("dni");
+                String nom = fila.get("nom");
+                if (dni == null || nom == null || claus.containsKey(dni)) continue;
+                Persona persona = new Persona(dni, nom);
+                persona.setTelefon(fila.get("telefon"));
+                persona.setEmail(fila.get("email"));
+                sessio.insert(persona);
+                claus.put(dni, persona.getPersonaId());
+                inserides++;
+            }
+            return inserides;
+        });
+    }
+
+    private ResultatCarrega carregar(String entitat, Path fitxer, InsercioLot insercio) throws IOException {
+        long inici = System.nanoTime();
+        long llegides = 0;
+        long inserides = 0;
+        try (LectorRegistres lector = new LectorRegistres(fitxer)) {
+            List<Map<String, String>> lot = new ArrayList<>(midaLot);
+            while (lector.hasNext()) {
+                lot.add(lector.next());
+                llegides++;
+                if (lot.size() == midaLot) {
+                    inserides += inserirLot(lot, insercio, lector.getNumLinia());
+                    lot.clear();
+                }
+            }
+            if (!lot.isEmpty()) {
+                inserides += inserirLot(lot, insercio, lector.getNumLinia());
+            }
+        }
+        Duration durada = Duration.ofNanos(System.nanoTime() - inici);
+        return new ResultatCarrega(entitat, llegides, inserides, llegides - inserides, durada);
+    }
+
+    /**
+     * Insereix un lot en una transacció. Si falla, els lots anteriors ja
+     * estan confirmats i l'error indica fins a quina línia del fitxer.
+     */
+    private long inserirLot(List<Map<String, String>> lot, InsercioLot insercio, long darreraLinia) {
+        StatelessSession sessio = factory.openStatelessSession();
+        Transaction tx = null;
+        try {
+            sessio.setJdbcBatchSize(midaLot);
+            tx = sessio.beginTransaction();
+            long inserides = insercio.inserir(sessio, lot);
+            tx.commit();
+            return inserides;
+        } catch (HibernateException e) {
+            if (tx != null) tx.rollback();
+            // Les claus afegides durant el lot ja no són vàlides
+            autorsPerNom = null;
+            bibliotequesPerNom = null;
+            llibresPerIsbn = null;
+            exemplarsPerCodi = null;
+            personesPerDni = null;
+            throw new HibernateException("Error en inserir el lot de " + lot.size() + " registres que acaba a la línia "
+                + darreraLinia + "; els lots anteriors ja s'han desat", e);
+        } finally {
+            sessio.close();
+        }
+    }
+
+    private long inserirAutor(StatelessSession sessio, String nom) {
+        Autor autor = new Autor(nom);
+        sessio.insert(autor);
+        return autor.getAutorId();
+    }
+
+    /**
+     * La taula llibre_autor no té entitat pròpia i la StatelessSession ignora
+     * les col·leccions, així que s'omple directament amb un lot JDBC
+     */
+    private void inserirRelacionsAutors(StatelessSession sessio, List<long[]> relacions) {
+        if (relacions.isEmpty()) return;
+        // Els llibres han d'estar escrits abans d'inserir-ne les relacions
+        ((SharedSessionContractImplementor) sessio).getJdbcCoordinator().executeBatch();
+        sessio.doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "insert into llibre_autor (llibre_id, autor_id) values (?, ?)")) {
+                for (long[] relacio : relacions) {
+                    ps.setLong(1, relacio[0]);
+                    ps.setLong(2, relacio[1]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    private Map<String, Long> autorsPerNom() {
+        if (autorsPerNom == null) {
+            autorsPerNom = carregarClaus("select a.nom, a.autorId from Autor a");
+        }
+        return autorsPerNom;
+    }
+
+    private Map<String, Long> bibliotequesPerNom() {
+        if (bibliotequesPerNom == null) {
+            bibliotequesPerNom = carregarClaus("select b.nom, b.bibliotecaId from Biblioteca b");
+        }
+        return bibliotequesPerNom;
+    }
+
+    private Map<String, Long> llibresPerIsbn() {
+        if (llibresPerIsbn == null) {
+            llibresPerIsbn = carregarClaus("select l.isbn, l.llibreId from Llibre l");
+        }
+        return llibresPerIsbn;
+    }
+
+    private Map<String, Long> exemplarsPerCodi() {
+        if (exemplarsPerCodi == null) {
+            exemplarsPerCodi = carregarClaus("select e.codiBarres, e.exemplarId from Exemplar e");
+        }
+        return exemplarsPerCodi;
+    }
+
+    private Map<String, Long> personesPerDni() {
+        if (personesPerDni == null) {
+            personesPerDni = carregarClaus("select p.dni, p.personaId from Persona p");
+        }
+        return personesPerDni;
+    }
+
+    private Map<String, Long> carregarClaus(String hql) {
+        StatelessSession sessio = factory.openStatelessSession();
+        try {
+            Map<String, Long> claus = new HashMap<>();
+            for (Object[] fila : sessio.createQuery(hql, Object[].class).list()) {
+                claus.put((String) fila[0], (Long) fila[1]);
+            }
+            return claus;
+        } finally {
+            sessio.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.project.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.community.dialect.SQLiteDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+/**
+ * Índex de text complet de títols i autors amb una taula virtual FTS5 de SQLite.
+ *
+ * La taula 'llibres_fts' té com a rowid l'identificador del llibre i es manté
+ * sincronitzada amb triggers sobre llibres, llibre_autor i autors, de manera que
+ * qualsevol escriptura (Manager, càrregues massives o SQL directe) l'actualitza.
+ * El tokenitzador treu els accents ("Garcia" troba "García") i cada paraula de
+ * la cerca es tracta com a prefix. Els resultats s'ordenen per bm25, amb més
+ * pes per al títol que per als autors.
+ */
+class CercaLlibres {
+    static final String CAMP_TITOL = "titol";
+    static final String CAMP_AUTORS = "autors";
+
+    private static final String AUTORS_DEL_LLIBRE =
+        "coalesce((select group_concat(a.nom, ' ') from llibre_autor la " +
+        "join autors a on a.autorId = la.autor_id where la.llibre_id = %s), '')";
+
+    private static final String[] DDL = {
+        // La clau primària de llibre_autor comença per autor_id: sense aquest
+        // índex cada trigger recorreria tota la taula per trobar els autors
+        "create index if not exists idx_llibre_autor_llibre on llibre_autor(llibre_id)",
+
+        "create virtual table if not exists llibres_fts using fts5(" +
+            "titol, autors, tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3 4')",
+
+        "create trigger if not exists llibres_fts_ai after insert on llibres begin " +
+            "insert into llibres_fts(rowid, titol, autors) values (new.llibreId, new.titol, " +
+            String.format(AUTORS_DEL_LLIBRE, "new.llibreId") + "); end",
+        "create trigger if not exists llibres_fts_au after update of titol on llibres begin " +
+            "update llibres_fts set titol = new.titol where rowid = new.llibreId; end",
+        "create trigger if not exists llibres_fts_ad after delete on llibres begin " +
+            "delete from llibres_fts where rowid = old.llibreId; end",
+
+        "create trigger if not exists llibre_autor_fts_ai after insert on llibre_autor begin " +
+            "update llibres_fts set autors = " + String.format(AUTORS_DEL_LLIBRE, "new.llibre_id") +
+            " where rowid = new.llibre_id; end",
+        "create trigger if not exists llibre_autor_fts_ad after delete on llibre_autor begin " +
+            "update llibres_fts set autors = " + String.format(AUTORS_DEL_LLIBRE, "old.llibre_id") +
+            " where rowid = old.llibre_id; end",
+        "create trigger if not exists autors_fts_au after update of nom on autors begin " +
+            "update llibres_fts set autors = " + String.format(AUTORS_DEL_LLIBRE, "llibres_fts.rowid") +
+            " where rowid in (select llibre_id from llibre_autor where autor_id = new.autorId); end"
+    };
+
+    private static final String[] TRIGGERS = {
+        "llibres_fts_ai", "llibres_fts_au", "llibres_fts_ad",
+        "llibre_autor_fts_ai", "llibre_autor_fts_ad", "autors_fts_au"
+    };
+
+    private static final String RECONSTRUIR =
+        "insert into llibres_fts(rowid, titol, autors) select l.llibreId, l.titol, " +
+        String.format(AUTORS_DEL_LLIBRE, "l.llibreId") + " from llibres l";
+
+    /**
+     * Crea l'índex i els triggers si la base de dades és SQLite. Si l'índex no
+     * quadra amb la taula de llibres (per exemple, perquè hbm2ddl ha recreat
+     * l'esquema) es reconstrueix. Retorna false si no s'ha pogut preparar.
+     */
+    static boolean preparar(SessionFactory factory) {
+        Dialect dialect = factory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        if (!(dialect instanceof SQLiteDialect)) {
+            return false;
+        }
+        try (Session session = factory.openSession()) {
+            session.doWork(connection -> {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try (Statement st = connection.createStatement()) {
+                    for (String ddl : DDL) {
+                        st.execute(ddl);
+                    }
+                    if (!sincronitzat(st)) {
+                        st.execute("delete from llibres_fts");
+                        st.execute(RECONSTRUIR);
+                        st.execute("insert into llibres_fts(llibres_fts) values ('optimize')");
+                    }
+                    connection.commit();
+                } catch (Exception e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("No s'ha pogut preparar la cerca de text complet: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Comprova si l'índex ja existeix, sense crear ni modificar res: és el que
+     * es fa amb una SessionFactory de només lectura, que no pot executar DDL
+     */
+    static boolean existeix(SessionFactory factory) {
+        Dialect dialect = factory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        if (!(dialect instanceof SQLiteDialect)) {
+            return false;
+        }
+        try (Session session = factory.openSession()) {
+            return session.doReturningWork(connection -> {
+                try (Statement st = connection.createStatement();
+                     ResultSet rs = st.executeQuery(
+                         "select 1 from sqlite_master where type = 'table' and name = 'llibres_fts'")) {
+                    return rs.next();
+                }
+            });
+        } catch (RuntimeException e) {
+            System.err.println("No s'ha pogut comprovar la cerca de text complet: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Elimina els triggers i buida l'índex abans d'una càrrega gran: és molt
+     * més ràpid reconstruir-lo d'una sola vegada amb preparar() al final que
+     * mantenir-lo fila a fila. Retorna false si la base de dades no és SQLite.
+     */
+    static boolean suspendre(SessionFactory factory) {
+        Dialect dialect = factory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        if (!(dialect instanceof SQLiteDialect)) {
+            return false;
+        }
+        try (Session session = factory.openSession()) {
+            session.doWork(connection -> {
+                try (Statement st = connection.createStatement()) {
+                    for (String trigger : TRIGGERS) {
+                        st.execute("drop trigger if exists " + trigger);
+                    }
+                    st.execute("delete from llibres_fts");
+                }
+            });
+        }
+        return true;
+    }
+
+    private static boolean sincronitzat(Statement st) throws java.sql.SQLException {
+        try (ResultSet rs = st.executeQuery(
+                "select (select count(*) from llibres_fts), (select count(*) from llibres), " +
+                "(select coalesce(max(rowid), 0) from llibres_fts), (select coalesce(max(llibreId), 0) from llibres)")) {
+            rs.next();
+            return rs.getLong(1) == rs.getLong(2) && rs.getLong(3) == rs.getLong(4);
+        }
+    }
+
+    /**
+     * Identificadors dels llibres que coincideixen, ordenats per rellevància.
+     * 'camps' limita la cerca a titol i/o autors; si és buit es cerca a tots dos.
+     * Amb midaPagina <= 0 es retornen tots els resultats.
+     */
+    static List<Long> cercar(Session session, String text, int pagina, int midaPagina, String... camps) {
+        String consulta = consultaFts(text, camps);
+        List<Long> ids = new ArrayList<>();
+        if (consulta == null) {
+            return ids;
+        }
+        String sql = "select rowid from llibres_fts where llibres_fts match ? order by bm25(llibres_fts, 10.0, 5.0)" +
+            (midaPagina > 0 ? " limit ? offset ?" : "");
+        session.doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, consulta);
+                if (midaPagina > 0) {
+                    ps.setInt(2, midaPagina);
+                    ps.setLong(3, (long) Math.max(pagina, 0) * midaPagina);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                    }
+                }
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * Converteix el text de l'usuari en una consulta FTS5 segura: cada paraula
+     * entre cometes i amb '*' (prefix), totes obligatòries
+     */
+    static String consultaFts(String text, String... camps) {
+        if (text == null) return null;
+        String normalitzat = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        StringBuilder termes = new StringBuilder();
+        for (String paraula : normalitzat.split("[^\\p{L}\\p{N}]+")) {
+            if (paraula.isEmpty()) continue;
+            if (termes.length() > 0) termes.append(' ');
+            termes.append('"').append(paraula).append("\"*");
+        }
+        if (termes.length() == 0) return null;
+        if (camps.length == 0) return termes.toString();
+        return "{" + String.join(" ", camps) + "} : (" + termes + ")";
+    }
+}
@@ -0,0 +1,48 @@
+package com.project.dao;
+
+import org.hibernate.Interceptor;
+import org.hibernate.SessionEventListener;
+import org.hibernate.type.Type;
+
+/**
+ * Compta les sentències SQL, les entitats carregades i els flushes de cada
+ * sessió i els suma a la mesura de l'operació del Manager en curs en aquest
+ * fil (veure MetriquesManager). Hibernate en crea un per sessió com a
+ * SessionEventListener; la mateixa classe fa d'Interceptor per saber quines
+ * entitats es carreguen. Fora d'una operació mesurada no fa res.
+ */
+public class ComptadorSessio implements SessionEventListener, Interceptor {
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        MetriquesManager.Mesura mesura = MetriquesManager.actual();
+        if (mesura != null) {
+            mesura.sentencies++;
+        }
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        MetriquesManager.Mesura mesura = MetriquesManager.actual();
+        if (mesura != null) {
+            mesura.sentencies++;
+        }
+    }
+
+    @Override
+    public void flushEnd(int numberOfEntities, int numberOfCollections) {
+        MetriquesManager.Mesura mesura = MetriquesManager.actual();
+        if (mesura != null) {
+            mesura.flushes++;
+        }
+    }
+
+    @Override
+    public boolean onLoad(Object entity, Object id, Object[] state, String[] propertyNames, Type[] types) {
+        MetriquesManager.Mesura mesura = MetriquesManager.actual();
+        if (mesura != null) {
+            mesura.entitats++;
+        }
+        return false;
+    }
+}
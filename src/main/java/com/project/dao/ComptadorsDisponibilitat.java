@@ -0,0 +1,273 @@
+package com.project.dao;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+import com.project.domain.*;
+
+/**
+ * Manteniment dels comptadors de DisponibilitatLlibre i PrestecsPersona.
+ *
+ * Els préstecs i retorns del Manager sumen o resten a la fila del llibre i
+ * la biblioteca de l'exemplar i a la de la persona amb un UPDATE a la
+ * mateixa transacció. Si la fila encara no existeix, es calcula comptant.
+ *
+ * Les altes i baixes d'exemplars, també les que arriben en cascada en desar
+ * o esborrar un Llibre o una Biblioteca, les detecta un listener de
+ * Hibernate, que recalcula el llibre i la biblioteca de l'exemplar just
+ * abans del commit, quan les insercions i els esborrats ja s'han executat.
+ * Igual amb el comptador d'una persona quan s'esborra la persona o algun
+ * dels seus préstecs. Els canvis fets amb update (Manager.update o el
+ * flush d'una Session) també hi passen: si canvia la disponibilitat, el
+ * llibre o la biblioteca d'un exemplar es recalculen la fila d'abans i la
+ * de després, i si un préstec deixa d'estar actiu (setDataRetornReal) o
+ * canvia de persona, les persones d'abans i de després. Cada fila es
+ * recalcula una sola vegada per transacció, encara que un Llibre desat en
+ * cascada n'hi afegeixi molts exemplars. Les sessions sense estat no passen
+ * pel listener: qui insereix exemplars amb StatelessSession ha de
+ * recalcular els comptadors (CarregadorMassiu) o executar
+ * ReconciliacioComptadors en acabar (GeneradorDades).
+ */
+final class ComptadorsDisponibilitat {
+    // Valors dels comptadors calculats des de zero, per afegir-hi una condició i agrupar
+    static final String DISPONIBILITAT_ESPERADA =
+        "select e.llibre.llibreId as llibreId, e.biblioteca.bibliotecaId as bibliotecaId, count(e) as total, " +
+        "sum(case when e.disponible = true then 1 else 0 end) as disponibles from Exemplar e ";
+    static final String AGRUPAR_DISPONIBILITAT = " group by e.llibre.llibreId, e.biblioteca.bibliotecaId";
+    static final String PRESTECS_ACTIUS_ESPERATS =
+        "select p.persona.personaId as personaId, count(p) as actius from Prestec p where p.actiu = true ";
+    static final String AGRUPAR_PRESTECS_ACTIUS = " group by p.persona.personaId";
+
+    static final String INSERIR_DISPONIBILITAT =
+        "insert into DisponibilitatLlibre (llibreId, bibliotecaId, totalExemplars, exemplarsDisponibles) ";
+    static final String INSERIR_PRESTECS_PERSONA = "insert into PrestecsPersona (personaId, actius) ";
+
+    private ComptadorsDisponibilitat() {}
+
+    /**
+     * Afegeix el listener d'altes i baixes a la SessionFactory
+     */
+    static void registrar(SessionFactory factory) {
+        EventListenerRegistry registre = factory.unwrap(SessionFactoryImplementor.class)
+            .getServiceRegistry().getService(EventListenerRegistry.class);
+        Listener listener = new Listener();
+        registre.appendListeners(EventType.POST_INSERT, listener);
+        registre.appendListeners(EventType.POST_DELETE, listener);
+        registre.appendListeners(EventType.POST_UPDATE, listener);
+    }
+
+    /**
+     * Suma delta als exemplars disponibles del llibre a la biblioteca
+     */
+    static void ajustarDisponibles(SharedSessionContract session, long llibreId, long bibliotecaId, long delta) {
+        int actualitzats = session.createMutationQuery(
+            "update DisponibilitatLlibre d set d.exemplarsDisponibles = d.exemplarsDisponibles + :delta " +
+            "where d.llibreId = :llibre and d.bibliotecaId = :biblioteca")
+            .setParameter("delta", delta)
+            .setParameter("llibre", llibreId)
+            .setParameter("biblioteca", bibliotecaId)
+            .executeUpdate();
+        if (actualitzats == 0) {
+            recalcularDisponibilitat(session, llibreId, bibliotecaId);
+        }
+    }
+
+    /**
+     * Suma delta als préstecs actius de la persona
+     */
+    static void ajustarPrestecsActius(SharedSessionContract session, long personaId, long delta) {
+        int actualitzats = session.createMutationQuery(
+            "update PrestecsPersona p set p.actius = p.actius + :delta where p.personaId = :persona")
+            .setParameter("delta", delta)
+            .setParameter("persona", personaId)
+            .executeUpdate();
+        if (actualitzats == 0) {
+            recalcularPrestecsActius(session, personaId);
+        }
+    }
+
+    /**
+     * Torna a calcular la fila del llibre a la biblioteca comptant-ne els
+     * exemplars. Si ja no n'hi ha cap, la fila desapareix.
+     */
+    static void recalcularDisponibilitat(SharedSessionContract session, long llibreId, long bibliotecaId) {
+        session.createMutationQuery(
+            "delete from DisponibilitatLlibre d where d.llibreId = :llibre and d.bibliotecaId = :biblioteca")
+            .setParameter("llibre", llibreId)
+            .setParameter("biblioteca", bibliotecaId)
+            .executeUpdate();
+        session.createMutationQuery(INSERIR_DISPONIBILITAT + DISPONIBILITAT_ESPERADA +
+            "where e.llibre.llibreId = :llibre and e.biblioteca.bibliotecaId = :biblioteca" + AGRUPAR_DISPONIBILITAT)
+            .setParameter("llibre", llibreId)
+            .setParameter("biblioteca", bibliotecaId)
+            .executeUpdate();
+    }
+
+    /**
+     * Torna a calcular el comptador de la persona. Sense préstecs actius la
+     * fila desapareix.
+     */
+    static void recalcularPrestecsActius(SharedSessionContract session, long personaId) {
+        session.createMutationQuery("delete from PrestecsPersona p where p.personaId = :persona")
+            .setParameter("persona", personaId)
+            .executeUpdate();
+        session.createMutationQuery(INSERIR_PRESTECS_PERSONA + PRESTECS_ACTIUS_ESPERATS +
+            "and p.persona.personaId = :persona" + AGRUPAR_PRESTECS_ACTIUS)
+            .setParameter("persona", personaId)
+            .executeUpdate();
+    }
+
+    // Recomptes pendents de cada sessió amb una transacció en curs
+    private static final Map<EventSource, Recompte> PENDENTS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Files de disponibilitat (llibre i biblioteca) i persones que cal
+     * recalcular abans del commit, cadascuna una vegada
+     */
+    private static final class Recompte implements BeforeTransactionCompletionProcess {
+        private final Set<List<Long>> disponibilitats = new LinkedHashSet<>();
+        private final Set<Long> persones = new LinkedHashSet<>();
+
+        @Override
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            PENDENTS.remove(session, this);
+            disponibilitats.forEach(clau -> recalcularDisponibilitat(session, clau.get(0), clau.get(1)));
+            persones.forEach(personaId -> recalcularPrestecsActius(session, personaId));
+        }
+    }
+
+    /**
+     * Altes, baixes i canvis d'exemplars i baixes i canvis de préstecs i
+     * persones fets amb una Session. Els préstecs nous i els UPDATE en HQL no
+     * hi passen: els compta el Manager.
+     */
+    private static class Listener implements PostInsertEventListener, PostDeleteEventListener,
+            PostUpdateEventListener {
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (event.getEntity() instanceof Exemplar exemplar) {
+                recalcularExemplar(event.getSession(), exemplar.getLlibre(), exemplar.getBiblioteca());
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            if (event.getEntity() instanceof Exemplar exemplar) {
+                recalcularExemplar(event.getSession(), exemplar.getLlibre(), exemplar.getBiblioteca());
+            } else if (event.getEntity() instanceof Prestec prestec) {
+                recalcularPersona(event.getSession(), prestec.getPersona());
+            } else if (event.getEntity() instanceof Persona persona) {
+                recalcularPersona(event.getSession(), persona);
+            }
+        }
+
+        /**
+         * Sense l'estat anterior (una entitat desconnectada que no s'ha
+         * comparat) només es pot recalcular la fila nova
+         */
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            EventSource session = event.getSession();
+            if (event.getEntity() instanceof Exemplar exemplar
+                    && canviat(event, "disponible", "llibre", "biblioteca")) {
+                recalcularExemplar(session, exemplar.getLlibre(), exemplar.getBiblioteca());
+                recalcularExemplar(session, abans(event, "llibre"), abans(event, "biblioteca"));
+            } else if (event.getEntity() instanceof Prestec prestec && canviat(event, "actiu", "persona")) {
+                recalcularPersona(session, prestec.getPersona());
+                recalcularPersona(session, (Persona) abans(event, "persona"));
+            }
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return false;
+        }
+
+        /**
+         * Si ha canviat alguna de les propietats. Quan Hibernate no ha
+         * calculat les propietats modificades es considera que sí.
+         */
+        private static boolean canviat(PostUpdateEvent event, String... propietats) {
+            int[] modificades = event.getDirtyProperties();
+            if (modificades == null) {
+                return true;
+            }
+            String[] noms = event.getPersister().getPropertyNames();
+            for (int i : modificades) {
+                for (String propietat : propietats) {
+                    if (noms[i].equals(propietat)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Valor de la propietat abans de l'update, o null si no se sap
+         */
+        private static Object abans(PostUpdateEvent event, String propietat) {
+            Object[] estat = event.getOldState();
+            return estat == null ? null : estat[event.getPersister().getPropertyIndex(propietat)];
+        }
+
+        private static void recalcularExemplar(EventSource session, Object llibre, Object biblioteca) {
+            // Les StatelessSession criden el listener sense sessió
+            if (session == null || llibre == null || biblioteca == null) {
+                return;
+            }
+            recompte(session).disponibilitats.add(
+                List.of(identificador(session, llibre), identificador(session, biblioteca)));
+        }
+
+        private static void recalcularPersona(EventSource session, Persona persona) {
+            if (session == null || persona == null) {
+                return;
+            }
+            recompte(session).persones.add(identificador(session, persona));
+        }
+
+        /**
+         * Recompte pendent de la transacció en curs de la sessió. El primer
+         * canvi el registra abans del commit i, per si es desfà, un altre
+         * procés el treu en acabar la transacció.
+         */
+        private static Recompte recompte(EventSource session) {
+            return PENDENTS.computeIfAbsent(session, s -> {
+                Recompte recompte = new Recompte();
+                s.getActionQueue().registerProcess(recompte);
+                s.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (correcte, sessio) ->
+                    PENDENTS.remove(s, recompte));
+                return recompte;
+            });
+        }
+
+        /**
+         * Identificador d'una entitat o d'un proxy, sense inicialitzar-lo
+         */
+        private static long identificador(EventSource session, Object entitat) {
+            return (Long) session.getFactory().getPersistenceUnitUtil().getIdentifier(entitat);
+        }
+    }
+}
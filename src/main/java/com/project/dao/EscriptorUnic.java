@@ -0,0 +1,301 @@
+package com.project.dao;
+
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.Type;
+
+/**
+ * Un sol fil que fa totes les escriptures del Manager (mode escriptor únic,
+ * veure ArrencadaHibernate.ambEscriptorUnic()).
+ *
+ * Les operacions que arriben mentre s'escriu un lot fan cua i s'agrupen en la
+ * transacció següent (group commit): a SQLite cada commit és un bloqueig del
+ * fitxer i un registre al WAL, i així es paga una vegada per a tot el lot en
+ * lloc de fer competir els fils pel bloqueig amb SQLITE_BUSY i reintents.
+ * Les lectures no passen per aquí i continuen en paral·lel.
+ *
+ * Cada operació s'executa dins d'un savepoint: si falla amb una excepció
+ * pròpia (per exemple, un exemplar que ja no està disponible) només es desfà
+ * aquella operació i les altres del lot es confirmen igualment. Una excepció
+ * de Hibernate (un DNI repetit en fer el flush, per exemple) deixa la sessió
+ * inservible i la transacció marcada per desfer-la: llavors es desfà tota la
+ * transacció, falla aquella operació i les que no havien fallat es tornen a
+ * executar en una sessió i una transacció noves. Si falla el commit, fallen
+ * totes les operacions de la transacció amb la mateixa excepció.
+ */
+public class EscriptorUnic implements AutoCloseable {
+    static final int MIDA_LOT_PER_DEFECTE = 256;
+
+    private final SessionFactory factory;
+    private final int midaLot;
+    private final BlockingQueue<Operacio<?>> cua = new LinkedBlockingQueue<>();
+    // Fa atòmics posar a la cua i tancar: cap operació arriba després que el fil acabi
+    private final Object tancament = new Object();
+    private final Thread fil;
+    private final LongAdder transaccions = new LongAdder();
+    private final LongAdder operacions = new LongAdder();
+    private volatile boolean tancat = false;
+    // Operació que s'està executant, només la toca el fil escriptor
+    private Operacio<?> actual;
+
+    EscriptorUnic(SessionFactory factory, int midaLot) {
+        if (midaLot <= 0) {
+            throw new IllegalArgumentException("La mida del lot ha de ser positiva");
+        }
+        this.factory = factory;
+        this.midaLot = midaLot;
+        factory.unwrap(SessionFactoryImplementor.class).getServiceRegistry().getService(EventListenerRegistry.class)
+            .appendListeners(EventType.POST_INSERT, new RegistreInsercions());
+        this.fil = new Thread(this::escriure, "escriptor-unic");
+        fil.setDaemon(true);
+        fil.start();
+    }
+
+    /**
+     * Posa l'operació a la cua i espera que es confirmi. Les excepcions de
+     * l'operació es tornen a llançar tal com són.
+     */
+    <T> T executar(Function<Session, T> operacio) {
+        Operacio<T> op = new Operacio<>(operacio);
+        synchronized (tancament) {
+            if (tancat) {
+                throw new IllegalStateException("L'escriptor únic està tancat");
+            }
+            cua.add(op);
+        }
+        try {
+            return op.resultat.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    public long getTransaccions() {
+        return transaccions.sum();
+    }
+
+    public long getOperacions() {
+        return operacions.sum();
+    }
+
+    /**
+     * Escriu les operacions pendents i atura el fil
+     */
+    @Override
+    public void close() {
+        synchronized (tancament) {
+            tancat = true;
+        }
+        try {
+            fil.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void escriure() {
+        List<Operacio<?>> lot = new ArrayList<>(midaLot);
+        while (!tancat || !cua.isEmpty()) {
+            Operacio<?> primera;
+            try {
+                primera = cua.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (primera == null) {
+                continue;
+            }
+            lot.add(primera);
+            cua.drainTo(lot, midaLot - 1);
+            try {
+                escriureLot(lot);
+            } catch (RuntimeException | Error e) {
+                // No s'ha pogut ni obrir la sessió: fallen les operacions que no s'havien completat
+                lot.forEach(op -> op.resultat.completeExceptionally(e));
+            }
+            lot.clear();
+        }
+    }
+
+    private void escriureLot(List<Operacio<?>> lot) {
+        List<Operacio<?>> pendents = lot;
+        while (!pendents.isEmpty()) {
+            pendents = escriureTransaccio(pendents);
+        }
+        operacions.add(lot.size());
+    }
+
+    /**
+     * Executa les operacions en una transacció i les completa. Si una
+     * operació falla amb una excepció de Hibernate, desfà la transacció, fa
+     * fallar aquella operació i les que ja havien fallat, i retorna les
+     * altres per tornar-les a executar.
+     */
+    private List<Operacio<?>> escriureTransaccio(List<Operacio<?>> ops) {
+        List<RuntimeException> errors = new ArrayList<>(ops.size());
+        try (Session session = factory.openSession()) {
+            transaccions.increment();
+            Transaction tx = session.beginTransaction();
+            try {
+                for (int i = 0; i < ops.size(); i++) {
+                    Operacio<?> op = ops.get(i);
+                    Savepoint savepoint = session.doReturningWork(connexio -> connexio.setSavepoint());
+                    actual = op;
+                    try {
+                        op.executar(session);
+                        errors.add(null);
+                    } catch (RuntimeException e) {
+                        if (tx.getRollbackOnly()) {
+                            tx.rollback();
+                            op.completar(e);
+                            return repetir(ops, errors, (SessionImplementor) session);
+                        }
+                        session.doWork(connexio -> connexio.rollback(savepoint));
+                        session.clear();
+                        errors.add(e);
+                    } finally {
+                        actual = null;
+                    }
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                // Les operacions que no havien fallat pel seu compte fallen amb la transacció
+                while (errors.size() < ops.size()) {
+                    errors.add(null);
+                }
+                errors.replaceAll(error -> error != null ? error : e);
+            }
+        }
+        for (int i = 0; i < ops.size(); i++) {
+            ops.get(i).completar(errors.get(i));
+        }
+        return List.of();
+    }
+
+    /**
+     * Després de desfer la transacció per l'operació errors.size(): completa
+     * les anteriors que havien fallat i retorna les que cal tornar a fer, amb
+     * les entitats que havien inserit tornades a l'estat d'abans de desar-les
+     */
+    private static List<Operacio<?>> repetir(List<Operacio<?>> ops, List<RuntimeException> errors,
+                                             SessionImplementor session) {
+        List<Operacio<?>> repetir = new ArrayList<>(ops.size());
+        for (int i = 0; i < errors.size(); i++) {
+            if (errors.get(i) != null) {
+                ops.get(i).completar(errors.get(i));
+            } else {
+                ops.get(i).desferInsercions(session);
+                repetir.add(ops.get(i));
+            }
+        }
+        repetir.addAll(ops.subList(errors.size() + 1, ops.size()));
+        return repetir;
+    }
+
+    /**
+     * Entitats inserides per l'operació en curs del fil escriptor
+     */
+    private class RegistreInsercions implements PostInsertEventListener {
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            Operacio<?> op = actual;
+            if (op != null && Thread.currentThread() == fil) {
+                op.inserides.add(event.getEntity());
+            }
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return false;
+        }
+    }
+
+    private static class Operacio<T> {
+        private final Function<Session, T> funcio;
+        private final CompletableFuture<T> resultat = new CompletableFuture<>();
+        // Les sentències les compta l'operació del Manager que l'ha posada a la cua
+        private final MetriquesManager.Mesura mesura = MetriquesManager.actual();
+        // Entitats que ha inserit a la transacció en curs
+        private final List<Object> inserides = new ArrayList<>();
+        private T valor;
+
+        Operacio(Function<Session, T> funcio) {
+            this.funcio = funcio;
+        }
+
+        void executar(Session session) {
+            inserides.clear();
+            valor = MetriquesManager.ambMesura(mesura, () -> {
+                T resultat = funcio.apply(session);
+                session.flush();
+                return resultat;
+            });
+        }
+
+        /**
+         * Torna les entitats que havia inserit a l'estat d'abans del persist:
+         * identificador i versió sense desar i col·leccions normals en lloc
+         * de les de Hibernate, que encara apunten a la sessió desfeta
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void desferInsercions(SessionImplementor session) {
+            for (Object entitat : inserides) {
+                EntityPersister persister = session.getEntityPersister(null, entitat);
+                persister.resetIdentifier(entitat, persister.getIdentifier(entitat, session),
+                    persister.getVersion(entitat), session);
+                Type[] tipus = persister.getPropertyTypes();
+                for (int i = 0; i < tipus.length; i++) {
+                    if (tipus[i] instanceof CollectionType col
+                            && persister.getValue(entitat, i) instanceof PersistentCollection<?> valor) {
+                        Object normal = col.instantiate(-1);
+                        if (normal instanceof Collection elements) {
+                            elements.addAll((Collection) valor);
+                        } else if (normal instanceof Map entrades) {
+                            entrades.putAll((Map) valor);
+                        }
+                        persister.setValue(entitat, i, normal);
+                    }
+                }
+            }
+            inserides.clear();
+        }
+
+        void completar(RuntimeException error) {
+            if (error != null) {
+                resultat.completeExceptionally(error);
+            } else {
+                resultat.complete(valor);
+            }
+        }
+    }
+}
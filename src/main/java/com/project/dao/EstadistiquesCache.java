@@ -0,0 +1,18 @@
+package com.project.dao;
+
+/**
+ * Encerts, errades i insercions d'una regió de la cache de segon nivell
+ */
+public record EstadistiquesCache(String regio, long encerts, long errades, long insercions) {
+
+    public double percentatgeEncerts() {
+        long total = encerts + errades;
+        return total == 0 ? 0 : 100.0 * encerts / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[encerts=%d, errades=%d, insercions=%d, %.1f%%]",
+            regio, encerts, errades, insercions, percentatgeEncerts());
+    }
+}
@@ -0,0 +1,15 @@
+package com.project.dao;
+
+/**
+ * Estat del pool de connexions i temps d'espera acumulats per obtenir-ne una
+ */
+public record EstadistiquesPool(int actives, int inactives, int total, int filsEnEspera,
+                                long adquisicions, double esperaMitjanaMs, double esperaMaximaMs,
+                                long timeouts) {
+
+    @Override
+    public String toString() {
+        return String.format("Pool[actives=%d, inactives=%d, total=%d, enEspera=%d, adquisicions=%d, espera mitjana=%.3f ms, espera màxima=%.3f ms, timeouts=%d]",
+            actives, inactives, total, filsEnEspera, adquisicions, esperaMitjanaMs, esperaMaximaMs, timeouts);
+    }
+}
@@ -0,0 +1,401 @@
+package com.project.dao;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import com.project.domain.*;
+
+/**
+ * Genera un conjunt de dades sintètic i reproduïble per a proves de càrrega.
+ *
+ * Amb la mateixa llavor, la mateixa mida i la mateixa data de referència el
+ * resultat és sempre idèntic, qualsevol dia que es generi: totes les dates
+ * es deriven de la data de referència (per defecte
+ * DATA_REFERENCIA_PER_DEFECTE), que fa d'avui. Per fer préstecs amb la data
+ * d'avui sobre un conjunt actual, passar LocalDate.now().
+ *
+ * Tot es dimensiona a partir del nombre de préstecs:
+ *   llibres:      1 per cada 10 préstecs, amb 1-3 autors; els autors es trien
+ *                 amb una distribució de Zipf, de manera que uns pocs autors
+ *                 populars acumulen molts llibres
+ *   autors:       1 per cada 3 llibres
+ *   exemplars:    1 o més per llibre (de mitjana uns 1,7)
+ *   biblioteques: 1 per cada 100.000 préstecs, entre 5 i 200
+ *   persones:     1 per cada 40 préstecs
+ *   préstecs:     el 15% dels exemplars estan prestats a la data de
+ *                 referència (una quarta part amb retard); la resta són préstecs històrics retornats
+ *                 dels cinc anys anteriors, concentrats en els llibres i les
+ *                 persones més actius (també amb Zipf)
+ *
+ * Les files s'insereixen amb StatelessSession i lots JDBC, igual que a
+ * CarregadorMassiu, directament sobre l'esquema de SQLite o MySQL. A SQLite
+ * l'índex de text complet es desactiva durant la càrrega i es reconstrueix
+ * al final. Els comptadors de disponibilitat es reconstrueixen al final amb
+ * ReconciliacioComptadors, i els resums diaris de préstecs amb
+ * ReconstruccioResums fins a la data de referència.
+ */
+public class GeneradorDades {
+    public static final long LLAVOR_PER_DEFECTE = 42;
+    public static final LocalDate DATA_REFERENCIA_PER_DEFECTE = LocalDate.of(2025, 1, 1);
+
+    /**
+     * Paraules dels títols i cognoms dels autors, per construir cerques que trobin resultats
+     */
+    public static final List<String> PARAULES = List.of(
+        "amor", "soledad", "casa", "mar", "nit", "ciutat", "temps", "guerra", "pau", "jardí",
+        "història", "somni", "muntanya", "riu", "llum", "ombra", "viatge", "memòria", "foc", "vent",
+        "espíritus", "años", "camí", "silenci", "estrella", "hivern", "estiu", "secret", "illa", "bosc",
+        "lluna", "sol", "pedra", "aigua", "terra", "cel", "porta", "finestra", "carta", "veu",
+        "mirall", "rellotge", "pluja", "neu", "fulla", "arbre", "ocell", "llop", "vaixell", "far");
+    public static final List<String> COGNOMS = List.of(
+        "García", "Márquez", "Allende", "Rodoreda", "Martí", "Puig", "Solà", "Ferrer", "Vidal", "Serra",
+        "Pla", "Roig", "Riba", "Calders", "Monzó", "Sales", "Espriu", "Oller", "Verdaguer", "Capmany",
+        "Moncada", "Porcel", "Roca", "Pons", "Camps", "Soler", "Casas", "Font", "Mas", "Bosch");
+    private static final List<String> NOMS = List.of(
+        "Gabriel", "Isabel", "Mercè", "Joan", "Maria", "Pere", "Núria", "Jordi", "Montserrat", "Josep",
+        "Anna", "Quim", "Carme", "Miquel", "Laia", "Jaume", "Marta", "Pau", "Rosa", "Albert");
+    private static final List<String> CIUTATS = List.of(
+        "Barcelona", "Girona", "Lleida", "Tarragona", "Reus", "Manresa", "Vic", "Figueres", "Olot", "Tortosa");
+    private static final List<String> ENLLACOS = List.of("de", "i", "sota", "entre", "sense", "contra");
+    private static final String LLETRES_DNI = "TRWAGMYFPDXBNJZSQVHLCKE";
+
+    private static final double ZIPF_AUTORS = 1.1;
+    private static final double ZIPF_LLIBRES = 0.9;
+    private static final double ZIPF_PERSONES = 0.8;
+    private static final double PROPORCIO_PRESTATS = 0.15;
+    private static final int ANYS_HISTORIAL = 5;
+
+    private final SessionFactory factory;
+    private final int numPrestecs;
+    private final long llavor;
+    private final int midaLot;
+    private final LocalDate dataReferencia;
+
+    public GeneradorDades(int numPrestecs) {
+        this(numPrestecs, LLAVOR_PER_DEFECTE);
+    }
+
+    public GeneradorDades(int numPrestecs, long llavor) {
+        this(numPrestecs, llavor, DATA_REFERENCIA_PER_DEFECTE);
+    }
+
+    public GeneradorDades(int numPrestecs, long llavor, LocalDate dataReferencia) {
+        this(Manager.getSessionFactory(), numPrestecs, llavor, CarregadorMassiu.MIDA_LOT_PER_DEFECTE * 10,
+            dataReferencia);
+    }
+
+    public GeneradorDades(SessionFactory factory, int numPrestecs, long llavor, int midaLot) {
+        this(factory, numPrestecs, llavor, midaLot, DATA_REFERENCIA_PER_DEFECTE);
+    }
+
+    public GeneradorDades(SessionFactory factory, int numPrestecs, long llavor, int midaLot,
+                          LocalDate dataReferencia) {
+        if (numPrestecs <= 0 || midaLot <= 0) {
+            throw new IllegalArgumentException("El nombre de préstecs i la mida del lot han de ser positius");
+        }
+        this.factory = factory;
+        this.numPrestecs = numPrestecs;
+        this.llavor = llavor;
+        this.midaLot = midaLot;
+        this.dataReferencia = dataReferencia;
+    }
+
+    /**
+     * Genera totes les entitats i retorna el resum de cadascuna. La base de
+     * dades hauria d'estar buida: els codis (ISBN, DNI, codi de barres) són
+     * fixos i es repetirien.
+     */
+    public List<ResultatCarrega> generar() {
+        Random random = new Random(llavor);
+        int numLlibres = Math.max(10, numPrestecs / 10);
+        int numAutors = Math.max(5, numLlibres / 3);
+        int numPersones = Math.max(10, numPrestecs / 40);
+        int numBiblioteques = Math.min(200, Math.max(5, numPrestecs / 100_000));
+        boolean ambCercaTextCompleta = CercaLlibres.suspendre(factory);
+
+        List<ResultatCarrega> resultats = new ArrayList<>();
+        long[] biblioteques = new long[numBiblioteques];
+        resultats.add(inserir("Biblioteca", numBiblioteques, (sessio, i) -> {
+            String ciutat = CIUTATS.get(i % CIUTATS.size());
+            Biblioteca biblioteca = new Biblioteca("Biblioteca " + ciutat + " " + (i / CIUTATS.size() + 1), ciutat);
+            biblioteca.setTelefon(String.format("9%08d", random.nextInt(100_000_000)));
+            sessio.insert(biblioteca);
+            biblioteques[i] = biblioteca.getBibliotecaId();
+        }));
+
+        long[] autors = new long[numAutors];
+        resultats.add(inserir("Autor", numAutors, (sessio, i) -> {
+            Autor autor = new Autor(nomAutor(i));
+            sessio.insert(autor);
+            autors[i] = autor.getAutorId();
+        }));
+
+        long[] llibres = new long[numLlibres];
+        Zipf autorsPopulars = new Zipf(numAutors, ZIPF_AUTORS);
+        List<long[]> relacions = new ArrayList<>();
+        resultats.add(inserir("Llibre", numLlibres, (sessio, i) -> {
+            Llibre llibre = new Llibre(isbn(i), titol(random, i));
+            llibre.setEditorial("Editorial " + COGNOMS.get(random.nextInt(COGNOMS.size())));
+            llibre.setAnyPublicacio(1900 + random.nextInt(dataReferencia.getYear() - 1899));
+            sessio.insert(llibre);
+            llibres[i] = llibre.getLlibreId();
+
+            double u = random.nextDouble();
+            int numAutorsLlibre = u < 0.8 ? 1 : u < 0.95 ? 2 : 3;
+            long[] triats = new long[numAutorsLlibre];
+            for (int a = 0; a < numAutorsLlibre; a++) {
+                triats[a] = autors[autorsPopulars.mostra(random)];
+            }
+            for (long autorId : Arrays.stream(triats).distinct().toArray()) {
+                relacions.add(new long[] {llibre.getLlibreId(), autorId});
+            }
+            if (relacions.size() >= midaLot) {
+                inserirRelacionsAutors(sessio, relacions);
+            }
+        }, sessio -> inserirRelacionsAutors(sessio, relacions)));
+
+        // Exemplars consecutius per llibre: els del llibre i van de primerExemplar[i] a primerExemplar[i + 1]
+        int[] primerExemplar = new int[numLlibres + 1];
+        for (int i = 0; i < numLlibres; i++) {
+            int copies = 1 + Math.min(9, (int) (-Math.log(1 - random.nextDouble()) * 0.7));
+            primerExemplar[i + 1] = primerExemplar[i] + copies;
+        }
+        int numExemplars = primerExemplar[numLlibres];
+        long[] exemplars = new long[numExemplars];
+        // Exemplars prestats ara mateix: un de cada ~7, triats a l'atzar
+        boolean[] prestat = new boolean[numExemplars];
+        int numPrestats = (int) Math.min(numPrestecs, Math.round(numExemplars * PROPORCIO_PRESTATS));
+        for (int n = 0; n < numPrestats; ) {
+            int e = random.nextInt(numExemplars);
+            if (!prestat[e]) {
+                prestat[e] = true;
+                n++;
+            }
+        }
+        int[] llibreExemplar = new int[1];
+        resultats.add(inserir("Exemplar", numExemplars, (sessio, e) -> {
+            while (primerExemplar[llibreExemplar[0] + 1] <= e) {
+                llibreExemplar[0]++;
+            }
+            Exemplar exemplar = new Exemplar(String.format("EX%09d", e), referenciaLlibre(llibres[llibreExemplar[0]]),
+                referenciaBiblioteca(biblioteques[random.nextInt(numBiblioteques)]));
+            exemplar.setDisponible(!prestat[e]);
+            sessio.insert(exemplar);
+            exemplars[e] = exemplar.getExemplarId();
+        }));
+
+        long[] persones = new long[numPersones];
+        resultats.add(inserir("Persona", numPersones, (sessio, i) -> {
+            int numero = 10_000_000 + i;
+            String nom = NOMS.get(random.nextInt(NOMS.size())) + " " + COGNOMS.get(random.nextInt(COGNOMS.size()));
+            Persona persona = new Persona(String.valueOf(numero) + LLETRES_DNI.charAt(numero % 23), nom);
+            persona.setEmail("lector" + i + "@example.cat");
+            sessio.insert(persona);
+            persones[i] = persona.getPersonaId();
+        }));
+
+        Zipf llibresPopulars = new Zipf(numLlibres, ZIPF_LLIBRES);
+        Zipf lectorsActius = new Zipf(numPersones, ZIPF_PERSONES);
+        int diesHistorial = ANYS_HISTORIAL * 365;
+        int[] seguentPrestat = new int[1];
+        resultats.add(inserir("Prestec", numPrestecs, (sessio, i) -> {
+            Persona persona = referenciaPersona(persones[lectorsActius.mostra(random)]);
+            if (i < numPrestats) {
+                while (!prestat[seguentPrestat[0]]) {
+                    seguentPrestat[0]++;
+                }
+                Exemplar exemplar = referenciaExemplar(exemplars[seguentPrestat[0]++]);
+                // Una quarta part dels préstecs actius ja ha passat la data prevista
+                LocalDate data = dataReferencia.minusDays(
+                    random.nextInt(4) == 0 ? 16 + random.nextInt(30) : random.nextInt(15));
+                sessio.insert(new Prestec(exemplar, persona, data, data.plusDays(15)));
+            } else {
+                int llibre = llibresPopulars.mostra(random);
+                int e = primerExemplar[llibre] + random.nextInt(primerExemplar[llibre + 1] - primerExemplar[llibre]);
+                LocalDate data = dataReferencia.minusDays(60 + random.nextInt(diesHistorial));
+                Prestec prestec = new Prestec(referenciaExemplar(exemplars[e]), persona, data, data.plusDays(15));
+                prestec.setActiu(false);
+                prestec.setDataRetornReal(data.plusDays(random.nextInt(10) == 0 ? 16 + random.nextInt(20) : random.nextInt(16)));
+                sessio.insert(prestec);
+            }
+        }));
+
+        // Els comptadors de disponibilitat no es mantenen amb StatelessSession
+        ResultatReconciliacio comptadors = new ReconciliacioComptadors(factory).executar();
+        long filesComptadors = comptadors.filesDisponibilitat() + comptadors.filesPersones();
+        resultats.add(new ResultatCarrega("Comptadors", filesComptadors, filesComptadors, 0, comptadors.durada()));
+
+        // Ni els resums diaris: es construeixen per a tot l'historial, també el dia de referència
+        ResultatResums resums;
+        try {
+            resums = new ReconstruccioResums(factory, Runtime.getRuntime().availableProcessors(),
+                ReconstruccioResums.DIES_PER_TROS_PER_DEFECTE)
+                .executar(dataReferencia.minusDays(60 + diesHistorial), dataReferencia);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("S'ha interromput la construcció dels resums diaris", e);
+        }
+        long filesResums = resums.filesBiblioteques() + resums.filesLlibres();
+        resultats.add(new ResultatCarrega("Resums diaris", filesResums, filesResums, 0, resums.durada()));
+
+        if (ambCercaTextCompleta) {
+            long inici = System.nanoTime();
+            CercaLlibres.preparar(factory);
+            resultats.add(new ResultatCarrega("Índex de cerca", numLlibres, numLlibres, 0,
+                Duration.ofNanos(System.nanoTime() - inici)));
+        }
+        return resultats;
+    }
+
+    @FunctionalInterface
+    private interface Insercio {
+        void inserir(StatelessSession sessio, int index);
+    }
+
+    @FunctionalInterface
+    private interface FiLot {
+        void acabar(StatelessSession sessio);
+    }
+
+    private ResultatCarrega inserir(String entitat, int quantitat, Insercio insercio) {
+        return inserir(entitat, quantitat, insercio, sessio -> {});
+    }
+
+    /**
+     * Insereix 'quantitat' files en transaccions de midaLot files
+     */
+    private ResultatCarrega inserir(String entitat, int quantitat, Insercio insercio, FiLot fiLot) {
+        long inici = System.nanoTime();
+        for (int primer = 0; primer < quantitat; primer += midaLot) {
+            try (StatelessSession sessio = factory.openStatelessSession()) {
+                sessio.setJdbcBatchSize(Math.min(midaLot, 1000));
+                Transaction tx = sessio.beginTransaction();
+                try {
+                    for (int i = primer; i < Math.min(quantitat, primer + midaLot); i++) {
+                        insercio.inserir(sessio, i);
+                    }
+                    fiLot.acabar(sessio);
+                    tx.commit();
+                } catch (RuntimeException e) {
+                    if (tx.isActive()) tx.rollback();
+                    throw e;
+                }
+            }
+        }
+        return new ResultatCarrega(entitat, quantitat, quantitat, 0, Duration.ofNanos(System.nanoTime() - inici));
+    }
+
+    /**
+     * Igual que a CarregadorMassiu: la taula llibre_autor s'omple amb un lot JDBC
+     */
+    private static void inserirRelacionsAutors(StatelessSession sessio, List<long[]> relacions) {
+        if (relacions.isEmpty()) return;
+        ((SharedSessionContractImplementor) sessio).getJdbcCoordinator().executeBatch();
+        sessio.doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "insert into llibre_autor (llibre_id, autor_id) values (?, ?)")) {
+                for (long[] relacio : relacions) {
+                    ps.setLong(1, relacio[0]);
+                    ps.setLong(2, relacio[1]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+        relacions.clear();
+    }
+
+    private static String nomAutor(int i) {
+        int noms = NOMS.size();
+        int cognoms = COGNOMS.size();
+        String nom = NOMS.get(i % noms) + " " + COGNOMS.get(i / noms % cognoms) + " "
+            + COGNOMS.get(i / (noms * cognoms) % cognoms);
+        int repeticio = i / (noms * cognoms * cognoms);
+        return repeticio == 0 ? nom : nom + " " + (repeticio + 1);
+    }
+
+    private static String titol(Random random, int i) {
+        String primera = PARAULES.get(random.nextInt(PARAULES.size()));
+        StringBuilder titol = new StringBuilder(primera.length() + 24)
+            .append(Character.toUpperCase(primera.charAt(0))).append(primera, 1, primera.length());
+        int paraules = 1 + random.nextInt(3);
+        for (int p = 0; p < paraules; p++) {
+            if (random.nextBoolean()) {
+                titol.append(' ').append(ENLLACOS.get(random.nextInt(ENLLACOS.size())));
+            }
+            titol.append(' ').append(PARAULES.get(random.nextInt(PARAULES.size())));
+        }
+        return titol.toString();
+    }
+
+    /**
+     * ISBN-13 amb prefix 978 i dígit de control vàlid
+     */
+    private static String isbn(int i) {
+        String digits = String.format("978%09d", i);
+        int suma = 0;
+        for (int d = 0; d < 12; d++) {
+            suma += (digits.charAt(d) - '0') * (d % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - suma % 10) % 10;
+    }
+
+    private static Llibre referenciaLlibre(long id) {
+        Llibre llibre = new Llibre();
+        llibre.setLlibreId(id);
+        return llibre;
+    }
+
+    private static Biblioteca referenciaBiblioteca(long id) {
+        Biblioteca biblioteca = new Biblioteca();
+        biblioteca.setBibliotecaId(id);
+        return biblioteca;
+    }
+
+    private static Exemplar referenciaExemplar(long id) {
+        Exemplar exemplar = new Exemplar();
+        exemplar.setExemplarId(id);
+        return exemplar;
+    }
+
+    private static Persona referenciaPersona(long id) {
+        Persona persona = new Persona();
+        persona.setPersonaId(id);
+        return persona;
+    }
+
+    /**
+     * Distribució de Zipf sobre 0..n-1 (l'element 0 és el més freqüent),
+     * amb la funció de distribució acumulada precalculada
+     */
+    private static class Zipf {
+        private final double[] acumulada;
+
+        Zipf(int n, double exponent) {
+            acumulada = new double[n];
+            double suma = 0;
+            for (int k = 0; k < n; k++) {
+                suma += 1.0 / Math.pow(k + 1, exponent);
+                acumulada[k] = suma;
+            }
+            for (int k = 0; k < n; k++) {
+                acumulada[k] /= suma;
+            }
+        }
+
+        int mostra(Random random) {
+            int posicio = Arrays.binarySearch(acumulada, random.nextDouble());
+            return Math.min(acumulada.length - 1, posicio >= 0 ? posicio : -posicio - 1);
+        }
+    }
+}
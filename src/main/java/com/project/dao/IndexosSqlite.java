@@ -0,0 +1,96 @@
+package com.project.dao;
+
+import java.sql.Statement;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.community.dialect.SQLiteDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import com.project.domain.Exemplar;
+import com.project.domain.Prestec;
+
+/**
+ * Índexs que Hibernate no pot crear a SQLite a partir de les anotacions.
+ *
+ * El dialecte de SQLite només genera les restriccions 'unique' d'una sola
+ * columna (dins del create table) i descarta en silenci les de diverses
+ * columnes (@UniqueConstraint o @Index amb unique = true). Aquí es creen com
+ * a índexs únics.
+ *
+ * Les anotacions @Index de Prestec i Exemplar no poden expressar un WHERE,
+ * així que a SQLite els índexs complets sobre 'actiu' i 'disponible' es
+ * substitueixen per índexs parcials: només contenen les files actives, que
+ * són una part petita de la taula i l'única que consulten getPrestecsActius,
+ * getPrestecsRetardats, getResumPrestecsActius i getExemplarsDisponibles.
+ * L'índex de préstecs actius també és de cobertura per a getResumPrestecsActius.
+ * La condició ha de coincidir literalment amb la que genera Hibernate
+ * ("actiu=1"), si no SQLite no fa servir l'índex.
+ *
+ * A la resta de bases de dades es queden els índexs declarats.
+ */
+class IndexosSqlite {
+    static final String PRESTECS_ACTIUS = "idx_prestecs_actius_parcial";
+    static final String EXEMPLARS_DISPONIBLES = "idx_exemplars_disponibles_parcial";
+
+    // Claus úniques de les que depèn que ProcesRetards es pugui repetir sense duplicar sancions
+    private static final String[] CLAUS_UNIQUES = {
+        "create unique index if not exists uk_sancions_prestec_data on sancions(prestec_id, dataReferencia)",
+        "create unique index if not exists uk_particions_retards on particions_retards(dataReferencia, primerPrestecId)"
+    };
+
+    // Cada índex parcial es crea abans d'esborrar el complet: si no es pot crear, es queda el complet
+    private static final String[][] INDEXOS_PARCIALS = {
+        {"create index if not exists " + PRESTECS_ACTIUS + " on prestecs(" +
+            "dataRetornPrevista, prestecId, exemplar_id, persona_id, dataPrestec) where actiu = 1",
+         "drop index if exists " + Prestec.INDEX_ACTIUS},
+        {"create index if not exists " + EXEMPLARS_DISPONIBLES + " on exemplars(exemplarId) where disponible = 1",
+         "drop index if exists " + Exemplar.INDEX_DISPONIBLES}
+    };
+
+    /**
+     * Crea els índexs si la base de dades és SQLite, cada sentència per
+     * separat. Si no es pot crear alguna clau única (per exemple, perquè ja
+     * hi ha sancions duplicades) llança una excepció i el Manager no arrenca.
+     * Si falla un índex parcial es continua amb l'índex complet; retorna
+     * false si no s'han pogut crear tots.
+     */
+    static boolean preparar(SessionFactory factory) {
+        Dialect dialect = factory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        if (!(dialect instanceof SQLiteDialect)) {
+            return false;
+        }
+        try (Session session = factory.openSession()) {
+            for (String ddl : CLAUS_UNIQUES) {
+                try {
+                    executar(session, ddl);
+                } catch (RuntimeException e) {
+                    throw new HibernateException("No s'ha pogut crear una clau única necessària per a ProcesRetards "
+                        + "(hi ha files duplicades?): " + ddl, e);
+                }
+            }
+            boolean creats = true;
+            for (String[] index : INDEXOS_PARCIALS) {
+                try {
+                    for (String ddl : index) {
+                        executar(session, ddl);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("No s'ha pogut crear l'índex parcial de SQLite (" + index[0] + "): " + e);
+                    creats = false;
+                }
+            }
+            return creats;
+        }
+    }
+
+    private static void executar(Session session, String ddl) {
+        session.doWork(connection -> {
+            try (Statement st = connection.createStatement()) {
+                st.execute(ddl);
+            }
+        });
+    }
+}
@@ -0,0 +1,303 @@
+package com.project.dao;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.community.dialect.SQLiteDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.SelectionQuery;
+
+/**
+ * Informes de préstecs calculats a la base de dades amb GROUP BY, en lloc de
+ * portar tots els préstecs a Java: préstecs per mes, per biblioteca i
+ * llibres més prestats d'un període de mesos.
+ *
+ * Un préstec compta al mes en què comença (dataPrestec) i el seu retorn, al
+ * mes en què es retorna (dataRetornReal); un retorn va amb retard si arriba
+ * després de la data prevista. Així un mes tancat (anterior a l'actual) ja
+ * no canvia, i el resultat dels períodes tancats es guarda en memòria:
+ * tornar a demanar-lo no fa cap consulta. Si es corregeixen préstecs antics
+ * (una càrrega o una importació), cal cridar buidarCache().
+ *
+ * Les consultes van per StatelessSession a la SessionFactory de lectura del
+ * Manager, si n'hi ha. Amb més d'un fil, l'informe per biblioteca fa una
+ * consulta per biblioteca en paral·lel en lloc d'un sol GROUP BY.
+ *
+ * A SQLite les dates es desen en mil·lisegons i les funcions de data de HQL
+ * no hi funcionen; els dies de retard es calculen restant els mil·lisegons.
+ */
+public class InformesPrestecs {
+    private static final long MIL_LISEGONS_PER_DIA = 86_400_000L;
+
+    private static final String DIES_RETARD_SQLITE =
+        "round((cast(p.dataRetornReal as Long) - cast(p.dataRetornPrevista as Long)) / " +
+        MIL_LISEGONS_PER_DIA + ".0, 0)";
+    private static final String DIES_RETARD = "((p.dataRetornReal - p.dataRetornPrevista) by day)";
+
+    private static final String PRESTECS =
+        "select count(*) from Prestec p where p.dataPrestec >= :inici and p.dataPrestec < :fi";
+    private static final String RETORNS =
+        "select count(*), sum(case when p.dataRetornReal > p.dataRetornPrevista then 1 else 0 end), " +
+        "avg(case when p.dataRetornReal > p.dataRetornPrevista then %s end) " +
+        "from Prestec p where p.dataRetornReal >= :inici and p.dataRetornReal < :fi";
+
+    private static final String PRESTECS_BIBLIOTECA =
+        "select e.biblioteca.bibliotecaId, count(*) from Prestec p join p.exemplar e " +
+        "where p.dataPrestec >= :inici and p.dataPrestec < :fi %s group by e.biblioteca.bibliotecaId";
+    private static final String RETORNS_BIBLIOTECA =
+        "select e.biblioteca.bibliotecaId, count(*), " +
+        "sum(case when p.dataRetornReal > p.dataRetornPrevista then 1 else 0 end), " +
+        "avg(case when p.dataRetornReal > p.dataRetornPrevista then %s end) " +
+        "from Prestec p join p.exemplar e " +
+        "where p.dataRetornReal >= :inici and p.dataRetornReal < :fi %s group by e.biblioteca.bibliotecaId";
+    private static final String NOMES_BIBLIOTECA = "and e.biblioteca.bibliotecaId = :biblioteca";
+
+    // Primer es compta per llibre sense llegir-lo i després es busquen només
+    // els títols dels primers
+    private static final String LLIBRES_MES_PRESTATS =
+        "select e.llibre.llibreId, count(*) from Prestec p join p.exemplar e " +
+        "where p.dataPrestec >= :inici and p.dataPrestec < :fi " +
+        "group by e.llibre.llibreId order by count(*) desc, e.llibre.llibreId";
+
+    private final SessionFactory factory;
+    private final int fils;
+    private final String retorns;
+    private final String retornsBiblioteca;
+    private final Map<Clau, List<?>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Informe i període d'un resultat guardat
+     */
+    private record Clau(String informe, YearMonth desDe, YearMonth finsA, int quants) {}
+
+    public InformesPrestecs() {
+        this(1);
+    }
+
+    public InformesPrestecs(int fils) {
+        this(Manager.getSessionFactoryLectura(), fils);
+    }
+
+    public InformesPrestecs(SessionFactory factory, int fils) {
+        if (fils <= 0) {
+            throw new IllegalArgumentException("El nombre de fils ha de ser positiu");
+        }
+        this.factory = factory;
+        this.fils = fils;
+        String diesRetard = diesRetard(factory);
+        this.retorns = String.format(RETORNS, diesRetard);
+        this.retornsBiblioteca = String.format(RETORNS_BIBLIOTECA, diesRetard, "%s");
+    }
+
+    /**
+     * Expressió HQL dels dies de retard del préstec p segons el dialecte de
+     * la SessionFactory. També la fan servir els resums diaris.
+     */
+    static String diesRetard(SessionFactory factory) {
+        boolean sqlite = factory.unwrap(SessionFactoryImplementor.class).getJdbcServices()
+            .getDialect() instanceof SQLiteDialect;
+        return sqlite ? DIES_RETARD_SQLITE : DIES_RETARD;
+    }
+
+    /**
+     * Un element per mes, de desDe a finsA inclosos. Cada mes tancat es
+     * calcula una sola vegada.
+     */
+    public List<PrestecsMes> prestecsPerMes(YearMonth desDe, YearMonth finsA) {
+        List<PrestecsMes> mesos = new ArrayList<>();
+        for (YearMonth mes = desDe; !mes.isAfter(finsA); mes = mes.plusMonths(1)) {
+            YearMonth calcular = mes;
+            mesos.add(ambCache(new Clau("mes", mes, mes, 0), () -> List.of(calcularMes(calcular))).get(0));
+        }
+        return mesos;
+    }
+
+    /**
+     * Totes les biblioteques, també les que no han tingut préstecs en el
+     * període, ordenades per identificador
+     */
+    public List<PrestecsBiblioteca> prestecsPerBiblioteca(YearMonth desDe, YearMonth finsA) {
+        return ambCache(new Clau("biblioteques", desDe, finsA, 0), () -> calcularBiblioteques(desDe, finsA));
+    }
+
+    /**
+     * Els 'quants' llibres amb més préstecs començats en el període
+     */
+    public List<LlibrePrestat> llibresMesPrestats(YearMonth desDe, YearMonth finsA, int quants) {
+        return ambCache(new Clau("llibres", desDe, finsA, quants), () -> {
+            try (StatelessSession session = factory.openStatelessSession()) {
+                List<Object[]> prestecs = session.createQuery(LLIBRES_MES_PRESTATS, Object[].class)
+                    .setParameter("inici", inici(desDe))
+                    .setParameter("fi", fi(finsA))
+                    .setMaxResults(quants)
+                    .list();
+                Map<Long, String> titols = new HashMap<>();
+                if (!prestecs.isEmpty()) {
+                    session.createQuery("select l.llibreId, l.titol from Llibre l where l.llibreId in :ids", Object[].class)
+                        .setParameter("ids", prestecs.stream().map(fila -> (Long) fila[0]).toList())
+                        .list()
+                        .forEach(fila -> titols.put((Long) fila[0], (String) fila[1]));
+                }
+                return prestecs.stream()
+                    .map(fila -> new LlibrePrestat((Long) fila[0], titols.get((Long) fila[0]), llarg(fila[1])))
+                    .toList();
+            }
+        });
+    }
+
+    /**
+     * Oblida els resultats dels períodes tancats
+     */
+    public void buidarCache() {
+        cache.clear();
+    }
+
+    /**
+     * Nombre de resultats guardats (un per mes a prestecsPerMes, un per
+     * període a la resta)
+     */
+    public int getResultatsEnCache() {
+        return cache.size();
+    }
+
+    /**
+     * Si el període ja s'ha tancat, el resultat es llegeix o es desa a la
+     * cache; el del mes en curs es calcula sempre
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> ambCache(Clau clau, Supplier<List<T>> calcul) {
+        if (!clau.finsA().isBefore(YearMonth.now())) {
+            return calcul.get();
+        }
+        List<T> resultat = (List<T>) cache.get(clau);
+        if (resultat == null) {
+            resultat = List.copyOf(calcul.get());
+            cache.put(clau, resultat);
+        }
+        return resultat;
+    }
+
+    private PrestecsMes calcularMes(YearMonth mes) {
+        try (StatelessSession session = factory.openStatelessSession()) {
+            long prestecs = session.createQuery(PRESTECS, Long.class)
+                .setParameter("inici", inici(mes))
+                .setParameter("fi", fi(mes))
+                .getSingleResult();
+            Object[] fila = session.createQuery(retorns, Object[].class)
+                .setParameter("inici", inici(mes))
+                .setParameter("fi", fi(mes))
+                .getSingleResult();
+            return new PrestecsMes(mes, prestecs, llarg(fila[0]), llarg(fila[1]), decimal(fila[2]));
+        }
+    }
+
+    private List<PrestecsBiblioteca> calcularBiblioteques(YearMonth desDe, YearMonth finsA) {
+        List<Object[]> biblioteques;
+        try (StatelessSession session = factory.openStatelessSession()) {
+            biblioteques = session.createQuery(
+                "select b.bibliotecaId, b.nom from Biblioteca b order by b.bibliotecaId", Object[].class)
+                .list();
+        }
+        if (fils == 1) {
+            Map<Long, PrestecsBiblioteca> perId = comptarBiblioteques(desDe, finsA, null);
+            return biblioteques.stream()
+                .map(b -> ambNom(perId.get((Long) b[0]), (Long) b[0], (String) b[1]))
+                .toList();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(fils, Math.max(1, biblioteques.size())));
+        try {
+            List<CompletableFuture<PrestecsBiblioteca>> resultats = new ArrayList<>();
+            for (Object[] biblioteca : biblioteques) {
+                long id = (Long) biblioteca[0];
+                resultats.add(CompletableFuture.supplyAsync(
+                    () -> ambNom(comptarBiblioteques(desDe, finsA, id).get(id), id, (String) biblioteca[1]),
+                    executor));
+            }
+            List<PrestecsBiblioteca> files = new ArrayList<>(resultats.size());
+            for (CompletableFuture<PrestecsBiblioteca> resultat : resultats) {
+                try {
+                    files.add(resultat.join());
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException causa) {
+                        throw causa;
+                    }
+                    throw e;
+                }
+            }
+            return files;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Préstecs i retorns del període agrupats per biblioteca, de totes o
+     * només de la indicada. Sense el nom, que es posa després.
+     */
+    private Map<Long, PrestecsBiblioteca> comptarBiblioteques(YearMonth desDe, YearMonth finsA, Long biblioteca) {
+        String filtre = biblioteca != null ? NOMES_BIBLIOTECA : "";
+        Map<Long, long[]> prestecs = new HashMap<>();
+        try (StatelessSession session = factory.openStatelessSession()) {
+            SelectionQuery<Object[]> consulta = session.createQuery(String.format(PRESTECS_BIBLIOTECA, filtre), Object[].class)
+                .setParameter("inici", inici(desDe))
+                .setParameter("fi", fi(finsA));
+            if (biblioteca != null) {
+                consulta.setParameter("biblioteca", biblioteca);
+            }
+            for (Object[] fila : consulta.list()) {
+                prestecs.put((Long) fila[0], new long[] {llarg(fila[1])});
+            }
+
+            SelectionQuery<Object[]> consultaRetorns = session.createQuery(String.format(retornsBiblioteca, filtre), Object[].class)
+                .setParameter("inici", inici(desDe))
+                .setParameter("fi", fi(finsA));
+            if (biblioteca != null) {
+                consultaRetorns.setParameter("biblioteca", biblioteca);
+            }
+            Map<Long, PrestecsBiblioteca> perId = new HashMap<>();
+            for (Object[] fila : consultaRetorns.list()) {
+                long id = (Long) fila[0];
+                long[] comencats = prestecs.remove(id);
+                perId.put(id, new PrestecsBiblioteca(id, null, comencats != null ? comencats[0] : 0,
+                    llarg(fila[1]), llarg(fila[2]), decimal(fila[3])));
+            }
+            prestecs.forEach((id, comencats) -> perId.put(id, new PrestecsBiblioteca(id, null, comencats[0], 0, 0, 0)));
+            return perId;
+        }
+    }
+
+    private static PrestecsBiblioteca ambNom(PrestecsBiblioteca comptats, long id, String nom) {
+        return comptats == null ? new PrestecsBiblioteca(id, nom, 0, 0, 0, 0)
+            : new PrestecsBiblioteca(id, nom, comptats.prestecs(), comptats.retorns(),
+                comptats.retornsAmbRetard(), comptats.diesRetardMitja());
+    }
+
+    private static LocalDate inici(YearMonth mes) {
+        return mes.atDay(1);
+    }
+
+    private static LocalDate fi(YearMonth mes) {
+        return mes.plusMonths(1).atDay(1);
+    }
+
+    private static long llarg(Object valor) {
+        return valor == null ? 0 : ((Number) valor).longValue();
+    }
+
+    private static double decimal(Object valor) {
+        return valor == null ? 0 : ((Number) valor).doubleValue();
+    }
+}
@@ -0,0 +1,185 @@
+package com.project.dao;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Llegeix registres d'un fitxer CSV (amb capçalera) o JSONL (un objecte pla per línia)
+ * sense carregar-lo sencer a memòria
+ */
+class LectorRegistres implements Iterator<Map<String, String>>, AutoCloseable {
+    private final BufferedReader reader;
+    private final boolean jsonl;
+    private String[] capcalera;
+    private Map<String, String> seguent;
+    private long numLinia = 0;
+
+    LectorRegistres(Path fitxer) throws IOException {
+        this.reader = Files.newBufferedReader(fitxer, StandardCharsets.UTF_8);
+        this.jsonl = fitxer.getFileName().toString().toLowerCase().endsWith(".jsonl");
+        if (!jsonl) {
+            String linia = reader.readLine();
+            if (linia == null) {
+                throw new IOException("El fitxer " + fitxer + " no té capçalera");
+            }
+            numLinia++;
+            capcalera = dividirCsv(linia).toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Número de línia de l'últim registre retornat, útil per informar d'errors
+     */
+    long getNumLinia() {
+        return numLinia;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (seguent != null) return true;
+        try {
+            String linia;
+            do {
+                linia = reader.readLine();
+                if (linia == null) return false;
+                numLinia++;
+            } while (linia.isBlank());
+            seguent = jsonl ? llegirJson(linia) : llegirCsv(linia);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Map<String, String> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Map<String, String> registre = seguent;
+        seguent = null;
+        return registre;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private Map<String, String> llegirCsv(String linia) {
+        List<String> camps = dividirCsv(linia);
+        Map<String, String> registre = new HashMap<>();
+        for (int i = 0; i < capcalera.length && i < camps.size(); i++) {
+            String valor = camps.get(i);
+            registre.put(capcalera[i], valor.isEmpty() ? null : valor);
+        }
+        return registre;
+    }
+
+    private static List<String> dividirCsv(String linia) {
+        List<String> camps = new ArrayList<>();
+        StringBuilder camp = new StringBuilder();
+        boolean entreCometes = false;
+        for (int i = 0; i < linia.length(); i++) {
+            char c = linia.charAt(i);
+            if (entreCometes) {
+                if (c == '"' && i + 1 < linia.length() && linia.charAt(i + 1) == '"') {
+                    camp.append('"');
+                    i++;
+                } else if (c == '"') {
+                    entreCometes = false;
+                } else {
+                    camp.append(c);
+                }
+            } else if (c == '"') {
+                entreCometes = true;
+            } else if (c == ',') {
+                camps.add(camp.toString().trim());
+                camp.setLength(0);
+            } else {
+                camp.append(c);
+            }
+        }
+        camps.add(camp.toString().trim());
+        return camps;
+    }
+
+    /**
+     * Interpreta un objecte JSON pla: claus de text i valors de text, número, booleà o null
+     */
+    private Map<String, String> llegirJson(String linia) {
+        Map<String, String> registre = new HashMap<>();
+        int[] pos = {saltarEspais(linia, 0)};
+        esperar(linia, pos, '{');
+        if (linia.charAt(saltarEspais(linia, pos[0])) == '}') return registre;
+        while (true) {
+            pos[0] = saltarEspais(linia, pos[0]);
+            String clau = llegirText(linia, pos);
+            pos[0] = saltarEspais(linia, pos[0]);
+            esperar(linia, pos, ':');
+            pos[0] = saltarEspais(linia, pos[0]);
+            String valor;
+            if (linia.charAt(pos[0]) == '"') {
+                valor = llegirText(linia, pos);
+            } else {
+                int inici = pos[0];
+                while (pos[0] < linia.length() && ",} \t".indexOf(linia.charAt(pos[0])) < 0) pos[0]++;
+                valor = linia.substring(inici, pos[0]);
+                if (valor.equals("null")) valor = null;
+            }
+            registre.put(clau, valor);
+            pos[0] = saltarEspais(linia, pos[0]);
+            if (pos[0] < linia.length() && linia.charAt(pos[0]) == ',') {
+                pos[0]++;
+                continue;
+            }
+            esperar(linia, pos, '}');
+            return registre;
+        }
+    }
+
+    private String llegirText(String linia, int[] pos) {
+        esperar(linia, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (pos[0] < linia.length()) {
+            char c = linia.charAt(pos[0]++);
+            if (c == '"') return sb.toString();
+            if (c == '\\') {
+                char esc = linia.charAt(pos[0]++);
+                switch (esc) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case 'r' -> sb.append('\r');
+                    case 'u' -> {
+                        sb.append((char) Integer.parseInt(linia.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                    }
+                    default -> sb.append(esc);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Text JSON sense tancar a la línia " + numLinia);
+    }
+
+    private void esperar(String linia, int[] pos, char esperat) {
+        if (pos[0] >= linia.length() || linia.charAt(pos[0]) != esperat) {
+            throw new IllegalArgumentException("JSON invàlid a la línia " + numLinia + ": s'esperava '" + esperat + "'");
+        }
+        pos[0]++;
+    }
+
+    private static int saltarEspais(String linia, int pos) {
+        while (pos < linia.length() && Character.isWhitespace(linia.charAt(pos))) pos++;
+        return pos;
+    }
+}
@@ -0,0 +1,7 @@
+package com.project.dao;
+
+/**
+ * Fila del rànquing de llibres més prestats d'un període
+ */
+public record LlibrePrestat(long llibreId, String titol, long prestecs) {
+}
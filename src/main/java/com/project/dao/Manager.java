@@ -1,94 +1,263 @@
 package com.project.dao;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.Serializable;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
 import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
+import org.hibernate.PessimisticLockException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.hibernate.Transaction;
-import org.hibernate.boot.registry.StandardServiceRegistry;
-import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
-import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.exception.LockAcquisitionException;
 import org.hibernate.query.Query;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 
 import com.project.domain.*;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.OptimisticLockException;
+
 public class Manager {
+    private static final int MAX_REINTENTS = 10;
+    private static final long ESPERA_BASE_MS = 2;
+    private static final int MIDA_LLISTA_IN = 1000;
+    private static final int MIDA_LOT_STREAM = 1000;
+    private static final String GRAF_CARREGA = "jakarta.persistence.fetchgraph";
+
     private static SessionFactory factory;
+    private static SessionFactory factoryLectura;
+    private static boolean nomesLectura = false;
+    private static final ThreadLocal<Boolean> LECTURA_PER_CRIDA = ThreadLocal.withInitial(() -> false);
+    private static EscriptorUnic escriptor;
+    private static MetriquesManager metriques;
+    private static boolean cercaTextCompleta = false;
 
     /**
      * Crea la SessionFactory per defecte
      */
     public static void createSessionFactory() {
+        createSessionFactory(new ArrencadaHibernate());
+    }
+
+    /**
+     * Crea la SessionFactory amb un fitxer de propietats específic
+     */
+    public static void createSessionFactory(String propertiesFileName) {
         try {
-            Configuration configuration = new Configuration();
-            
-            // Registrem totes les classes que tenen anotacions JPA
-            configuration.addAnnotatedClass(Biblioteca.class);
-            configuration.addAnnotatedClass(Llibre.class);
-            configuration.addAnnotatedClass(Exemplar.class);
-            configuration.addAnnotatedClass(Prestec.class);
-            configuration.addAnnotatedClass(Persona.class);
-            configuration.addAnnotatedClass(Autor.class);
-
-            StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
-                .applySettings(configuration.getProperties())
-                .build();
-                
-            factory = configuration.buildSessionFactory(serviceRegistry);
-        } catch (Throwable ex) {
-            System.err.println("No s'ha pogut crear la SessionFactory: " + ex);
+            createSessionFactory(new ArrencadaHibernate().ambFitxerPropietats(propertiesFileName));
+        } catch (IOException ex) {
+            System.err.println("Error creant la SessionFactory: " + ex);
             throw new ExceptionInInitializerError(ex);
         }
     }
 
     /**
-     * Crea la SessionFactory amb un fitxer de propietats específic
+     * Crea la SessionFactory amb una configuració d'arrencada concreta
+     * (mode ràpid, temps per fases...)
      */
-    public static void createSessionFactory(String propertiesFileName) {
+    public static void createSessionFactory(ArrencadaHibernate arrencada) {
         try {
-            Configuration configuration = new Configuration();
-            
-            configuration.addAnnotatedClass(Biblioteca.class);
-            configuration.addAnnotatedClass(Llibre.class);
-            configuration.addAnnotatedClass(Exemplar.class);
-            configuration.addAnnotatedClass(Prestec.class);
-            configuration.addAnnotatedClass(Persona.class);
-            configuration.addAnnotatedClass(Autor.class);
-
-            Properties properties = new Properties();
-            try (InputStream input = Manager.class.getClassLoader().getResourceAsStream(propertiesFileName)) {
-                if (input == null) {
-                    throw new IOException("No s'ha trobat " + propertiesFileName);
-                }
-                properties.load(input);
+            factory = arrencada.construir();
+            Map<String, Object> propietats = factory.getProperties();
+            nomesLectura = Boolean.parseBoolean(String.valueOf(propietats.get(ArrencadaHibernate.NOMES_LECTURA)));
+            if (nomesLectura) {
+                cercaTextCompleta = CercaLlibres.existeix(factory);
+            } else {
+                cercaTextCompleta = CercaLlibres.preparar(factory);
+                IndexosSqlite.preparar(factory);
             }
+            if (Boolean.parseBoolean(String.valueOf(propietats.get(ArrencadaHibernate.ESCRIPTOR_UNIC)))) {
+                escriptor = new EscriptorUnic(factory, EscriptorUnic.MIDA_LOT_PER_DEFECTE);
+            }
+            if (Boolean.parseBoolean(String.valueOf(propietats.get(MetriquesManager.METRIQUES)))) {
+                Object interval = propietats.get(MetriquesManager.INTERVAL_LOG);
+                metriques = new MetriquesManager(factory, interval != null
+                    ? Integer.parseInt(interval.toString()) : MetriquesManager.INTERVAL_LOG_PER_DEFECTE);
+            }
+        } catch (Throwable ex) {
+            System.err.println("No s'ha pogut crear la SessionFactory: " + ex);
+            if (factory != null) {
+                factory.close();
+                factory = null;
+            }
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
 
-            configuration.addProperties(properties);
-
-            StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
-                .applySettings(configuration.getProperties())
-                .build();
-                
-            factory = configuration.buildSessionFactory(serviceRegistry);
+    /**
+     * Crea una segona SessionFactory, de només lectura, per a les consultes del
+     * Manager (veure ArrencadaHibernate.ambNomesLectura()); les escriptures
+     * continuen anant a la principal. Pot apuntar a la mateixa base de dades,
+     * amb un pool propi, o a una rèplica. Si té la cache de segon nivell, no
+     * veu les invalidacions de la principal: millor deixar-la desactivada.
+     */
+    public static void createSessionFactoryLectura(ArrencadaHibernate arrencada) {
+        try {
+            factoryLectura = arrencada.ambNomesLectura().construir();
         } catch (Throwable ex) {
-            System.err.println("Error creant la SessionFactory: " + ex);
+            System.err.println("No s'ha pogut crear la SessionFactory de lectura: " + ex);
             throw new ExceptionInInitializerError(ex);
         }
     }
 
+    /**
+     * Retorna la SessionFactory activa (càrregues massives, benchmarks...)
+     */
+    public static SessionFactory getSessionFactory() {
+        if (factory == null) {
+            throw new IllegalStateException("La SessionFactory no s'ha creat");
+        }
+        return factory;
+    }
+
+    /**
+     * SessionFactory de les consultes: la de lectura si s'ha creat, si no la principal
+     */
+    public static SessionFactory getSessionFactoryLectura() {
+        return factoryLectura != null ? factoryLectura : getSessionFactory();
+    }
+
+    /**
+     * Executa les consultes del Manager que es facin dins de l'operació amb
+     * sessions de només lectura, encara que la SessionFactory no ho sigui:
+     *
+     *   List<Prestec> actius = Manager.nomesLectura(Manager::getPrestecsActius);
+     *
+     * Només canvia la sessió (entitats sense còpia de l'estat carregat i sense
+     * flush automàtic abans de cada consulta); la connexió és la de sempre.
+     * Les entitats retornades es poden modificar i desar amb update() com
+     * qualsevol altra entitat desconnectada.
+     */
+    public static <T> T nomesLectura(Supplier<T> operacio) {
+        boolean anterior = LECTURA_PER_CRIDA.get();
+        LECTURA_PER_CRIDA.set(true);
+        try {
+            return operacio.get();
+        } finally {
+            LECTURA_PER_CRIDA.set(anterior);
+        }
+    }
+
+    /**
+     * Sessió per a consultes pròpies (informes). És de només lectura si la
+     * SessionFactory ho és, si hi ha una SessionFactory de lectura o dins de
+     * nomesLectura(): llavors Hibernate no guarda la còpia de l'estat carregat
+     * de cada entitat (que només serveix per detectar canvis en el flush) i,
+     * amb FlushMode.MANUAL, no revisa el context de persistència abans de
+     * cada consulta. Cal tancar-la.
+     */
+    public static Session obrirSessioLectura() {
+        if (factoryLectura != null) {
+            return sessioNomesLectura(factoryLectura);
+        }
+        if (nomesLectura || LECTURA_PER_CRIDA.get()) {
+            return sessioNomesLectura(getSessionFactory());
+        }
+        return getSessionFactory().openSession();
+    }
+
+    private static Session sessioNomesLectura(SessionFactory sessionFactory) {
+        Session session = sessionFactory.withOptions()
+            .flushMode(FlushMode.MANUAL)
+            .openSession();
+        session.setDefaultReadOnly(true);
+        return session;
+    }
+
+    /**
+     * Estat del pool de connexions (només si s'usa ProveidorConnexions)
+     */
+    public static EstadistiquesPool getEstadistiquesPool() {
+        return proveidorConnexions().getEstadistiques();
+    }
+
+    static ProveidorConnexions proveidorConnexions() {
+        ConnectionProvider provider = getSessionFactory().unwrap(SessionFactoryImplementor.class)
+            .getServiceRegistry().getService(ConnectionProvider.class);
+        if (provider == null || !provider.isUnwrappableAs(ProveidorConnexions.class)) {
+            throw new IllegalStateException("El pool de connexions del projecte no està actiu");
+        }
+        return provider.unwrap(ProveidorConnexions.class);
+    }
+
+    /**
+     * Encerts i errades per regió de la cache de segon nivell, més la cache de
+     * consultes. Cal haver arrencat amb ArrencadaHibernate.ambCacheSegonNivell()
+     */
+    public static List<EstadistiquesCache> getEstadistiquesCache() {
+        Statistics statistics = getSessionFactory().getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            throw new IllegalStateException("Les estadístiques de Hibernate no estan activades");
+        }
+        List<EstadistiquesCache> resultat = new ArrayList<>();
+        for (String regio : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(regio);
+            resultat.add(new EstadistiquesCache(regio,
+                regionStatistics.getHitCount(), regionStatistics.getMissCount(), regionStatistics.getPutCount()));
+        }
+        resultat.add(new EstadistiquesCache("consultes",
+            statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount()));
+        return resultat;
+    }
+
+    /**
+     * Escriptor únic actiu, o null si les escriptures es fan des de cada fil
+     */
+    public static EscriptorUnic getEscriptorUnic() {
+        return escriptor;
+    }
+
+    /**
+     * Mètriques per operació, o null si no s'han activat amb
+     * ArrencadaHibernate.ambMetriques()
+     */
+    public static MetriquesManager getMetriques() {
+        return metriques;
+    }
+
     /**
      * Tanca la SessionFactory
      */
     public static void close() {
+        if (metriques != null) {
+            metriques.close();
+            metriques = null;
+        }
+        if (escriptor != null) {
+            escriptor.close();
+            escriptor = null;
+        }
+        if (factoryLectura != null) {
+            factoryLectura.close();
+            factoryLectura = null;
+        }
         if (factory != null) {
             factory.close();
         }
@@ -96,228 +265,940 @@ public class Manager {
 
     // Mètodes genèrics CRUD
     public static <T> T save(T entity) {
-        Session session = factory.openSession();
-        Transaction tx = null;
-        try {
-            tx = session.beginTransaction();
+        return mesurar("save", () -> ambTransaccio(session -> {
             session.persist(entity);
-            tx.commit();
             return entity;
-        } catch (HibernateException e) {
-            if (tx != null) tx.rollback();
-            throw e;
-        } finally {
-            session.close();
-        }
+        }));
     }
 
     public static <T> T update(T entity) {
-        Session session = factory.openSession();
-        Transaction tx = null;
-        try {
-            tx = session.beginTransaction();
+        return mesurar("update", () -> ambTransaccio(session -> {
             session.merge(entity);
-            tx.commit();
             return entity;
-        } catch (HibernateException e) {
-            if (tx != null) tx.rollback();
-            throw e;
-        } finally {
-            session.close();
-        }
+        }));
     }
 
     public static <T> void delete(T entity) {
-        Session session = factory.openSession();
-        Transaction tx = null;
-        try {
-            tx = session.beginTransaction();
+        mesurar("delete", () -> ambTransaccio(session -> {
             session.remove(entity);
-            tx.commit();
-        } catch (HibernateException e) {
-            if (tx != null) tx.rollback();
-            throw e;
-        } finally {
-            session.close();
-        }
+            return null;
+        }));
     }
 
     public static <T> T get(Class<T> clazz, Serializable id) {
-        Session session = factory.openSession();
-        try {
-            return session.get(clazz, id);
-        } finally {
-            session.close();
-        }
+        return mesurar("get", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.get(clazz, id);
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Com get, però carregant també les associacions del pla indicat
+     * (per exemple Prestec.GRAF_DETALL), que d'altra manera serien proxies
+     */
+    public static <T> T get(Class<T> clazz, Serializable id, String plaCarrega) {
+        return mesurar("getAmbPla", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.find(clazz, id, Map.of(GRAF_CARREGA, session.getEntityGraph(plaCarrega)));
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Cerca per clau natural: codi de barres d'un Exemplar, ISBN d'un Llibre
+     * o DNI d'una Persona. No passa per HQL; amb la cache de segon nivell
+     * activa, la clau es resol a l'identificador i l'entitat es llegeix de la
+     * cache sense cap consulta. Retorna null si no existeix.
+     */
+    public static <T> T getPerClauNatural(Class<T> clazz, String clau) {
+        return mesurar("getPerClauNatural", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.bySimpleNaturalId(clazz).load(clau);
+            } finally {
+                session.close();
+            }
+        });
     }
 
     // Mètodes específics per a la gestió de la biblioteca
     public static List<Biblioteca> getAllBiblioteques() {
-        Session session = factory.openSession();
-        try {
-            return session.createQuery("from Biblioteca", Biblioteca.class).list();
-        } finally {
-            session.close();
-        }
+        return mesurar("getAllBiblioteques", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery("from Biblioteca", Biblioteca.class)
+                    .setCacheable(true)
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
     }
 
     public static List<Llibre> getAllLlibres() {
-        Session session = factory.openSession();
-        try {
-            return session.createQuery("from Llibre", Llibre.class).list();
-        } finally {
-            session.close();
-        }
+        return mesurar("getAllLlibres", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery("from Llibre", Llibre.class)
+                    .setCacheable(true)
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
     }
 
     public static List<Persona> getAllPersones() {
-        Session session = factory.openSession();
-        try {
-            return session.createQuery("from Persona", Persona.class).list();
-        } finally {
-            session.close();
-        }
+        return mesurar("getAllPersones", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery("from Persona", Persona.class).list();
+            } finally {
+                session.close();
+            }
+        });
     }
 
     public static List<Autor> getAllAutors() {
-        Session session = factory.openSession();
-        try {
-            return session.createQuery("from Autor", Autor.class).list();
-        } finally {
-            session.close();
-        }
+        return mesurar("getAllAutors", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery("from Autor", Autor.class)
+                    .setCacheable(true)
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    // Variants per a taules grans: pàgines per clau (keyset) i streams amb
+    // memòria constant. 'darrerId' és l'identificador de l'últim element de la
+    // pàgina anterior, o 0 per a la primera pàgina. Els streams mantenen una
+    // sessió i un cursor oberts: cal tancar-los (try-with-resources).
+
+    public static List<Biblioteca> getPaginaBiblioteques(long darrerId, int midaPagina) {
+        return mesurar("getPaginaBiblioteques", () -> pagina(Biblioteca.class, "bibliotecaId", darrerId, midaPagina));
+    }
+
+    public static List<Llibre> getPaginaLlibres(long darrerId, int midaPagina) {
+        return mesurar("getPaginaLlibres", () -> pagina(Llibre.class, "llibreId", darrerId, midaPagina));
+    }
+
+    public static List<Persona> getPaginaPersones(long darrerId, int midaPagina) {
+        return mesurar("getPaginaPersones", () -> pagina(Persona.class, "personaId", darrerId, midaPagina));
+    }
+
+    public static List<Autor> getPaginaAutors(long darrerId, int midaPagina) {
+        return mesurar("getPaginaAutors", () -> pagina(Autor.class, "autorId", darrerId, midaPagina));
+    }
+
+    public static Stream<Biblioteca> streamBiblioteques() {
+        return stream("streamBiblioteques", session ->
+            session.createQuery("from Biblioteca b order by b.bibliotecaId", Biblioteca.class));
+    }
+
+    public static Stream<Llibre> streamLlibres() {
+        return stream("streamLlibres", session ->
+            session.createQuery("from Llibre l order by l.llibreId", Llibre.class));
+    }
+
+    public static Stream<Persona> streamPersones() {
+        return stream("streamPersones", session ->
+            session.createQuery("from Persona p order by p.personaId", Persona.class));
+    }
+
+    public static Stream<Autor> streamAutors() {
+        return stream("streamAutors", session ->
+            session.createQuery("from Autor a order by a.autorId", Autor.class));
     }
 
     public static List<Prestec> getPrestecsActius() {
-        Session session = factory.openSession();
-        try {
-            return session.createQuery("from Prestec p where p.actiu = true", Prestec.class).list();
-        } finally {
-            session.close();
-        }
+        return mesurar("getPrestecsActius", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery("from Prestec p where p.actiu = true", Prestec.class)
+                    .applyFetchGraph(session.getEntityGraph(Prestec.GRAF_DETALL))
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
     }
 
     public static List<Prestec> getPrestecsRetardats() {
-        Session session = factory.openSession();
+        return mesurar("getPrestecsRetardats", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                LocalDate avui = LocalDate.now();
+                return session.createQuery(
+                    "from Prestec p where p.actiu = true and p.dataRetornPrevista < :avui", 
+                    Prestec.class)
+                    .setParameter("avui", avui)
+                    .applyFetchGraph(session.getEntityGraph(Prestec.GRAF_DETALL))
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    public static List<Exemplar> getExemplarsDisponibles() {
+        return mesurar("getExemplarsDisponibles", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                // Llibre i biblioteca en la mateixa consulta; l'historial, per trossos d'identificadors
+                List<Exemplar> exemplars = session.createQuery("from Exemplar e where e.disponible = true", Exemplar.class)
+                    .applyFetchGraph(session.getEntityGraph(Exemplar.GRAF_DETALL))
+                    .list();
+                List<Long> ids = exemplars.stream().map(Exemplar::getExemplarId).toList();
+                for (List<Long> tros : trossos(ids)) {
+                    session.createQuery("from Exemplar e where e.exemplarId in :ids", Exemplar.class)
+                        .setParameter("ids", tros)
+                        .applyFetchGraph(session.getEntityGraph(Exemplar.GRAF_HISTORIAL))
+                        .list();
+                }
+                return exemplars;
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    // Projeccions per a llistes: registres immutables amb només les columnes
+    // que es mostren, sense entitats gestionades ni associacions
+
+    public static List<ResumLlibre> getResumLlibres() {
+        return mesurar("getResumLlibres", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery(
+                    "select new com.project.dao.ResumLlibre(l.llibreId, l.isbn, l.titol, l.editorial, l.anyPublicacio) " +
+                    "from Llibre l order by l.titol", ResumLlibre.class)
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    public static List<ResumPersona> getResumPersones() {
+        return mesurar("getResumPersones", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery(
+                    "select new com.project.dao.ResumPersona(p.personaId, p.dni, p.nom, p.telefon, p.email) " +
+                    "from Persona p order by p.nom", ResumPersona.class)
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    public static List<ResumPrestec> getResumPrestecsActius() {
+        return mesurar("getResumPrestecsActius", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery(
+                    "select new com.project.dao.ResumPrestec(p.prestecId, e.codiBarres, l.titol, pe.nom, " +
+                    "p.dataPrestec, p.dataRetornPrevista) " +
+                    "from Prestec p join p.exemplar e join e.llibre l join p.persona pe " +
+                    "where p.actiu = true order by p.dataRetornPrevista", ResumPrestec.class)
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    // Disponibilitat a partir dels comptadors (veure ComptadorsDisponibilitat):
+    // una lectura per clau primària, sense carregar ni comptar exemplars
+
+    /**
+     * Exemplars del llibre a la biblioteca i quants estan disponibles. Si la
+     * biblioteca no en té cap, els dos comptadors són zero.
+     */
+    public static DisponibilitatLlibre getDisponibilitat(Llibre llibre, Biblioteca biblioteca) {
+        return mesurar("getDisponibilitat", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                DisponibilitatLlibre disponibilitat = session.get(DisponibilitatLlibre.class,
+                    new DisponibilitatLlibre.Clau(llibre.getLlibreId(), biblioteca.getBibliotecaId()));
+                return disponibilitat != null ? disponibilitat
+                    : new DisponibilitatLlibre(llibre.getLlibreId(), biblioteca.getBibliotecaId(), 0, 0);
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Disponibilitat del llibre a cada biblioteca que en té exemplars
+     */
+    public static List<DisponibilitatLlibre> getDisponibilitat(Llibre llibre) {
+        return mesurar("getDisponibilitatLlibre", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery(
+                    "from DisponibilitatLlibre d where d.llibreId = :llibre order by d.bibliotecaId",
+                    DisponibilitatLlibre.class)
+                    .setParameter("llibre", llibre.getLlibreId())
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    public static long getNombrePrestecsActius(Persona persona) {
+        return mesurar("getNombrePrestecsActius", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                PrestecsPersona prestecs = session.get(PrestecsPersona.class, persona.getPersonaId());
+                return prestecs != null ? prestecs.getActius() : 0L;
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    // Resums diaris de préstecs (veure ResumsDiaris): només hi ha files dels
+    // dies amb activitat o amb préstecs en retard
+
+    /**
+     * Resums diaris de totes les biblioteques de desDe a finsA inclosos,
+     * ordenats per dia i biblioteca
+     */
+    public static List<ResumDiariBiblioteca> getResumsDiarisBiblioteques(LocalDate desDe, LocalDate finsA) {
+        return mesurar("getResumsDiarisBiblioteques", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery(
+                    "from ResumDiariBiblioteca r where r.dia between :desDe and :finsA order by r.dia, r.bibliotecaId",
+                    ResumDiariBiblioteca.class)
+                    .setParameter("desDe", desDe)
+                    .setParameter("finsA", finsA)
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Resums diaris del llibre de desDe a finsA inclosos, ordenats per dia
+     */
+    public static List<ResumDiariLlibre> getResumsDiarisLlibre(Llibre llibre, LocalDate desDe, LocalDate finsA) {
+        return mesurar("getResumsDiarisLlibre", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery(
+                    "from ResumDiariLlibre r where r.llibreId = :llibre and r.dia between :desDe and :finsA " +
+                    "order by r.dia", ResumDiariLlibre.class)
+                    .setParameter("llibre", llibre.getLlibreId())
+                    .setParameter("desDe", desDe)
+                    .setParameter("finsA", finsA)
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Presta un exemplar de forma segura amb peticions concurrents: el canvi de
+     * disponibilitat és un UPDATE condicional (només si encara està disponible),
+     * de manera que dos fils mai poden prestar el mateix exemplar. Si la base de
+     * dades està bloquejada o hi ha un conflicte de versió es reintenta.
+     */
+    public static Prestec ferPrestec(Exemplar exemplar, Persona persona, LocalDate dataPrestec, LocalDate dataRetornPrevista) {
+        return mesurar("ferPrestec", () -> {
+            PrestecFet fet = ambReintents(() -> ambTransaccio(session -> {
+                int actualitzats = session.createMutationQuery(
+                    "update versioned Exemplar e set e.disponible = false " +
+                    "where e.exemplarId = :id and e.disponible = true")
+                    .setParameter("id", exemplar.getExemplarId())
+                    .executeUpdate();
+                if (actualitzats == 0) {
+                    throw new IllegalStateException("L'exemplar no està disponible");
+                }
+
+                Prestec nou = new Prestec(exemplar, persona, dataPrestec, dataRetornPrevista);
+                session.persist(nou);
+                Object[] actual = session.createQuery(
+                    "select e.versio, e.llibre.llibreId, e.biblioteca.bibliotecaId from Exemplar e where e.exemplarId = :id",
+                    Object[].class)
+                    .setParameter("id", exemplar.getExemplarId())
+                    .getSingleResult();
+                ComptadorsDisponibilitat.ajustarDisponibles(session, (Long) actual[1], (Long) actual[2], -1);
+                ComptadorsDisponibilitat.ajustarPrestecsActius(session, persona.getPersonaId(), 1);
+                ResumsDiaris.afegirPrestecs(session, dataPrestec, dataRetornPrevista, (Long) actual[1],
+                    (Long) actual[2], 1);
+                return new PrestecFet(nou, (Long) actual[0]);
+            }));
+
+            // Mantenim coherents els objectes que ens ha passat el client, només
+            // quan el commit ja ha anat bé
+            Prestec prestec = fet.prestec();
+            exemplar.setVersio(fet.versioExemplar());
+            exemplar.setDisponible(false);
+            if (Hibernate.isInitialized(exemplar.getHistorialPrestecs())) {
+                exemplar.getHistorialPrestecs().add(prestec);
+            }
+            if (Hibernate.isInitialized(persona.getPrestecs())) {
+                persona.getPrestecs().add(prestec);
+            }
+            return prestec;
+        });
+    }
+
+    /**
+     * Retorna un préstec amb UPDATEs condicionals: només el primer retorn d'un
+     * préstec actiu té efecte, encara que arribin peticions duplicades
+     */
+    public static void retornarPrestec(Prestec prestec, LocalDate dataRetornReal) {
+        mesurar("retornarPrestec", () -> {
+            Versions versions = ambReintents(() -> ambTransaccio(session -> {
+                int actualitzats = session.createMutationQuery(
+                    "update versioned Prestec p set p.actiu = false, p.dataRetornReal = :data " +
+                    "where p.prestecId = :id and p.actiu = true")
+                    .setParameter("data", dataRetornReal)
+                    .setParameter("id", prestec.getPrestecId())
+                    .executeUpdate();
+                if (actualitzats == 0) {
+                    throw new IllegalStateException("El préstec ja ha estat retornat");
+                }
+
+                session.createMutationQuery(
+                    "update versioned Exemplar e set e.disponible = true " +
+                    "where e.exemplarId = (select p.exemplar.exemplarId from Prestec p where p.prestecId = :id)")
+                    .setParameter("id", prestec.getPrestecId())
+                    .executeUpdate();
+
+                Object[] actual = session.createQuery(
+                    "select p.versio, e.llibre.llibreId, e.biblioteca.bibliotecaId, p.persona.personaId, " +
+                    "p.dataRetornPrevista from Prestec p join p.exemplar e where p.prestecId = :id", Object[].class)
+                    .setParameter("id", prestec.getPrestecId())
+                    .getSingleResult();
+                ComptadorsDisponibilitat.ajustarDisponibles(session, (Long) actual[1], (Long) actual[2], 1);
+                ComptadorsDisponibilitat.ajustarPrestecsActius(session, (Long) actual[3], -1);
+                ResumsDiaris.afegirRetorn(session, dataRetornReal, (LocalDate) actual[4], (Long) actual[1],
+                    (Long) actual[2]);
+                Exemplar exemplar = prestec.getExemplar();
+                Long versioExemplar = exemplar != null && Hibernate.isInitialized(exemplar)
+                    ? versioActual(session, "Exemplar", "exemplarId", exemplar.getExemplarId()) : null;
+                return new Versions((Long) actual[0], versioExemplar);
+            }));
+
+            prestec.setVersio(versions.prestec());
+            if (versions.exemplar() != null) {
+                prestec.getExemplar().setVersio(versions.exemplar());
+            }
+            // setDataRetornReal també marca el préstec com a inactiu i l'exemplar, si està carregat,
+            // com a disponible; l'associació no canvia i un update posterior no la perd
+            prestec.setDataRetornReal(dataRetornReal);
+            return null;
+        });
+    }
+
+    /**
+     * Presta a una persona tots els exemplars de la llista en una sola
+     * transacció (per exemple, un lot d'un punt d'autopréstec). Els exemplars
+     * es marquen com a no disponibles amb un UPDATE per cada tros de la
+     * llista i els préstecs s'insereixen en lot. Retorna el resultat de cada
+     * codi, en el mateix ordre: els que no existeixen o no estan disponibles
+     * no impedeixen prestar els altres.
+     */
+    public static List<ResultatExemplar> ferPrestecs(List<String> codisBarres, Persona persona,
+                                                     LocalDate dataPrestec, LocalDate dataRetornPrevista) {
+        return mesurar("ferPrestecs", () -> ambReintents(() -> ambTransaccio(session -> {
+            Map<String, Long> disponibles = new HashMap<>();
+            Set<String> prestats = new HashSet<>();
+            for (List<String> tros : trossos(new ArrayList<>(new LinkedHashSet<>(codisBarres)))) {
+                for (Object[] fila : session.createQuery(
+                        "select e.codiBarres, e.exemplarId, e.disponible from Exemplar e where e.codiBarres in :codis",
+                        Object[].class)
+                        .setParameter("codis", tros)
+                        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                        .list()) {
+                    if ((Boolean) fila[2]) {
+                        disponibles.put((String) fila[0], (Long) fila[1]);
+                    } else {
+                        prestats.add((String) fila[0]);
+                    }
+                }
+            }
+
+            int actualitzats = 0;
+            for (List<Long> tros : trossos(new ArrayList<>(disponibles.values()))) {
+                actualitzats += session.createMutationQuery(
+                    "update versioned Exemplar e set e.disponible = false " +
+                    "where e.exemplarId in :ids and e.disponible = true")
+                    .setParameter("ids", tros)
+                    .executeUpdate();
+            }
+            if (actualitzats != disponibles.size()) {
+                // Un altre préstec s'ha avançat entre la lectura i l'UPDATE: es torna a començar
+                throw new OptimisticLockException("Algun exemplar ha deixat d'estar disponible durant el préstec");
+            }
+
+            Persona personaRef = session.getReference(Persona.class, persona.getPersonaId());
+            Map<String, Long> prestecs = new HashMap<>();
+            for (Map.Entry<String, Long> exemplar : disponibles.entrySet()) {
+                Prestec prestec = new Prestec(session.getReference(Exemplar.class, exemplar.getValue()),
+                    personaRef, dataPrestec, dataRetornPrevista);
+                session.persist(prestec);
+                prestecs.put(exemplar.getKey(), prestec.getPrestecId());
+            }
+            if (!disponibles.isEmpty()) {
+                Map<List<Long>, Long> perLlibre = ajustarDisponibles(session, new ArrayList<>(disponibles.values()), -1);
+                ComptadorsDisponibilitat.ajustarPrestecsActius(session, persona.getPersonaId(), disponibles.size());
+                ResumsDiaris.afegirPrestecs(session, dataPrestec, dataRetornPrevista, perLlibre);
+            }
+
+            List<ResultatExemplar> resultats = new ArrayList<>(codisBarres.size());
+            Set<String> vistos = new HashSet<>();
+            for (String codi : codisBarres) {
+                ResultatExemplar.Estat estat = !vistos.add(codi) ? ResultatExemplar.Estat.DUPLICAT
+                    : prestecs.containsKey(codi) ? ResultatExemplar.Estat.PRESTAT
+                    : prestats.contains(codi) ? ResultatExemplar.Estat.NO_DISPONIBLE
+                    : ResultatExemplar.Estat.NO_EXISTEIX;
+                resultats.add(new ResultatExemplar(codi, estat,
+                    estat == ResultatExemplar.Estat.PRESTAT ? prestecs.get(codi) : 0));
+            }
+            return resultats;
+        })));
+    }
+
+    /**
+     * Retorna en una sola transacció el préstec actiu de cada exemplar de la
+     * llista, amb un UPDATE per tros sobre prestecs i un altre sobre
+     * exemplars. Retorna el resultat de cada codi, en el mateix ordre.
+     */
+    public static List<ResultatExemplar> retornarPrestecs(List<String> codisBarres, LocalDate dataRetornReal) {
+        return mesurar("retornarPrestecs", () -> ambReintents(() -> ambTransaccio(session -> {
+            Map<String, Long> prestecs = new HashMap<>();
+            Map<String, Long> exemplars = new HashMap<>();
+            for (List<String> tros : trossos(new ArrayList<>(new LinkedHashSet<>(codisBarres)))) {
+                for (Object[] fila : session.createQuery(
+                        "select e.codiBarres, e.exemplarId, p.prestecId from Exemplar e " +
+                        "left join Prestec p on p.exemplar = e and p.actiu = true " +
+                        "where e.codiBarres in :codis", Object[].class)
+                        .setParameter("codis", tros)
+                        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                        .list()) {
+                    exemplars.put((String) fila[0], (Long) fila[1]);
+                    if (fila[2] != null) {
+                        prestecs.put((String) fila[0], (Long) fila[2]);
+                    }
+                }
+            }
+
+            int actualitzats = 0;
+            for (List<Long> tros : trossos(new ArrayList<>(prestecs.values()))) {
+                actualitzats += session.createMutationQuery(
+                    "update versioned Prestec p set p.actiu = false, p.dataRetornReal = :data " +
+                    "where p.prestecId in :ids and p.actiu = true")
+                    .setParameter("data", dataRetornReal)
+                    .setParameter("ids", tros)
+                    .executeUpdate();
+            }
+            if (actualitzats != prestecs.size()) {
+                throw new OptimisticLockException("Algun préstec s'ha retornat durant el retorn en lot");
+            }
+            List<Long> retornats = new ArrayList<>();
+            prestecs.keySet().forEach(codi -> retornats.add(exemplars.get(codi)));
+            for (List<Long> tros : trossos(retornats)) {
+                session.createMutationQuery(
+                    "update versioned Exemplar e set e.disponible = true where e.exemplarId in :ids")
+                    .setParameter("ids", tros)
+                    .executeUpdate();
+            }
+            ajustarDisponibles(session, retornats, 1);
+            Map<Long, Long> perPersona = new HashMap<>();
+            // Retorns de cada llibre i biblioteca per data de retorn prevista
+            Map<List<Long>, Map<LocalDate, Long>> perLlibre = new HashMap<>();
+            for (List<Long> tros : trossos(new ArrayList<>(prestecs.values()))) {
+                for (Object[] fila : session.createQuery(
+                        "select p.persona.personaId, e.llibre.llibreId, e.biblioteca.bibliotecaId, p.dataRetornPrevista " +
+                        "from Prestec p join p.exemplar e where p.prestecId in :ids", Object[].class)
+                        .setParameter("ids", tros)
+                        .list()) {
+                    perPersona.merge((Long) fila[0], 1L, Long::sum);
+                    perLlibre.computeIfAbsent(List.of((Long) fila[1], (Long) fila[2]), clau -> new HashMap<>())
+                        .merge((LocalDate) fila[3], 1L, Long::sum);
+                }
+            }
+            perPersona.forEach((personaId, n) -> ComptadorsDisponibilitat.ajustarPrestecsActius(session, personaId, -n));
+            ResumsDiaris.afegirRetorns(session, dataRetornReal, perLlibre);
+
+            List<ResultatExemplar> resultats = new ArrayList<>(codisBarres.size());
+            Set<String> vistos = new HashSet<>();
+            for (String codi : codisBarres) {
+                ResultatExemplar.Estat estat = !vistos.add(codi) ? ResultatExemplar.Estat.DUPLICAT
+                    : prestecs.containsKey(codi) ? ResultatExemplar.Estat.RETORNAT
+                    : exemplars.containsKey(codi) ? ResultatExemplar.Estat.SENSE_PRESTEC
+                    : ResultatExemplar.Estat.NO_EXISTEIX;
+                resultats.add(new ResultatExemplar(codi, estat,
+                    estat == ResultatExemplar.Estat.RETORNAT ? prestecs.get(codi) : 0));
+            }
+            return resultats;
+        })));
+    }
+
+    /**
+     * Cerca per paraules del títol (prefixos, sense tenir en compte accents),
+     * amb l'índex de text complet si està disponible
+     */
+    public static List<Llibre> cercarLlibrePerTitol(String titol) {
+        return mesurar("cercarLlibrePerTitol", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                List<Long> ids;
+                if (cercaTextCompleta) {
+                    ids = CercaLlibres.cercar(session, titol, 0, 0, CercaLlibres.CAMP_TITOL);
+                } else {
+                    ids = session.createQuery(
+                        "select l.llibreId from Llibre l where lower(l.titol) like lower(:titol)", 
+                        Long.class)
+                        .setParameter("titol", "%" + titol + "%")
+                        .setCacheable(true)
+                        .list();
+                }
+                return carregarLlibres(session, ids);
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Cerca per paraules del nom d'algun dels autors, amb l'índex de text
+     * complet si està disponible
+     */
+    public static List<Llibre> cercarLlibrePerAutor(String nomAutor) {
+        return mesurar("cercarLlibrePerAutor", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                List<Long> ids;
+                if (cercaTextCompleta) {
+                    ids = CercaLlibres.cercar(session, nomAutor, 0, 0, CercaLlibres.CAMP_AUTORS);
+                } else {
+                    ids = session.createQuery(
+                        "select distinct l.llibreId from Llibre l join l.autors a where lower(a.nom) like lower(:nom)", 
+                        Long.class)
+                        .setParameter("nom", "%" + nomAutor + "%")
+                        .setCacheable(true)
+                        .list();
+                }
+                return carregarLlibres(session, ids);
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Cerca al títol i als autors alhora, ordenada per rellevància i paginada
+     * (la primera pàgina és la 0)
+     */
+    public static List<Llibre> cercarLlibres(String text, int pagina, int midaPagina) {
+        return mesurar("cercarLlibres", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                List<Long> ids;
+                if (cercaTextCompleta) {
+                    ids = CercaLlibres.cercar(session, text, pagina, midaPagina);
+                } else {
+                    ids = session.createQuery(
+                        "select l.llibreId from Llibre l where lower(l.titol) like lower(:text) " +
+                        "or exists (select a from l.autors a where lower(a.nom) like lower(:text)) order by l.titol", 
+                        Long.class)
+                        .setParameter("text", "%" + text + "%")
+                        .setFirstResult(pagina * midaPagina)
+                        .setMaxResults(midaPagina)
+                        .list();
+                }
+                return carregarLlibres(session, ids);
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    public static List<Prestec> getHistorialPrestecs(Persona persona) {
+        return mesurar("getHistorialPrestecs", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery(
+                    "from Prestec p where p.persona = :persona order by p.dataPrestec desc", 
+                    Prestec.class)
+                    .setParameter("persona", persona)
+                    .applyFetchGraph(session.getEntityGraph(Prestec.GRAF_DETALL))
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    /**
+     * Historial d'una persona per pàgines, del préstec més recent al més antic
+     * (per identificador). 'darrerId' és el del darrer préstec de la pàgina
+     * anterior, o 0 per a la primera pàgina.
+     */
+    public static List<Prestec> getPaginaHistorialPrestecs(Persona persona, long darrerId, int midaPagina) {
+        return mesurar("getPaginaHistorialPrestecs", () -> {
+            Session session = obrirSessioLectura();
+            try {
+                return session.createQuery(
+                    "from Prestec p where p.persona = :persona and p.prestecId < :darrer order by p.prestecId desc", 
+                    Prestec.class)
+                    .setParameter("persona", persona)
+                    .setParameter("darrer", darrerId > 0 ? darrerId : Long.MAX_VALUE)
+                    .setMaxResults(midaPagina)
+                    .applyFetchGraph(session.getEntityGraph(Prestec.GRAF_DETALL))
+                    .list();
+            } finally {
+                session.close();
+            }
+        });
+    }
+
+    public static Stream<Prestec> streamHistorialPrestecs(Persona persona) {
+        return stream("streamHistorialPrestecs", session -> session.createQuery(
+                "from Prestec p where p.persona = :persona order by p.prestecId desc", 
+                Prestec.class)
+            .setParameter("persona", persona)
+            .applyFetchGraph(session.getEntityGraph(Prestec.GRAF_DETALL)));
+    }
+
+    /**
+     * Pàgina ordenada per l'identificador: 'where id > darrerId' aprofita la
+     * clau primària i costa el mateix a la primera pàgina que a la milionèsima,
+     * a diferència d'OFFSET, que ha de llegir i descartar totes les anteriors
+     */
+    private static <T> List<T> pagina(Class<T> entitat, String id, long darrerId, int midaPagina) {
+        Session session = obrirSessioLectura();
         try {
-            LocalDate avui = LocalDate.now();
             return session.createQuery(
-                "from Prestec p where p.actiu = true and p.dataRetornPrevista < :avui", 
-                Prestec.class)
-                .setParameter("avui", avui)
+                "from " + entitat.getSimpleName() + " e where e." + id + " > :darrer order by e." + id, entitat)
+                .setParameter("darrer", darrerId)
+                .setMaxResults(midaPagina)
                 .list();
         } finally {
             session.close();
         }
     }
 
-    public static List<Exemplar> getExemplarsDisponibles() {
-        Session session = factory.openSession();
+    /**
+     * Recorre la consulta amb un cursor de només avançar. Cada MIDA_LOT_STREAM
+     * files es buida la sessió, de manera que la memòria no depèn de la mida de
+     * la taula; els elements ja lliurats queden desconnectats. Les entitats es
+     * llegeixen com a només lectura i sense passar per la cache de segon nivell,
+     * perquè un recorregut complet no en desplaci el contingut útil.
+     *
+     * Les mètriques de l'operació es registren en tancar el Stream: la
+     * latència inclou tot el recorregut i compten les entitats que es
+     * carreguen mentre s'avança.
+     */
+    private static <T> Stream<T> stream(String nom, Function<Session, Query<T>> consulta) {
+        MetriquesManager actives = metriques;
+        MetriquesManager.OperacioOberta mesura = actives == null
+            ? MetriquesManager.OperacioOberta.SENSE_METRIQUES : actives.obrir(nom);
+        Session session = obrirSessioLectura();
         try {
-            List<Exemplar> exemplars = session.createQuery("from Exemplar e where e.disponible = true", Exemplar.class).list();
-            exemplars.forEach(exemplar -> Hibernate.initialize(exemplar.getHistorialPrestecs()));
-            return exemplars;
-        } finally {
+            session.setDefaultReadOnly(true);
+            session.setCacheMode(CacheMode.IGNORE);
+            ScrollableResults<T> resultats = mesura.executar(() -> consulta.apply(session)
+                .setFetchSize(MIDA_LOT_STREAM)
+                .scroll(ScrollMode.FORWARD_ONLY));
+            Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(
+                    Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                private long llegides = 0;
+
+                @Override
+                public boolean tryAdvance(Consumer<? super T> accio) {
+                    if (!mesura.executar(resultats::next)) {
+                        return false;
+                    }
+                    accio.accept(mesura.executar(resultats::get));
+                    if (++llegides % MIDA_LOT_STREAM == 0) {
+                        session.clear();
+                    }
+                    return true;
+                }
+            };
+            return StreamSupport.stream(spliterator, false).onClose(() -> {
+                try {
+                    resultats.close();
+                } finally {
+                    session.close();
+                    mesura.tancar();
+                }
+            });
+        } catch (RuntimeException e) {
             session.close();
+            mesura.tancar();
+            throw e;
         }
     }
 
-    public static Prestec ferPrestec(Exemplar exemplar, Persona persona, LocalDate dataPrestec, LocalDate dataRetornPrevista) {
-        if (!exemplar.isDisponible()) {
-            throw new IllegalStateException("L'exemplar no està disponible");
+    /**
+     * Carrega els llibres indicats, amb els autors i els exemplars (i la seva
+     * biblioteca), mantenint l'ordre de la llista d'identificadors.
+     * Cada col·lecció es carrega amb una consulta per tros de MIDA_LLISTA_IN
+     * llibres, en comptes d'una consulta per llibre; un sol pla amb les dues
+     * col·leccions multiplicaria les files (autors x exemplars).
+     */
+    private static List<Llibre> carregarLlibres(Session session, List<Long> ids) {
+        Map<Long, Llibre> perId = new HashMap<>();
+        for (List<Long> tros : trossos(ids)) {
+            session.createQuery("from Llibre l where l.llibreId in :ids", Llibre.class)
+                .setParameter("ids", tros)
+                .applyFetchGraph(session.getEntityGraph(Llibre.GRAF_AUTORS))
+                .list()
+                .forEach(llibre -> perId.put(llibre.getLlibreId(), llibre));
+            session.createQuery("from Llibre l where l.llibreId in :ids", Llibre.class)
+                .setParameter("ids", tros)
+                .applyFetchGraph(session.getEntityGraph(Llibre.GRAF_EXEMPLARS))
+                .list();
         }
+        List<Llibre> llibres = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Llibre llibre = perId.get(id);
+            if (llibre != null) llibres.add(llibre);
+        }
+        return llibres;
+    }
 
-        Prestec prestec = new Prestec(exemplar, persona, dataPrestec, dataRetornPrevista);
-        exemplar.addPrestec(prestec);
-        persona.addPrestec(prestec);
-
-        Session session = factory.openSession();
-        Transaction tx = null;
-        try {
-            tx = session.beginTransaction();
-            session.persist(prestec);
-            session.merge(exemplar);
-            session.merge(persona);
-            tx.commit();
-            return prestec;
-        } catch (HibernateException e) {
-            if (tx != null) tx.rollback();
-            throw e;
-        } finally {
-            session.close();
+    /**
+     * Divideix una llista d'identificadors o codis en trossos aptes per a un 'in :ids'
+     */
+    private static <T> List<List<T>> trossos(List<T> ids) {
+        List<List<T>> trossos = new ArrayList<>();
+        for (int inici = 0; inici < ids.size(); inici += MIDA_LLISTA_IN) {
+            trossos.add(ids.subList(inici, Math.min(ids.size(), inici + MIDA_LLISTA_IN)));
         }
+        return trossos;
     }
 
-    public static void retornarPrestec(Prestec prestec, LocalDate dataRetornReal) {
-        if (!prestec.isActiu()) {
-            throw new IllegalStateException("El préstec ja ha estat retornat");
+    /**
+     * Suma delta als exemplars disponibles de cada llibre i biblioteca per
+     * cada exemplar de la llista. Retorna quants exemplars de la llista hi
+     * ha de cada llibre i biblioteca.
+     */
+    private static Map<List<Long>, Long> ajustarDisponibles(Session session, List<Long> exemplars, long delta) {
+        Map<List<Long>, Long> perLlibre = new HashMap<>();
+        for (List<Long> tros : trossos(exemplars)) {
+            for (Object[] fila : session.createQuery(
+                    "select e.llibre.llibreId, e.biblioteca.bibliotecaId, count(e) from Exemplar e " +
+                    "where e.exemplarId in :ids group by e.llibre.llibreId, e.biblioteca.bibliotecaId", Object[].class)
+                    .setParameter("ids", tros)
+                    .list()) {
+                perLlibre.merge(List.of((Long) fila[0], (Long) fila[1]), (Long) fila[2], Long::sum);
+            }
         }
+        perLlibre.forEach((clau, n) ->
+            ComptadorsDisponibilitat.ajustarDisponibles(session, clau.get(0), clau.get(1), delta * n));
+        return perLlibre;
+    }
 
-        prestec.setDataRetornReal(dataRetornReal);
-        prestec.setActiu(false);
-        prestec.getExemplar().setDisponible(true);
+    /**
+     * Executa l'operació registrant-ne les mètriques amb el nom indicat, si
+     * estan activades
+     */
+    private static <T> T mesurar(String nom, Supplier<T> operacio) {
+        MetriquesManager actives = metriques;
+        return actives == null ? operacio.get() : actives.mesurar(nom, operacio);
+    }
 
+    /**
+     * Executa l'operació dins d'una transacció nova i la desfà si falla. En
+     * mode escriptor únic l'operació s'afegeix a la transacció del lot
+     * següent de l'escriptor.
+     */
+    private static <T> T ambTransaccio(Function<Session, T> operacio) {
+        if (escriptor != null) {
+            return escriptor.executar(operacio);
+        }
         Session session = factory.openSession();
         Transaction tx = null;
         try {
             tx = session.beginTransaction();
-            session.merge(prestec);
-            session.merge(prestec.getExemplar());
+            T resultat = operacio.apply(session);
             tx.commit();
-        } catch (HibernateException e) {
-            if (tx != null) tx.rollback();
+            return resultat;
+        } catch (RuntimeException e) {
+            if (tx != null && tx.isActive()) tx.rollback();
             throw e;
         } finally {
             session.close();
         }
     }
 
-    public static List<Llibre> cercarLlibrePerTitol(String titol) {
-        Session session = factory.openSession();
-        try {
-            List<Llibre> llibres = session.createQuery(
-                "from Llibre l where lower(l.titol) like lower(:titol)", 
-                Llibre.class)
-                .setParameter("titol", "%" + titol + "%")
-                .list();
-            llibres.forEach(llibre -> {
-                Hibernate.initialize(llibre.getAutors());
-                Hibernate.initialize(llibre.getExemplars());
-            });
-            return llibres;
-        } finally {
-            session.close();
+    /**
+     * Reintenta l'operació quan falla per concurrència (base de dades bloquejada
+     * o versió obsoleta), esperant un temps aleatori que creix a cada intent
+     */
+    static <T> T ambReintents(Supplier<T> operacio) {
+        for (int intent = 1; ; intent++) {
+            try {
+                return operacio.get();
+            } catch (RuntimeException e) {
+                if (!esConflicteConcurrencia(e) || intent >= MAX_REINTENTS) {
+                    throw e;
+                }
+                long espera = ThreadLocalRandom.current().nextLong(1, (ESPERA_BASE_MS << Math.min(intent, 8)) + 1);
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
         }
     }
 
-    public static List<Llibre> cercarLlibrePerAutor(String nomAutor) {
-        Session session = factory.openSession();
-        try {
-            List<Llibre> llibres =  session.createQuery(
-                "select distinct l from Llibre l join l.autors a where lower(a.nom) like lower(:nom)", 
-                Llibre.class)
-                .setParameter("nom", "%" + nomAutor + "%")
-                .list();
-            llibres.forEach(llibre -> {
-                Hibernate.initialize(llibre.getAutors());
-                Hibernate.initialize(llibre.getExemplars());
-            });
-            return llibres;
-        } finally {
-            session.close();
+    static boolean esConflicteConcurrencia(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof LockAcquisitionException
+                    || t instanceof PessimisticLockException
+                    || t instanceof OptimisticLockException
+                    || t instanceof StaleStateException) {
+                return true;
+            }
+            if (t instanceof SQLException sql && sql.getMessage() != null && sql.getMessage().contains("SQLITE_BUSY")) {
+                return true;
+            }
         }
+        return false;
     }
 
-    public static List<Prestec> getHistorialPrestecs(Persona persona) {
-        Session session = factory.openSession();
-        try {
-            return session.createQuery(
-                "from Prestec p where p.persona = :persona order by p.dataPrestec desc", 
-                Prestec.class)
-                .setParameter("persona", persona)
-                .list();
-        } finally {
-            session.close();
-        }
+    /**
+     * Préstec nou i versió de l'exemplar després de prestar-lo. Les versions
+     * es copien als objectes del client després del commit: en mode
+     * escriptor únic una altra operació del lot encara el pot fer fallar.
+     */
+    private record PrestecFet(Prestec prestec, long versioExemplar) {}
+
+    /**
+     * Versions del préstec i de l'exemplar (si estava carregat) després del retorn
+     */
+    private record Versions(long prestec, Long exemplar) {}
+
+    private static long versioActual(Session session, String entitat, String id, long valor) {
+        return session.createQuery(
+            "select e.versio from " + entitat + " e where e." + id + " = :id", Long.class)
+            .setParameter("id", valor)
+            .getSingleResult();
     }
 }
@@ -0,0 +1,505 @@
+package com.project.dao;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Mètriques de les operacions del Manager (veure ArrencadaHibernate.ambMetriques()).
+ *
+ * Per a cada mètode es registra la latència en un histograma HdrHistogram
+ * (p50, p99, p99,9 i màxim en microsegons) i, per crida, les sentències SQL
+ * executades, les entitats carregades i els flushes, que compta
+ * ComptadorSessio a partir dels esdeveniments de les sessions obertes pel
+ * mateix fil. Tot plegat, més les Statistics de Hibernate, es publica per JMX
+ * (com.project:type=Manager,operacio=... i com.project:type=Hibernate) i,
+ * cada cert temps, en una línia per consola amb les operacions de l'interval
+ * que han ocupat més temps.
+ */
+public class MetriquesManager implements AutoCloseable {
+    static final String METRIQUES = "project.metriques";
+    static final String INTERVAL_LOG = "project.metriques.interval_log_segons";
+    static final int INTERVAL_LOG_PER_DEFECTE = 60;
+    private static final String DOMINI_JMX = "com.project";
+    private static final int OPERACIONS_LOG = 8;
+    private static final ThreadLocal<Mesura> ACTUAL = new ThreadLocal<>();
+
+    private final Statistics statistics;
+    private final Map<String, MetricaOperacio> operacions = new ConcurrentHashMap<>();
+    private final List<ObjectName> registrats = new ArrayList<>();
+    private final ScheduledExecutorService planificador;
+
+    MetriquesManager(SessionFactory factory, int intervalLogSegons) {
+        this.statistics = factory.getStatistics();
+        registrar(nomJmx("type=Hibernate"), new EstadistiquesHibernate(statistics));
+        if (intervalLogSegons > 0) {
+            planificador = Executors.newSingleThreadScheduledExecutor(tasca -> {
+                Thread fil = new Thread(tasca, "metriques-manager");
+                fil.setDaemon(true);
+                return fil;
+            });
+            planificador.scheduleAtFixedRate(() -> System.out.println(liniaLog(intervalLogSegons)),
+                intervalLogSegons, intervalLogSegons, TimeUnit.SECONDS);
+        } else {
+            planificador = null;
+        }
+    }
+
+    /**
+     * Executa l'operació i en registra la latència i els comptadors. Les
+     * operacions niades (un mètode del Manager que en crida un altre) sumen
+     * els seus comptadors també a l'operació de fora.
+     */
+    <T> T mesurar(String nom, Supplier<T> operacio) {
+        MetricaOperacio metrica = operacions.computeIfAbsent(nom, this::crear);
+        Mesura pare = ACTUAL.get();
+        Mesura mesura = new Mesura();
+        ACTUAL.set(mesura);
+        boolean correcte = false;
+        long inici = System.nanoTime();
+        try {
+            T resultat = operacio.get();
+            correcte = true;
+            return resultat;
+        } finally {
+            long nanos = System.nanoTime() - inici;
+            ACTUAL.set(pare);
+            if (pare != null) {
+                pare.afegir(mesura);
+            }
+            metrica.registrar(nanos, mesura, correcte);
+        }
+    }
+
+    /**
+     * Comença a mesurar una operació que acaba després de tornar del
+     * Manager (veure OperacioOberta)
+     */
+    OperacioOberta obrir(String nom) {
+        return new OperacioOberta(operacions.computeIfAbsent(nom, this::crear));
+    }
+
+    /**
+     * Mesura de l'operació en curs en aquest fil, o null
+     */
+    static Mesura actual() {
+        return ACTUAL.get();
+    }
+
+    /**
+     * Executa una part d'una operació en un altre fil (l'escriptor únic)
+     * comptant-la a la mesura de l'operació original
+     */
+    static <T> T ambMesura(Mesura mesura, Supplier<T> operacio) {
+        if (mesura == null) {
+            return operacio.get();
+        }
+        Mesura anterior = ACTUAL.get();
+        ACTUAL.set(mesura);
+        try {
+            return operacio.get();
+        } finally {
+            ACTUAL.set(anterior);
+        }
+    }
+
+    /**
+     * Mètriques acumulades de cada operació mesurada des de l'arrencada
+     */
+    public Map<String, MetricaOperacioMXBean> getOperacions() {
+        return Map.copyOf(operacions);
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Resum de l'interval des de la línia anterior: les operacions que han
+     * sumat més temps, amb la latència i les sentències per crida
+     */
+    String liniaLog(int intervalSegons) {
+        List<ResumInterval> resums = new ArrayList<>();
+        for (MetricaOperacio metrica : operacions.values()) {
+            ResumInterval resum = metrica.tancarInterval();
+            if (resum.crides() > 0) {
+                resums.add(resum);
+            }
+        }
+        resums.sort(Comparator.comparingDouble(ResumInterval::tempsTotalMs).reversed());
+        StringBuilder sb = new StringBuilder("Mètriques del Manager (").append(intervalSegons).append(" s):");
+        if (resums.isEmpty()) {
+            sb.append(" cap operació");
+        }
+        for (ResumInterval resum : resums.subList(0, Math.min(OPERACIONS_LOG, resums.size()))) {
+            sb.append(' ').append(resum).append(';');
+        }
+        sb.append(String.format(" Hibernate: consultes=%d, consulta més lenta=%d ms",
+            statistics.getQueryExecutionCount(), statistics.getQueryExecutionMaxTime()));
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        if (planificador != null) {
+            planificador.shutdownNow();
+        }
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registrats) {
+            for (ObjectName nom : registrats) {
+                try {
+                    servidor.unregisterMBean(nom);
+                } catch (JMException e) {
+                    // Ja no hi era
+                }
+            }
+            registrats.clear();
+        }
+    }
+
+    private MetricaOperacio crear(String nom) {
+        MetricaOperacio metrica = new MetricaOperacio(nom);
+        registrar(nomJmx("type=Manager,operacio=" + ObjectName.quote(nom)), metrica);
+        return metrica;
+    }
+
+    private void registrar(ObjectName nom, Object mbean) {
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registrats) {
+            try {
+                // Una SessionFactory anterior no tancada del mateix procés
+                if (servidor.isRegistered(nom)) {
+                    servidor.unregisterMBean(nom);
+                }
+                servidor.registerMBean(mbean, nom);
+                registrats.add(nom);
+            } catch (JMException e) {
+                System.err.println("No s'ha pogut registrar " + nom + " a JMX: " + e);
+            }
+        }
+    }
+
+    private static ObjectName nomJmx(String propietats) {
+        try {
+            return new ObjectName(DOMINI_JMX + ":" + propietats);
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Comptadors d'una crida en curs. Només els modifica el fil que fa
+     * l'operació (o l'escriptor únic mentre aquest fil l'espera).
+     */
+    static final class Mesura {
+        int sentencies;
+        int entitats;
+        int flushes;
+
+        private void afegir(Mesura filla) {
+            sentencies += filla.sentencies;
+            entitats += filla.entitats;
+            flushes += filla.flushes;
+        }
+    }
+
+    /**
+     * Operació que continua després de tornar del Manager, com els Stream,
+     * que el client recorre i tanca més tard. La latència va de l'obertura
+     * fins a tancar() i compten les sentències i entitats de les parts que
+     * s'executen amb executar(); no se sumen a l'operació de fora.
+     */
+    static final class OperacioOberta {
+        // Sense mètriques actives: executa les parts i no registra res
+        static final OperacioOberta SENSE_METRIQUES = new OperacioOberta(null);
+
+        private final MetricaOperacio metrica;
+        private final Mesura mesura = new Mesura();
+        private final long inici = System.nanoTime();
+        private boolean correcte = true;
+        private boolean tancada = false;
+
+        private OperacioOberta(MetricaOperacio metrica) {
+            this.metrica = metrica;
+        }
+
+        <T> T executar(Supplier<T> part) {
+            if (metrica == null) {
+                return part.get();
+            }
+            try {
+                return ambMesura(mesura, part);
+            } catch (RuntimeException | Error e) {
+                correcte = false;
+                throw e;
+            }
+        }
+
+        /**
+         * Registra la crida. Només compta la primera vegada.
+         */
+        void tancar() {
+            if (metrica == null || tancada) {
+                return;
+            }
+            tancada = true;
+            metrica.registrar(System.nanoTime() - inici, mesura, correcte);
+        }
+    }
+
+    /**
+     * Atributs JMX d'una operació del Manager, acumulats des de l'arrencada
+     * o des de l'últim reiniciar(). Les latències són en mil·lisegons.
+     */
+    public interface MetricaOperacioMXBean {
+        long getCrides();
+        long getErrors();
+        double getMitjanaMs();
+        double getP50Ms();
+        double getP99Ms();
+        double getP999Ms();
+        double getMaximMs();
+        double getSentenciesPerCrida();
+        double getEntitatsPerCrida();
+        double getFlushesPerCrida();
+        void reiniciar();
+    }
+
+    /**
+     * Atributs JMX de les Statistics de Hibernate
+     */
+    public interface EstadistiquesHibernateMXBean {
+        long getSessionsObertes();
+        long getTransaccions();
+        long getSentenciesPreparades();
+        long getConsultesExecutades();
+        long getTempsMaximConsultaMs();
+        String getConsultaMesLenta();
+        long getEntitatsCarregades();
+        long getEntitatsObtingudes();
+        long getFlushes();
+        long getEncertsCacheSegonNivell();
+        long getErradesCacheSegonNivell();
+        void reiniciar();
+    }
+
+    private record ResumInterval(String nom, long crides, double tempsTotalMs, double p50Ms, double p99Ms,
+                                 double p999Ms, double sentenciesPerCrida) {
+        @Override
+        public String toString() {
+            return String.format("%s n=%d p50=%.2f p99=%.2f p999=%.2f ms sql/crida=%.1f",
+                nom, crides, p50Ms, p99Ms, p999Ms, sentenciesPerCrida);
+        }
+    }
+
+    private static final class MetricaOperacio implements MetricaOperacioMXBean {
+        // Microsegons, de 1 µs a 1 hora amb tres xifres significatives
+        private static final long MAXIM_MICROS = TimeUnit.HOURS.toMicros(1);
+
+        private final String nom;
+        private final Recorder recorder = new Recorder(1, MAXIM_MICROS, 3);
+        private final Histogram total = new Histogram(1, MAXIM_MICROS, 3);
+        private final Histogram interval = new Histogram(1, MAXIM_MICROS, 3);
+        private Histogram reciclat;
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder sentencies = new LongAdder();
+        private final LongAdder entitats = new LongAdder();
+        private final LongAdder flushes = new LongAdder();
+        private final LongAdder sentenciesInterval = new LongAdder();
+
+        MetricaOperacio(String nom) {
+            this.nom = nom;
+        }
+
+        void registrar(long nanos, Mesura mesura, boolean correcte) {
+            recorder.recordValue(Math.min(Math.max(nanos / 1_000, 1), MAXIM_MICROS));
+            sentencies.add(mesura.sentencies);
+            sentenciesInterval.add(mesura.sentencies);
+            entitats.add(mesura.entitats);
+            flushes.add(mesura.flushes);
+            if (!correcte) {
+                errors.increment();
+            }
+        }
+
+        /**
+         * Passa el que ha enregistrat el Recorder als histogrames acumulats
+         */
+        private synchronized void acumular() {
+            reciclat = recorder.getIntervalHistogram(reciclat);
+            total.add(reciclat);
+            interval.add(reciclat);
+        }
+
+        synchronized ResumInterval tancarInterval() {
+            acumular();
+            long crides = interval.getTotalCount();
+            ResumInterval resum = new ResumInterval(nom, crides,
+                crides * interval.getMean() / 1_000.0,
+                interval.getValueAtPercentile(50) / 1_000.0,
+                interval.getValueAtPercentile(99) / 1_000.0,
+                interval.getValueAtPercentile(99.9) / 1_000.0,
+                crides == 0 ? 0 : sentenciesInterval.sumThenReset() / (double) crides);
+            interval.reset();
+            return resum;
+        }
+
+        private synchronized double percentilMs(double percentil) {
+            acumular();
+            return total.getValueAtPercentile(percentil) / 1_000.0;
+        }
+
+        @Override
+        public synchronized long getCrides() {
+            acumular();
+            return total.getTotalCount();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public synchronized double getMitjanaMs() {
+            acumular();
+            return total.getMean() / 1_000.0;
+        }
+
+        @Override
+        public double getP50Ms() {
+            return percentilMs(50);
+        }
+
+        @Override
+        public double getP99Ms() {
+            return percentilMs(99);
+        }
+
+        @Override
+        public double getP999Ms() {
+            return percentilMs(99.9);
+        }
+
+        @Override
+        public synchronized double getMaximMs() {
+            acumular();
+            return total.getMaxValue() / 1_000.0;
+        }
+
+        @Override
+        public double getSentenciesPerCrida() {
+            return perCrida(sentencies);
+        }
+
+        @Override
+        public double getEntitatsPerCrida() {
+            return perCrida(entitats);
+        }
+
+        @Override
+        public double getFlushesPerCrida() {
+            return perCrida(flushes);
+        }
+
+        @Override
+        public synchronized void reiniciar() {
+            acumular();
+            total.reset();
+            errors.reset();
+            sentencies.reset();
+            entitats.reset();
+            flushes.reset();
+        }
+
+        private double perCrida(LongAdder comptador) {
+            long crides = getCrides();
+            return crides == 0 ? 0 : comptador.sum() / (double) crides;
+        }
+    }
+
+    private static final class EstadistiquesHibernate implements EstadistiquesHibernateMXBean {
+        private final Statistics statistics;
+
+        EstadistiquesHibernate(Statistics statistics) {
+            this.statistics = statistics;
+        }
+
+        @Override
+        public long getSessionsObertes() {
+            return statistics.getSessionOpenCount();
+        }
+
+        @Override
+        public long getTransaccions() {
+            return statistics.getTransactionCount();
+        }
+
+        @Override
+        public long getSentenciesPreparades() {
+            return statistics.getPrepareStatementCount();
+        }
+
+        @Override
+        public long getConsultesExecutades() {
+            return statistics.getQueryExecutionCount();
+        }
+
+        @Override
+        public long getTempsMaximConsultaMs() {
+            return statistics.getQueryExecutionMaxTime();
+        }
+
+        @Override
+        public String getConsultaMesLenta() {
+            return statistics.getQueryExecutionMaxTimeQueryString();
+        }
+
+        @Override
+        public long getEntitatsCarregades() {
+            return statistics.getEntityLoadCount();
+        }
+
+        @Override
+        public long getEntitatsObtingudes() {
+            return statistics.getEntityFetchCount();
+        }
+
+        @Override
+        public long getFlushes() {
+            return statistics.getFlushCount();
+        }
+
+        @Override
+        public long getEncertsCacheSegonNivell() {
+            return statistics.getSecondLevelCacheHitCount();
+        }
+
+        @Override
+        public long getErradesCacheSegonNivell() {
+            return statistics.getSecondLevelCacheMissCount();
+        }
+
+        @Override
+        public void reiniciar() {
+            statistics.clear();
+        }
+    }
+}
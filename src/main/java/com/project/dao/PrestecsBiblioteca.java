@@ -0,0 +1,8 @@
+package com.project.dao;
+
+/**
+ * Préstecs d'una biblioteca en un període, comptats com a PrestecsMes
+ */
+public record PrestecsBiblioteca(long bibliotecaId, String nom, long prestecs, long retorns,
+                                 long retornsAmbRetard, double diesRetardMitja) {
+}
@@ -0,0 +1,12 @@
+package com.project.dao;
+
+import java.time.YearMonth;
+
+/**
+ * Préstecs d'un mes: els que van començar dins del mes, els que es van
+ * retornar dins del mes, quants d'aquests retorns van arribar tard i la
+ * mitjana de dies de retard dels que van arribar tard (0 si cap)
+ */
+public record PrestecsMes(YearMonth mes, long prestecs, long retorns, long retornsAmbRetard,
+                          double diesRetardMitja) {
+}
@@ -0,0 +1,207 @@
+package com.project.dao;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import com.project.domain.*;
+
+/**
+ * Procés nocturn de préstecs retardats: crea una Sancio per a cada préstec
+ * actiu que en la data de referència ja ha passat la data de retorn prevista.
+ *
+ * Els préstecs retardats es reparteixen en particions de prestecId
+ * consecutius (midaParticio préstecs cadascuna) que es desen a
+ * particions_retards abans de començar. Cada partició la processa un fil
+ * d'un pool fix, amb la seva pròpia StatelessSession: llegeix els préstecs
+ * del rang en una sola consulta, calcula els dies de retard amb la data de
+ * referència (no amb LocalDate.now()) i en una sola transacció insereix les
+ * sancions i marca la partició com a completada.
+ *
+ * Si el procés s'atura, tornar-lo a executar amb la mateixa data només
+ * processa les particions pendents. Les que ja s'havien fet no es repeteixen.
+ */
+public class ProcesRetards {
+    public static final BigDecimal QUANTIA_PER_DIA = new BigDecimal("0.20");
+    public static final BigDecimal QUANTIA_MAXIMA = new BigDecimal("20.00");
+    public static final int MIDA_PARTICIO_PER_DEFECTE = 5_000;
+
+    private final SessionFactory factory;
+    private final LocalDate dataReferencia;
+    private final int fils;
+    private final int midaParticio;
+
+    public ProcesRetards(LocalDate dataReferencia) {
+        this(dataReferencia, Runtime.getRuntime().availableProcessors(), MIDA_PARTICIO_PER_DEFECTE);
+    }
+
+    public ProcesRetards(LocalDate dataReferencia, int fils, int midaParticio) {
+        this(Manager.getSessionFactory(), dataReferencia, fils, midaParticio);
+    }
+
+    public ProcesRetards(SessionFactory factory, LocalDate dataReferencia, int fils, int midaParticio) {
+        if (fils <= 0 || midaParticio <= 0) {
+            throw new IllegalArgumentException("El nombre de fils i la mida de la partició han de ser positius");
+        }
+        this.factory = factory;
+        this.dataReferencia = dataReferencia;
+        this.fils = fils;
+        this.midaParticio = midaParticio;
+    }
+
+    /**
+     * Processa totes les particions pendents de la data de referència. Una
+     * partició que falla no atura les altres; queda pendent per a la propera
+     * execució i es compta a 'fallides'.
+     */
+    public ResultatRetards executar() throws InterruptedException {
+        long inici = System.nanoTime();
+        List<ParticioRetards> particions = particions();
+        List<ParticioRetards> pendents = particions.stream().filter(p -> !p.isCompletada()).toList();
+
+        ExecutorService executor = Executors.newFixedThreadPool(fils);
+        List<Future<Integer>> resultats = new ArrayList<>();
+        try {
+            for (ParticioRetards particio : pendents) {
+                resultats.add(executor.submit(() -> Manager.ambReintents(() -> processar(particio))));
+            }
+            int fallides = 0;
+            long sancions = 0;
+            for (Future<Integer> resultat : resultats) {
+                try {
+                    sancions += resultat.get();
+                } catch (ExecutionException e) {
+                    System.err.println("Partició de retards fallida: " + e.getCause());
+                    fallides++;
+                }
+            }
+            return new ResultatRetards(dataReferencia, particions.size(), particions.size() - pendents.size(),
+                pendents.size() - fallides, fallides, sancions, Duration.ofNanos(System.nanoTime() - inici));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Quantia de la sanció: un import fix per dia de retard, amb un màxim
+     */
+    public static BigDecimal quantia(long diesRetard) {
+        return QUANTIA_PER_DIA.multiply(BigDecimal.valueOf(diesRetard)).min(QUANTIA_MAXIMA);
+    }
+
+    /**
+     * Particions de la data de referència. La primera execució les crea
+     * recorrent els identificadors dels préstecs retardats en ordre.
+     */
+    private List<ParticioRetards> particions() {
+        try (StatelessSession session = factory.openStatelessSession()) {
+            List<ParticioRetards> existents = session.createQuery(
+                "from ParticioRetards p where p.dataReferencia = :data order by p.primerPrestecId", ParticioRetards.class)
+                .setParameter("data", dataReferencia)
+                .list();
+            if (!existents.isEmpty()) {
+                return existents;
+            }
+
+            // Primer es llegeixen els límits i després s'escriu: a SQLite una
+            // transacció que llegeix abans d'escriure pot fallar si un altre
+            // procés escriu entremig. S'ordena en memòria perquè amb un
+            // 'order by' SQLite recorre tota la taula per la clau primària en
+            // lloc de fer servir l'índex de préstecs actius.
+            long[] ids = new long[1024];
+            int numIds = 0;
+            try (ScrollableResults<Long> resultats = session.createQuery(
+                    "select p.prestecId from Prestec p where p.actiu = true and p.dataRetornPrevista < :data", Long.class)
+                    .setParameter("data", dataReferencia)
+                    .setFetchSize(midaParticio)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (resultats.next()) {
+                    if (numIds == ids.length) {
+                        ids = Arrays.copyOf(ids, numIds * 2);
+                    }
+                    ids[numIds++] = resultats.get();
+                }
+            }
+            Arrays.sort(ids, 0, numIds);
+            List<ParticioRetards> noves = new ArrayList<>();
+            for (int primer = 0; primer < numIds; primer += midaParticio) {
+                int seguent = primer + midaParticio;
+                // Els rangs són contigus: una partició acaba just abans del primer préstec de la següent
+                long darrer = seguent < numIds ? ids[seguent] - 1 : ids[numIds - 1];
+                noves.add(new ParticioRetards(dataReferencia, ids[primer], darrer));
+            }
+
+            Transaction tx = session.beginTransaction();
+            try {
+                for (ParticioRetards particio : noves) {
+                    session.insert(particio);
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                throw e;
+            }
+            return noves;
+        }
+    }
+
+    /**
+     * Crea les sancions d'una partició i la marca com a completada. Retorna
+     * el nombre de sancions creades.
+     */
+    private int processar(ParticioRetards particio) {
+        try (StatelessSession session = factory.openStatelessSession()) {
+            List<Object[]> retards = session.createQuery(
+                "select p.prestecId, p.persona.personaId, p.dataRetornPrevista from Prestec p " +
+                "where p.prestecId between :primer and :darrer " +
+                "and p.actiu = true and p.dataRetornPrevista < :data", Object[].class)
+                .setParameter("primer", particio.getPrimerPrestecId())
+                .setParameter("darrer", particio.getDarrerPrestecId())
+                .setParameter("data", dataReferencia)
+                .list();
+
+            session.setJdbcBatchSize(CarregadorMassiu.MIDA_LOT_PER_DEFECTE);
+            Transaction tx = session.beginTransaction();
+            try {
+                // Si una altra execució ja l'ha completada no es torna a fer
+                int marcades = session.createMutationQuery(
+                    "update ParticioRetards p set p.completada = true, p.sancions = :sancions " +
+                    "where p.particioId = :id and p.completada = false")
+                    .setParameter("sancions", retards.size())
+                    .setParameter("id", particio.getParticioId())
+                    .executeUpdate();
+                if (marcades == 0) {
+                    tx.rollback();
+                    return 0;
+                }
+                for (Object[] retard : retards) {
+                    Prestec prestec = new Prestec();
+                    prestec.setPrestecId((Long) retard[0]);
+                    Persona persona = new Persona();
+                    persona.setPersonaId((Long) retard[1]);
+                    long diesRetard = ChronoUnit.DAYS.between((LocalDate) retard[2], dataReferencia);
+                    session.insert(new Sancio(prestec, persona, dataReferencia, diesRetard, quantia(diesRetard)));
+                }
+                tx.commit();
+                return retards.size();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                throw e;
+            }
+        }
+    }
+}
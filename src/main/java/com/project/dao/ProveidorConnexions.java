@@ -0,0 +1,231 @@
+package com.project.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Pool de connexions HikariCP per a Hibernate.
+ *
+ * Llegeix les propietats hibernate.connection.* habituals i qualsevol propietat
+ * de HikariCP amb el prefix 'hibernate.hikari.' (maximumPoolSize, minimumIdle,
+ * connectionTimeout, dataSource.*...). Segons la URL aplica també:
+ *
+ * SQLite: pragmes per connexió 'project.sqlite.*' (journal_mode, synchronous,
+ *         busy_timeout, shared_cache), passats al driver en obrir cada connexió.
+ *         Amb hibernate.hikari.readOnly=true les connexions s'obren en mode
+ *         read-only (open_mode=1), perquè el driver no admet canviar-ho després.
+ * MySQL:  cache de sentències preparades, reescriptura dels lots d'insercions i
+ *         cursors al servidor per a les consultes amb fetchSize (els streams del
+ *         Manager), perquè el driver no porti tot el resultat a memòria.
+ */
+public class ProveidorConnexions implements ConnectionProvider, Configurable, Stoppable {
+    private static final String PREFIX_HIKARI = "hibernate.hikari.";
+    private static final String PREFIX_SQLITE = "project.sqlite.";
+
+    private HikariDataSource dataSource;
+    private boolean sqlite;
+    private final Metriques metriques = new Metriques();
+
+    @Override
+    public void configure(Map<String, Object> configurationValues) {
+        Properties propietatsHikari = new Properties();
+        configurationValues.forEach((clau, valor) -> {
+            if (clau.startsWith(PREFIX_HIKARI) && valor != null) {
+                propietatsHikari.put(clau.substring(PREFIX_HIKARI.length()), valor.toString());
+            }
+        });
+        HikariConfig config = new HikariConfig(propietatsHikari);
+
+        String url = (String) configurationValues.get("hibernate.connection.url");
+        if (url == null) {
+            throw new HibernateException("Cal indicar hibernate.connection.url");
+        }
+        config.setJdbcUrl(url);
+        copiar(configurationValues, "hibernate.connection.driver_class", config::setDriverClassName);
+        copiar(configurationValues, "hibernate.connection.username", config::setUsername);
+        copiar(configurationValues, "hibernate.connection.password", config::setPassword);
+        if (config.getPoolName() == null) {
+            config.setPoolName("pool-project");
+        }
+
+        sqlite = url.startsWith("jdbc:sqlite:");
+        if (sqlite) {
+            configurarSQLite(config, configurationValues);
+        } else if (url.startsWith("jdbc:mysql:")) {
+            configurarMySQL(config);
+        }
+
+        config.setMetricsTrackerFactory(metriques);
+        dataSource = new HikariDataSource(config);
+    }
+
+    /**
+     * Valors pensats per a diversos lectors i un sol escriptor sobre un fitxer local
+     */
+    private static void configurarSQLite(HikariConfig config, Map<String, Object> configurationValues) {
+        Properties pragmes = new Properties();
+        pragmes.put("journal_mode", "WAL");
+        pragmes.put("synchronous", "NORMAL");
+        pragmes.put("busy_timeout", "5000");
+        configurationValues.forEach((clau, valor) -> {
+            if (clau.startsWith(PREFIX_SQLITE) && valor != null) {
+                pragmes.put(clau.substring(PREFIX_SQLITE.length()), valor.toString());
+            }
+        });
+        if (config.isReadOnly()) {
+            // SQLITE_OPEN_READONLY; setReadOnly(true) de Hikari llavors no canvia res
+            pragmes.put("open_mode", "1");
+        }
+        pragmes.forEach((pragma, valor) -> {
+            if (!config.getDataSourceProperties().containsKey(pragma)) {
+                config.addDataSourceProperty((String) pragma, valor);
+            }
+        });
+        if (!configurationValues.containsKey(PREFIX_HIKARI + "maximumPoolSize")) {
+            config.setMaximumPoolSize(8);
+        }
+    }
+
+    private static void configurarMySQL(HikariConfig config) {
+        Properties valors = new Properties();
+        valors.put("cachePrepStmts", "true");
+        valors.put("prepStmtCacheSize", "250");
+        valors.put("prepStmtCacheSqlLimit", "2048");
+        valors.put("useServerPrepStmts", "true");
+        valors.put("rewriteBatchedStatements", "true");
+        valors.put("useCursorFetch", "true");
+        valors.put("useLocalSessionState", "true");
+        valors.put("cacheResultSetMetadata", "true");
+        valors.put("elideSetAutoCommits", "true");
+        valors.put("maintainTimeStats", "false");
+        valors.forEach((clau, valor) -> {
+            if (!config.getDataSourceProperties().containsKey(clau)) {
+                config.addDataSourceProperty((String) clau, valor);
+            }
+        });
+    }
+
+    private static void copiar(Map<String, Object> configurationValues, String clau,
+                               Consumer<String> setter) {
+        Object valor = configurationValues.get(clau);
+        if (valor != null) {
+            setter.accept(valor.toString());
+        }
+    }
+
+    public EstadistiquesPool getEstadistiques() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        long adquisicions = metriques.adquisicions.sum();
+        double esperaMitjanaMs = adquisicions == 0 ? 0
+            : metriques.tempsEsperaNanos.sum() / 1_000_000.0 / adquisicions;
+        return new EstadistiquesPool(
+            pool.getActiveConnections(),
+            pool.getIdleConnections(),
+            pool.getTotalConnections(),
+            pool.getThreadsAwaitingConnection(),
+            adquisicions,
+            esperaMitjanaMs,
+            metriques.esperaMaximaNanos.get() / 1_000_000.0,
+            metriques.timeouts.get());
+    }
+
+    /**
+     * Nombre màxim de connexions obertes alhora
+     */
+    public int getMidaMaxima() {
+        return dataSource.getMaximumPoolSize();
+    }
+
+    /**
+     * SQLite admet diversos lectors però un sol escriptor alhora
+     */
+    public boolean isSQLite() {
+        return sqlite;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return unwrapType.isAssignableFrom(ProveidorConnexions.class)
+            || unwrapType.isAssignableFrom(HikariDataSource.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (unwrapType.isAssignableFrom(ProveidorConnexions.class)) {
+            return (T) this;
+        }
+        if (unwrapType.isAssignableFrom(HikariDataSource.class)) {
+            return (T) dataSource;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    @Override
+    public void stop() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Temps d'espera per obtenir connexió, acumulat des de l'arrencada del pool
+     */
+    private static class Metriques implements MetricsTrackerFactory, IMetricsTracker {
+        private final LongAdder adquisicions = new LongAdder();
+        private final LongAdder tempsEsperaNanos = new LongAdder();
+        private final LongAccumulator esperaMaximaNanos = new LongAccumulator(Long::max, 0);
+        private final AtomicLong timeouts = new AtomicLong();
+
+        @Override
+        public IMetricsTracker create(String poolName, PoolStats poolStats) {
+            return this;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            adquisicions.increment();
+            tempsEsperaNanos.add(elapsedAcquiredNanos);
+            esperaMaximaNanos.accumulate(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.project.dao;
+
+import java.time.Duration;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+/**
+ * Reconstrueix en bloc els comptadors de disponibilitat dels llibres i de
+ * préstecs actius de les persones a partir d'exemplars i prestecs.
+ *
+ * Cal executar-la després d'una càrrega amb StatelessSession que no els
+ * hagi mantingut (GeneradorDades ho fa en acabar) i es pot programar de nit
+ * per detectar desviacions: abans de reconstruir compta les files que
+ * faltaven o no coincidien, que en funcionament normal han de ser zero.
+ *
+ * Tot es fa en una sola transacció amb un INSERT ... SELECT ... GROUP BY
+ * per taula, de manera que les lectures concurrents veuen els comptadors
+ * antics o els nous, mai una taula a mig fer.
+ */
+public class ReconciliacioComptadors {
+    private static final String DISPONIBILITAT_ESPERADA =
+        ComptadorsDisponibilitat.DISPONIBILITAT_ESPERADA + ComptadorsDisponibilitat.AGRUPAR_DISPONIBILITAT;
+    private static final String PRESTECS_ACTIUS_ESPERATS =
+        ComptadorsDisponibilitat.PRESTECS_ACTIUS_ESPERATS + ComptadorsDisponibilitat.AGRUPAR_PRESTECS_ACTIUS;
+
+    private final SessionFactory factory;
+
+    public ReconciliacioComptadors() {
+        this(Manager.getSessionFactory());
+    }
+
+    public ReconciliacioComptadors(SessionFactory factory) {
+        this.factory = factory;
+    }
+
+    public ResultatReconciliacio executar() {
+        long inici = System.nanoTime();
+        return Manager.ambReintents(() -> {
+            try (StatelessSession sessio = factory.openStatelessSession()) {
+                Transaction tx = sessio.beginTransaction();
+                try {
+                    long disponibilitatCorregides = diferencies(sessio, DISPONIBILITAT_ESPERADA,
+                        "select d.llibreId, d.bibliotecaId, d.totalExemplars, d.exemplarsDisponibles " +
+                        "from DisponibilitatLlibre d");
+                    long personesCorregides = diferencies(sessio, PRESTECS_ACTIUS_ESPERATS,
+                        "select p.personaId, p.actius from PrestecsPersona p");
+
+                    sessio.createMutationQuery("delete from DisponibilitatLlibre").executeUpdate();
+                    long filesDisponibilitat = sessio.createMutationQuery(
+                        ComptadorsDisponibilitat.INSERIR_DISPONIBILITAT + DISPONIBILITAT_ESPERADA).executeUpdate();
+                    sessio.createMutationQuery("delete from PrestecsPersona").executeUpdate();
+                    long filesPersones = sessio.createMutationQuery(
+                        ComptadorsDisponibilitat.INSERIR_PRESTECS_PERSONA + PRESTECS_ACTIUS_ESPERATS).executeUpdate();
+                    tx.commit();
+                    return new ResultatReconciliacio(filesDisponibilitat, disponibilitatCorregides,
+                        filesPersones, personesCorregides, Duration.ofNanos(System.nanoTime() - inici));
+                } catch (RuntimeException e) {
+                    if (tx.isActive()) tx.rollback();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Files esperades que no hi són amb els mateixos valors
+     */
+    private static long diferencies(StatelessSession sessio, String esperats, String actuals) {
+        return sessio.createQuery("select count(*) from (" + esperats + " except " + actuals + ")", Long.class)
+            .getSingleResult();
+    }
+}
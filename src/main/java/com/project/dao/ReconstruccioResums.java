@@ -0,0 +1,251 @@
+package com.project.dao;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import com.project.domain.*;
+
+/**
+ * Construeix els resums diaris de préstecs (ResumDiariBiblioteca i
+ * ResumDiariLlibre) a partir de l'historial de préstecs.
+ *
+ * El període es divideix en trossos de diesPerTros dies consecutius i cada
+ * tros el processa un fil d'un pool fix amb la seva pròpia StatelessSession:
+ * primer compta els préstecs i els retorns del tros agrupant per dia, llibre
+ * i biblioteca, i els préstecs en retard de cada dia tancat (des de l'endemà
+ * de la data prevista fins al dia abans del retorn), i després, en una sola
+ * transacció curta, esborra els resums d'aquells dies i insereix els nous.
+ * Les lectures es fan fora de la transacció perquè a SQLite una transacció
+ * que llegeix abans d'escriure pot fallar si un altre fil escriu entremig.
+ *
+ * Cal executar-la després d'una càrrega amb StatelessSession (GeneradorDades
+ * ho fa en acabar) o de corregir préstecs antics. Per defecte arriba fins a
+ * ahir: els préstecs que es fan mentre es reconstrueix un dia es perdrien
+ * en substituir-ne el resum, i els del dia en curs ja els manté el Manager.
+ * Tornar-la a executar sobre els mateixos dies dona el mateix resultat.
+ *
+ * El Manager només manté els préstecs en retard dels dies ja tancats: el
+ * dia que es tanca a mitjanit no els té fins que tancarAhir el calcula.
+ * S'ha d'executar cada nit, com fa ProcesRetardsNocturn.
+ */
+public class ReconstruccioResums {
+    public static final int DIES_PER_TROS_PER_DEFECTE = 31;
+
+    private static final String PRESTECS =
+        "select p.dataPrestec, e.llibre.llibreId, e.biblioteca.bibliotecaId, count(*) " +
+        "from Prestec p join p.exemplar e where p.dataPrestec >= :inici and p.dataPrestec < :fi " +
+        "group by p.dataPrestec, e.llibre.llibreId, e.biblioteca.bibliotecaId";
+    private static final String RETORNS =
+        "select p.dataRetornReal, e.llibre.llibreId, e.biblioteca.bibliotecaId, count(*), " +
+        "sum(case when p.dataRetornReal > p.dataRetornPrevista then 1 else 0 end), " +
+        "sum(case when p.dataRetornReal > p.dataRetornPrevista then %s else 0 end) " +
+        "from Prestec p join p.exemplar e where p.dataRetornReal >= :inici and p.dataRetornReal < :fi " +
+        "group by p.dataRetornReal, e.llibre.llibreId, e.biblioteca.bibliotecaId";
+    // Préstecs en retard algun dia de [inici, ultim]: els actius i els
+    // retornats després d'inici. Un retorn no pot passar de la data prevista
+    // més que el retard màxim de l'historial, així que els retornats es
+    // busquen en un interval tancat de dataRetornReal.
+    private static final String EN_RETARD =
+        "select p.dataPrestec, p.dataRetornPrevista, p.dataRetornReal, e.llibre.llibreId, e.biblioteca.bibliotecaId, " +
+        "count(*) from Prestec p join p.exemplar e where %s and p.dataRetornPrevista < :ultim " +
+        "and p.dataPrestec <= :ultim " +
+        "group by p.dataPrestec, p.dataRetornPrevista, p.dataRetornReal, e.llibre.llibreId, e.biblioteca.bibliotecaId";
+    private static final String EN_RETARD_ACTIUS = String.format(EN_RETARD, "p.dataRetornReal is null");
+    private static final String EN_RETARD_RETORNATS =
+        String.format(EN_RETARD, "p.dataRetornReal > :inici and p.dataRetornReal <= :limitRetorn");
+
+    private final SessionFactory factory;
+    private final int fils;
+    private final int diesPerTros;
+    private final String retorns;
+    private final String retardMaxim;
+
+    /**
+     * Dia i biblioteca o llibre d'una fila de resum
+     */
+    private record Clau(LocalDate dia, long id) {}
+
+    public ReconstruccioResums() {
+        this(Runtime.getRuntime().availableProcessors(), DIES_PER_TROS_PER_DEFECTE);
+    }
+
+    public ReconstruccioResums(int fils, int diesPerTros) {
+        this(Manager.getSessionFactory(), fils, diesPerTros);
+    }
+
+    public ReconstruccioResums(SessionFactory factory, int fils, int diesPerTros) {
+        if (fils <= 0 || diesPerTros <= 0) {
+            throw new IllegalArgumentException("El nombre de fils i els dies per tros han de ser positius");
+        }
+        this.factory = factory;
+        this.fils = fils;
+        this.diesPerTros = diesPerTros;
+        this.retorns = String.format(RETORNS, InformesPrestecs.diesRetard(factory));
+        this.retardMaxim = "select max(" + InformesPrestecs.diesRetard(factory) + ") from Prestec p " +
+            "where p.dataRetornReal > p.dataRetornPrevista";
+    }
+
+    /**
+     * Tot l'historial, des del primer préstec fins a ahir
+     */
+    public ResultatResums executar() throws InterruptedException {
+        LocalDate ahir = LocalDate.now().minusDays(1);
+        LocalDate primer;
+        try (StatelessSession session = factory.openStatelessSession()) {
+            primer = session.createQuery("select min(p.dataPrestec) from Prestec p", LocalDate.class)
+                .getSingleResult();
+        }
+        return executar(primer != null ? primer : ahir, ahir);
+    }
+
+    /**
+     * El dia que s'acaba de tancar, amb els seus préstecs en retard. Cal
+     * executar-ho cada nit després de mitjanit.
+     */
+    public ResultatResums tancarAhir() throws InterruptedException {
+        LocalDate ahir = LocalDate.now().minusDays(1);
+        return executar(ahir, ahir);
+    }
+
+    /**
+     * Els dies de desDe a finsA inclosos. Un tros que falla no atura els
+     * altres; els seus dies es queden com estaven i es compta a 'fallits'.
+     */
+    public ResultatResums executar(LocalDate desDe, LocalDate finsA) throws InterruptedException {
+        long inici = System.nanoTime();
+        long diesRetardMaxim;
+        try (StatelessSession session = factory.openStatelessSession()) {
+            Number maxim = session.createQuery(retardMaxim, Number.class).getSingleResult();
+            diesRetardMaxim = maxim != null ? maxim.longValue() : 0;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(fils);
+        List<Future<long[]>> resultats = new ArrayList<>();
+        try {
+            for (LocalDate tros = desDe; !tros.isAfter(finsA); tros = tros.plusDays(diesPerTros)) {
+                LocalDate primer = tros;
+                LocalDate seguent = min(tros.plusDays(diesPerTros), finsA.plusDays(1));
+                resultats.add(executor.submit(() -> processar(primer, seguent, diesRetardMaxim)));
+            }
+            int fallits = 0;
+            long filesBiblioteques = 0;
+            long filesLlibres = 0;
+            for (Future<long[]> resultat : resultats) {
+                try {
+                    long[] files = resultat.get();
+                    filesBiblioteques += files[0];
+                    filesLlibres += files[1];
+                } catch (ExecutionException e) {
+                    System.err.println("Tros de resums diaris fallit: " + e.getCause());
+                    fallits++;
+                }
+            }
+            return new ResultatResums(desDe, finsA, resultats.size(), fallits, filesBiblioteques, filesLlibres,
+                Duration.ofNanos(System.nanoTime() - inici));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Torna a calcular els resums dels dies de l'interval [primer, seguent).
+     * Els préstecs en retard només es compten fins a ahir. Retorna les files
+     * escrites de biblioteques i de llibres.
+     */
+    private long[] processar(LocalDate primer, LocalDate seguent, long diesRetardMaxim) {
+        Map<Clau, long[]> perBiblioteca = new HashMap<>();
+        Map<Clau, long[]> perLlibre = new HashMap<>();
+        try (StatelessSession session = factory.openStatelessSession()) {
+            for (Object[] fila : session.createQuery(PRESTECS, Object[].class)
+                    .setParameter("inici", primer)
+                    .setParameter("fi", seguent)
+                    .list()) {
+                long prestecs = (Long) fila[3];
+                afegir(perLlibre, new Clau((LocalDate) fila[0], (Long) fila[1]), prestecs, 0, 0, 0);
+                afegir(perBiblioteca, new Clau((LocalDate) fila[0], (Long) fila[2]), prestecs, 0, 0, 0);
+            }
+            for (Object[] fila : session.createQuery(retorns, Object[].class)
+                    .setParameter("inici", primer)
+                    .setParameter("fi", seguent)
+                    .list()) {
+                long retorns = (Long) fila[3];
+                long ambRetard = ((Number) fila[4]).longValue();
+                long diesRetard = ((Number) fila[5]).longValue();
+                afegir(perLlibre, new Clau((LocalDate) fila[0], (Long) fila[1]), 0, retorns, ambRetard, diesRetard);
+                afegir(perBiblioteca, new Clau((LocalDate) fila[0], (Long) fila[2]), 0, retorns, ambRetard, diesRetard);
+            }
+            LocalDate ultim = min(seguent.minusDays(1), LocalDate.now().minusDays(1));
+            if (!ultim.isBefore(primer)) {
+                List<Object[]> enRetard = new ArrayList<>(session.createQuery(EN_RETARD_ACTIUS, Object[].class)
+                    .setParameter("ultim", ultim)
+                    .list());
+                enRetard.addAll(session.createQuery(EN_RETARD_RETORNATS, Object[].class)
+                    .setParameter("ultim", ultim)
+                    .setParameter("inici", primer)
+                    .setParameter("limitRetorn", ultim.plusDays(diesRetardMaxim))
+                    .list());
+                for (Object[] fila : enRetard) {
+                    // De l'endemà de la data prevista (i no abans del préstec) al dia abans del retorn
+                    LocalDate desDe = max(primer, max(((LocalDate) fila[1]).plusDays(1), (LocalDate) fila[0]));
+                    LocalDate finsA = fila[2] != null ? min(ultim, ((LocalDate) fila[2]).minusDays(1)) : ultim;
+                    long n = (Long) fila[5];
+                    for (LocalDate dia = desDe; !dia.isAfter(finsA); dia = dia.plusDays(1)) {
+                        perLlibre.computeIfAbsent(new Clau(dia, (Long) fila[3]), c -> new long[5])[4] += n;
+                        perBiblioteca.computeIfAbsent(new Clau(dia, (Long) fila[4]), c -> new long[5])[4] += n;
+                    }
+                }
+            }
+        }
+
+        return Manager.ambReintents(() -> {
+            try (StatelessSession session = factory.openStatelessSession()) {
+                Transaction tx = session.beginTransaction();
+                try {
+                    for (String entitat : List.of("ResumDiariBiblioteca", "ResumDiariLlibre")) {
+                        session.createMutationQuery("delete from " + entitat + " r where r.dia >= :inici and r.dia < :fi")
+                            .setParameter("inici", primer)
+                            .setParameter("fi", seguent)
+                            .executeUpdate();
+                    }
+                    perBiblioteca.forEach((clau, c) ->
+                        session.insert(new ResumDiariBiblioteca(clau.dia(), clau.id(), c[0], c[1], c[2], c[3], c[4])));
+                    perLlibre.forEach((clau, c) ->
+                        session.insert(new ResumDiariLlibre(clau.dia(), clau.id(), c[0], c[1], c[2], c[3], c[4])));
+                    tx.commit();
+                    return new long[] {perBiblioteca.size(), perLlibre.size()};
+                } catch (RuntimeException e) {
+                    if (tx.isActive()) tx.rollback();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private static void afegir(Map<Clau, long[]> resums, Clau clau, long prestecs, long retorns, long ambRetard,
+                               long diesRetard) {
+        long[] comptadors = resums.computeIfAbsent(clau, c -> new long[5]);
+        comptadors[0] += prestecs;
+        comptadors[1] += retorns;
+        comptadors[2] += ambRetard;
+        comptadors[3] += diesRetard;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
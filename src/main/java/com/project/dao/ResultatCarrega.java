@@ -0,0 +1,20 @@
+package com.project.dao;
+
+import java.time.Duration;
+
+/**
+ * Resum d'una càrrega massiva: files llegides, inserides, rebutjades i temps total
+ */
+public record ResultatCarrega(String entitat, long llegides, long inserides, long rebutjades, Duration durada) {
+
+    public double filesPerSegon() {
+        double segons = durada.toNanos() / 1_000_000_000.0;
+        return segons > 0 ? inserides / segons : inserides;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d inserides de %d (%d rebutjades) en %d ms -> %.0f files/s",
+            entitat, inserides, llegides, rebutjades, durada.toMillis(), filesPerSegon());
+    }
+}
@@ -0,0 +1,25 @@
+package com.project.dao;
+
+/**
+ * Resultat d'un exemplar dins d'un préstec o retorn en lot. prestecId és el
+ * préstec creat o retornat, o 0 si no s'ha fet res.
+ */
+public record ResultatExemplar(String codiBarres, Estat estat, long prestecId) {
+
+    public enum Estat {
+        PRESTAT,
+        RETORNAT,
+        /** No hi ha cap exemplar amb aquest codi de barres */
+        NO_EXISTEIX,
+        /** Préstec: l'exemplar ja està prestat */
+        NO_DISPONIBLE,
+        /** Retorn: l'exemplar no té cap préstec actiu */
+        SENSE_PRESTEC,
+        /** El codi ja apareixia abans a la mateixa llista */
+        DUPLICAT
+    }
+
+    public boolean correcte() {
+        return estat == Estat.PRESTAT || estat == Estat.RETORNAT;
+    }
+}
@@ -0,0 +1,22 @@
+package com.project.dao;
+
+import java.time.Duration;
+
+/**
+ * Resum d'una reconciliació dels comptadors: files reconstruïdes de cada
+ * taula i quantes faltaven o tenien un valor diferent abans de reconstruir-les
+ */
+public record ResultatReconciliacio(long filesDisponibilitat, long disponibilitatCorregides,
+                                    long filesPersones, long personesCorregides, Duration durada) {
+
+    public boolean senseDiferencies() {
+        return disponibilitatCorregides == 0 && personesCorregides == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Comptadors: %d files de disponibilitat (%d corregides), "
+            + "%d persones amb préstecs actius (%d corregides) en %d ms", filesDisponibilitat,
+            disponibilitatCorregides, filesPersones, personesCorregides, durada.toMillis());
+    }
+}
@@ -0,0 +1,24 @@
+package com.project.dao;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+/**
+ * Resum d'una reconstrucció dels resums diaris: període, trossos de dies
+ * processats, els que han fallat (els seus dies es queden com estaven) i
+ * files escrites a cada taula
+ */
+public record ResultatResums(LocalDate desDe, LocalDate finsA, int trossos, int fallits,
+                             long filesBiblioteques, long filesLlibres, Duration durada) {
+
+    public boolean complet() {
+        return fallits == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Resums diaris de %s a %s: %d trossos (%d fallits), %d files de biblioteques "
+            + "i %d de llibres en %d ms", desDe, finsA, trossos, fallits, filesBiblioteques, filesLlibres,
+            durada.toMillis());
+    }
+}
@@ -0,0 +1,24 @@
+package com.project.dao;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+/**
+ * Resum d'una execució del procés de retards: particions totals, les que ja
+ * estaven fetes d'una execució anterior, les processades ara, les que han
+ * fallat (es tornaran a fer a la propera execució) i sancions creades
+ */
+public record ResultatRetards(LocalDate dataReferencia, int particions, int jaCompletades, int processades,
+                              int fallides, long sancions, Duration durada) {
+
+    public boolean complet() {
+        return jaCompletades + processades == particions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Retards a %s: %d particions (%d ja fetes, %d processades, %d fallides), "
+            + "%d sancions en %d ms", dataReferencia, particions, jaCompletades, processades, fallides,
+            sancions, durada.toMillis());
+    }
+}
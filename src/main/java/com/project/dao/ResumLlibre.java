@@ -0,0 +1,7 @@
+package com.project.dao;
+
+/**
+ * Fila d'una llista de llibres, sense autors ni exemplars
+ */
+public record ResumLlibre(long llibreId, String isbn, String titol, String editorial, Integer anyPublicacio) {
+}
@@ -0,0 +1,7 @@
+package com.project.dao;
+
+/**
+ * Fila d'una llista de persones, sense l'historial de préstecs
+ */
+public record ResumPersona(long personaId, String dni, String nom, String telefon, String email) {
+}
@@ -0,0 +1,14 @@
+package com.project.dao;
+
+import java.time.LocalDate;
+
+/**
+ * Fila d'una llista de préstecs: només les columnes que es mostren
+ */
+public record ResumPrestec(long prestecId, String codiBarres, String titol, String personaNom,
+                           LocalDate dataPrestec, LocalDate dataRetornPrevista) {
+
+    public boolean estaRetardat(LocalDate avui) {
+        return avui.isAfter(dataRetornPrevista);
+    }
+}
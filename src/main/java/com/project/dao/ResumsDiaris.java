@@ -0,0 +1,322 @@
+package com.project.dao;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.hibernate.SharedSessionContract;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * Manteniment dels resums diaris de préstecs (ResumDiariBiblioteca i
+ * ResumDiariLlibre).
+ *
+ * Els préstecs i retorns del Manager sumen a la fila del dia de la
+ * biblioteca i a la del llibre de l'exemplar amb un UPDATE a la mateixa
+ * transacció: un préstec compta el dia que comença i un retorn el dia que
+ * es retorna, igual que a InformesPrestecs. Si la fila encara no existeix,
+ * es calcula comptant els préstecs d'aquell dia, que ja inclouen el de la
+ * transacció.
+ *
+ * Els préstecs en retard d'un dia només es guarden per als dies tancats
+ * (fins a ahir): un préstec hi compta des de l'endemà de la data prevista
+ * fins al dia abans del retorn. Un préstec o un retorn amb dates passades
+ * els corregeix per a tots aquests dies amb un UPDATE per tram, i les
+ * files que hi falten es creen (un dia sense fila no tenia cap activitat).
+ * Cada nit ReconstruccioResums.tancarAhir calcula el dia que s'acaba de
+ * tancar.
+ *
+ * Les altres maneres de modificar préstecs (StatelessSession, esborrats o
+ * canvis de dates amb update) no hi passen: cal tornar a construir els dies
+ * afectats amb ReconstruccioResums.
+ */
+final class ResumsDiaris {
+    private static final String SUMAR =
+        "update %s r set r.prestecs = r.prestecs + :prestecs, r.retorns = r.retorns + :retorns, " +
+        "r.retornsAmbRetard = r.retornsAmbRetard + :ambRetard, r.diesRetard = r.diesRetard + :diesRetard, " +
+        "r.prestecsEnRetard = r.prestecsEnRetard + :enRetard where r.dia = :dia and r.%s = :id";
+    private static final String SUMAR_EN_RETARD =
+        "update %s r set r.prestecsEnRetard = r.prestecsEnRetard + :enRetard " +
+        "where r.%s = :id and r.dia between :desDe and :finsA";
+    private static final String DIES =
+        "select r.dia from %s r where r.%s = :id and r.dia between :desDe and :finsA";
+    private static final String ESBORRAR_BUIDES =
+        "delete from %s r where r.%s = :id and r.dia between :desDe and :finsA " +
+        "and r.prestecs = 0 and r.retorns = 0 and r.prestecsEnRetard = 0";
+    private static final String INSERIR =
+        "insert into %s (dia, %s, prestecs, retorns, retornsAmbRetard, diesRetard, prestecsEnRetard) " +
+        "values (:dia, :id, :prestecs, :retorns, :ambRetard, :diesRetard, :enRetard)";
+    private static final String PRESTECS =
+        "select count(*) from Prestec p join p.exemplar e where p.dataPrestec = :dia and e.%s = :id";
+    // Els dies de retard depenen del dialecte (veure InformesPrestecs.diesRetard)
+    private static final String RETORNS =
+        "select count(*), sum(case when p.dataRetornReal > p.dataRetornPrevista then 1 else 0 end), " +
+        "sum(case when p.dataRetornReal > p.dataRetornPrevista then %s else 0 end) " +
+        "from Prestec p join p.exemplar e where p.dataRetornReal = :dia and e.%s = :id";
+    private static final String EN_RETARD =
+        "select count(*) from Prestec p join p.exemplar e where p.dataPrestec <= :dia " +
+        "and p.dataRetornPrevista < :dia and (p.dataRetornReal is null or p.dataRetornReal > :dia) and e.%s = :id";
+
+    private ResumsDiaris() {}
+
+    /**
+     * Suma n préstecs començats el dia, amb la data de retorn prevista, a la
+     * biblioteca i al llibre
+     */
+    static void afegirPrestecs(SharedSessionContract session, LocalDate dia, LocalDate prevista, long llibreId,
+                               long bibliotecaId, long n) {
+        afegirPrestecs(session, dia, prevista, Map.of(List.of(llibreId, bibliotecaId), n));
+    }
+
+    /**
+     * Suma els préstecs començats el dia, tots amb la mateixa data de
+     * retorn prevista, de cada llibre i biblioteca (List.of(llibreId,
+     * bibliotecaId)). Primer s'agrupen per fila de resum: una fila que es
+     * recalcula ja compta tots els préstecs de la transacció i no s'hi ha de
+     * tornar a sumar.
+     */
+    static void afegirPrestecs(SharedSessionContract session, LocalDate dia, LocalDate prevista,
+                               Map<List<Long>, Long> perLlibre) {
+        Canvis canvis = new Canvis(dia);
+        perLlibre.forEach((clau, n) -> canvis.prestecs(clau, prevista, n));
+        canvis.aplicar(session);
+    }
+
+    /**
+     * Suma el retorn fet el dia d'un préstec amb la data de retorn prevista
+     * a la biblioteca i al llibre
+     */
+    static void afegirRetorn(SharedSessionContract session, LocalDate dia, LocalDate prevista, long llibreId,
+                             long bibliotecaId) {
+        afegirRetorns(session, dia, Map.of(List.of(llibreId, bibliotecaId), Map.of(prevista, 1L)));
+    }
+
+    /**
+     * Suma els retorns fets el dia de cada llibre i biblioteca, comptats per
+     * data de retorn prevista, agrupats com a afegirPrestecs
+     */
+    static void afegirRetorns(SharedSessionContract session, LocalDate dia,
+                              Map<List<Long>, Map<LocalDate, Long>> perLlibre) {
+        Canvis canvis = new Canvis(dia);
+        perLlibre.forEach((clau, perPrevista) -> perPrevista.forEach((prevista, n) ->
+            canvis.retorns(clau, prevista, n)));
+        canvis.aplicar(session);
+    }
+
+    /**
+     * Canvis d'una operació del Manager: els comptadors de la fila del dia i
+     * les variacions dels préstecs en retard a partir de cada data, per
+     * taula i identificador. Els trams es divideixen on canvia la variació
+     * perquè cada fila es toqui una sola vegada.
+     */
+    private static final class Canvis {
+        private final LocalDate dia;
+        private final LocalDate ahir = LocalDate.now().minusDays(1);
+        // prestecs, retorns, retornsAmbRetard, diesRetard i prestecsEnRetard
+        private final Map<Taula, Map<Long, long[]>> delDia = new EnumMap<>(Taula.class);
+        private final Map<Taula, Map<Long, TreeMap<LocalDate, Long>>> enRetard = new EnumMap<>(Taula.class);
+
+        Canvis(LocalDate dia) {
+            this.dia = dia;
+        }
+
+        void prestecs(List<Long> clau, LocalDate prevista, long n) {
+            for (Taula taula : Taula.values()) {
+                fila(taula, clau)[0] += n;
+            }
+            enRetard(clau, prevista.plusDays(1), n);
+        }
+
+        void retorns(List<Long> clau, LocalDate prevista, long n) {
+            long diesRetard = Math.max(0, ChronoUnit.DAYS.between(prevista, dia));
+            for (Taula taula : Taula.values()) {
+                long[] fila = fila(taula, clau);
+                fila[1] += n;
+                if (diesRetard > 0) {
+                    fila[2] += n;
+                    fila[3] += n * diesRetard;
+                }
+            }
+            enRetard(clau, prevista.plusDays(1), -n);
+        }
+
+        /**
+         * Suma n als préstecs en retard de desDe (o del dia, si és després)
+         * fins a ahir
+         */
+        private void enRetard(List<Long> clau, LocalDate desDe, long n) {
+            if (desDe.isBefore(dia)) {
+                desDe = dia;
+            }
+            if (desDe.isAfter(ahir)) {
+                return;
+            }
+            for (Taula taula : Taula.values()) {
+                LocalDate inici = desDe;
+                if (inici.equals(dia)) {
+                    fila(taula, clau)[4] += n;
+                    inici = dia.plusDays(1);
+                }
+                if (!inici.isAfter(ahir)) {
+                    enRetard.computeIfAbsent(taula, t -> new HashMap<>())
+                        .computeIfAbsent(taula.de(clau), id -> new TreeMap<>())
+                        .merge(inici, n, Long::sum);
+                }
+            }
+        }
+
+        private long[] fila(Taula taula, List<Long> clau) {
+            return delDia.computeIfAbsent(taula, t -> new HashMap<>()).computeIfAbsent(taula.de(clau), id -> new long[5]);
+        }
+
+        void aplicar(SharedSessionContract session) {
+            delDia.forEach((taula, files) -> files.forEach((id, c) -> sumar(session, taula, id, c)));
+            enRetard.forEach((taula, perId) -> perId.forEach((id, variacions) -> {
+                LocalDate desDe = null;
+                long n = 0;
+                for (Map.Entry<LocalDate, Long> variacio : variacions.entrySet()) {
+                    if (n != 0) {
+                        sumarEnRetard(session, taula, id, desDe, variacio.getKey().minusDays(1), n);
+                    }
+                    desDe = variacio.getKey();
+                    n += variacio.getValue();
+                }
+                if (n != 0) {
+                    sumarEnRetard(session, taula, id, desDe, ahir, n);
+                }
+            }));
+        }
+
+        private void sumar(SharedSessionContract session, Taula taula, long id, long[] c) {
+            int actualitzats = session.createMutationQuery(String.format(SUMAR, taula.entitat, taula.id))
+                .setParameter("prestecs", c[0])
+                .setParameter("retorns", c[1])
+                .setParameter("ambRetard", c[2])
+                .setParameter("diesRetard", c[3])
+                .setParameter("enRetard", c[4])
+                .setParameter("dia", dia)
+                .setParameter("id", id)
+                .executeUpdate();
+            if (actualitzats == 0) {
+                recalcular(session, taula, dia, id, ahir);
+            }
+        }
+
+        /**
+         * Suma n als préstecs en retard de cada dia de desDe a finsA. Un
+         * préstec en retard ja hauria creat la fila del dia, així que els
+         * dies que falten tenien zero: se'ls insereix n o, si resta, es
+         * recalculen. Quan resta, les files que es queden a zero s'esborren.
+         */
+        private void sumarEnRetard(SharedSessionContract session, Taula taula, long id, LocalDate desDe,
+                                   LocalDate finsA, long n) {
+            int actualitzats = session.createMutationQuery(String.format(SUMAR_EN_RETARD, taula.entitat, taula.id))
+                .setParameter("enRetard", n)
+                .setParameter("id", id)
+                .setParameter("desDe", desDe)
+                .setParameter("finsA", finsA)
+                .executeUpdate();
+            if (actualitzats <= ChronoUnit.DAYS.between(desDe, finsA)) {
+                Set<LocalDate> existents = new HashSet<>(session.createQuery(
+                        String.format(DIES, taula.entitat, taula.id), LocalDate.class)
+                    .setParameter("id", id)
+                    .setParameter("desDe", desDe)
+                    .setParameter("finsA", finsA)
+                    .list());
+                for (LocalDate d = desDe; !d.isAfter(finsA); d = d.plusDays(1)) {
+                    if (existents.contains(d)) {
+                        continue;
+                    }
+                    if (n > 0) {
+                        inserir(session, taula, d, id, 0, 0, 0, 0, n);
+                    } else {
+                        recalcular(session, taula, d, id, ahir);
+                    }
+                }
+            }
+            if (n < 0) {
+                session.createMutationQuery(String.format(ESBORRAR_BUIDES, taula.entitat, taula.id))
+                    .setParameter("id", id)
+                    .setParameter("desDe", desDe)
+                    .setParameter("finsA", finsA)
+                    .executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Torna a calcular la fila del dia comptant-ne els préstecs. Si aquell
+     * dia no n'hi ha cap, la fila desapareix.
+     */
+    private static void recalcular(SharedSessionContract session, Taula taula, LocalDate dia, long id,
+                                   LocalDate ahir) {
+        session.createMutationQuery("delete from " + taula.entitat + " r where r.dia = :dia and r." + taula.id + " = :id")
+            .setParameter("dia", dia)
+            .setParameter("id", id)
+            .executeUpdate();
+        long prestecs = session.createQuery(String.format(PRESTECS, taula.exemplar), Long.class)
+            .setParameter("dia", dia)
+            .setParameter("id", id)
+            .getSingleResult();
+        String diesRetard = InformesPrestecs.diesRetard(((SharedSessionContractImplementor) session).getFactory());
+        Object[] retorns = session.createQuery(String.format(RETORNS, diesRetard, taula.exemplar), Object[].class)
+            .setParameter("dia", dia)
+            .setParameter("id", id)
+            .getSingleResult();
+        long numRetorns = (Long) retorns[0];
+        long enRetard = dia.isAfter(ahir) ? 0 : session.createQuery(String.format(EN_RETARD, taula.exemplar), Long.class)
+            .setParameter("dia", dia)
+            .setParameter("id", id)
+            .getSingleResult();
+        if (prestecs == 0 && numRetorns == 0 && enRetard == 0) {
+            return;
+        }
+        inserir(session, taula, dia, id, prestecs, numRetorns,
+            numRetorns == 0 ? 0L : ((Number) retorns[1]).longValue(),
+            numRetorns == 0 ? 0L : ((Number) retorns[2]).longValue(), enRetard);
+    }
+
+    private static void inserir(SharedSessionContract session, Taula taula, LocalDate dia, long id, long prestecs,
+                                long retorns, long ambRetard, long diesRetard, long enRetard) {
+        session.createMutationQuery(String.format(INSERIR, taula.entitat, taula.id))
+            .setParameter("dia", dia)
+            .setParameter("id", id)
+            .setParameter("prestecs", prestecs)
+            .setParameter("retorns", retorns)
+            .setParameter("ambRetard", ambRetard)
+            .setParameter("diesRetard", diesRetard)
+            .setParameter("enRetard", enRetard)
+            .executeUpdate();
+    }
+
+    /**
+     * Entitat de resum, camp de l'identificador, camí des de l'exemplar i
+     * posició de l'identificador a List.of(llibreId, bibliotecaId)
+     */
+    enum Taula {
+        BIBLIOTECA("ResumDiariBiblioteca", "bibliotecaId", "biblioteca.bibliotecaId", 1),
+        LLIBRE("ResumDiariLlibre", "llibreId", "llibre.llibreId", 0);
+
+        final String entitat;
+        final String id;
+        final String exemplar;
+        private final int posicio;
+
+        Taula(String entitat, String id, String exemplar, int posicio) {
+            this.entitat = entitat;
+            this.id = id;
+            this.exemplar = exemplar;
+            this.posicio = posicio;
+        }
+
+        long de(List<Long> clau) {
+            return clau.get(posicio);
+        }
+    }
+}
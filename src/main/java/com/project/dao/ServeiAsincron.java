@@ -0,0 +1,194 @@
+package com.project.dao;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.project.domain.*;
+
+/**
+ * Versions asíncrones de les operacions del Manager per a molts clients
+ * concurrents. Cada operació retorna un CompletableFuture i s'executa en un
+ * fil virtual si la JVM en té (Java 21 o posterior); si no, en un pool fix de
+ * fils de plataforma de la mida del pool de connexions.
+ *
+ * El nombre d'operacions que toquen la base de dades alhora està limitat a
+ * la mida del pool de connexions, de manera que les peticions de més esperen
+ * en un semàfor (un fil virtual en espera no ocupa cap fil de plataforma) en
+ * lloc de fer cua dins de HikariCP. A SQLite, a més, només s'executa una
+ * escriptura alhora: les altres esperarien igualment el bloqueig del fitxer
+ * i amb els reintents de ambReintents només hi afegirien soroll.
+ *
+ * Cal haver creat la SessionFactory del Manager amb ProveidorConnexions.
+ */
+public class ServeiAsincron implements AutoCloseable {
+    private final ExecutorService executor;
+    private final boolean filsVirtuals;
+    private final Semaphore connexions;
+    private final Semaphore escriptures;
+
+    public ServeiAsincron() {
+        this(Manager.proveidorConnexions().getMidaMaxima(),
+            Manager.proveidorConnexions().isSQLite() ? 1 : Manager.proveidorConnexions().getMidaMaxima());
+    }
+
+    /**
+     * @param maxOperacions operacions sobre la base de dades alhora
+     * @param maxEscriptures d'aquestes, quantes poden ser escriptures
+     */
+    public ServeiAsincron(int maxOperacions, int maxEscriptures) {
+        if (maxOperacions <= 0 || maxEscriptures <= 0) {
+            throw new IllegalArgumentException("Els límits d'operacions han de ser positius");
+        }
+        this.connexions = new Semaphore(maxOperacions);
+        this.escriptures = new Semaphore(Math.min(maxEscriptures, maxOperacions));
+        ExecutorService virtual = executorVirtual();
+        this.filsVirtuals = virtual != null;
+        this.executor = virtual != null ? virtual : executorPlataforma(maxOperacions);
+    }
+
+    public boolean usaFilsVirtuals() {
+        return filsVirtuals;
+    }
+
+    // Lectures
+
+    public <T> CompletableFuture<T> get(Class<T> clazz, Serializable id) {
+        return llegir(() -> Manager.get(clazz, id));
+    }
+
+    public <T> CompletableFuture<T> getPerClauNatural(Class<T> clazz, String clau) {
+        return llegir(() -> Manager.getPerClauNatural(clazz, clau));
+    }
+
+    public CompletableFuture<List<Llibre>> cercarLlibres(String text, int pagina, int midaPagina) {
+        return llegir(() -> Manager.cercarLlibres(text, pagina, midaPagina));
+    }
+
+    public CompletableFuture<List<Prestec>> getPaginaHistorialPrestecs(Persona persona, long darrerId, int midaPagina) {
+        return llegir(() -> Manager.getPaginaHistorialPrestecs(persona, darrerId, midaPagina));
+    }
+
+    public CompletableFuture<List<Prestec>> getPrestecsRetardats() {
+        return llegir(Manager::getPrestecsRetardats);
+    }
+
+    // Escriptures
+
+    public <T> CompletableFuture<T> save(T entity) {
+        return escriure(() -> Manager.save(entity));
+    }
+
+    public <T> CompletableFuture<T> update(T entity) {
+        return escriure(() -> Manager.update(entity));
+    }
+
+    public CompletableFuture<Prestec> ferPrestec(Exemplar exemplar, Persona persona,
+                                                 LocalDate dataPrestec, LocalDate dataRetornPrevista) {
+        return escriure(() -> Manager.ferPrestec(exemplar, persona, dataPrestec, dataRetornPrevista));
+    }
+
+    public CompletableFuture<Void> retornarPrestec(Prestec prestec, LocalDate dataRetornReal) {
+        return escriure(() -> {
+            Manager.retornarPrestec(prestec, dataRetornReal);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<ResultatExemplar>> ferPrestecs(List<String> codisBarres, Persona persona,
+                                                                 LocalDate dataPrestec, LocalDate dataRetornPrevista) {
+        return escriure(() -> Manager.ferPrestecs(codisBarres, persona, dataPrestec, dataRetornPrevista));
+    }
+
+    public CompletableFuture<List<ResultatExemplar>> retornarPrestecs(List<String> codisBarres, LocalDate dataRetornReal) {
+        return escriure(() -> Manager.retornarPrestecs(codisBarres, dataRetornReal));
+    }
+
+    /**
+     * Executa una operació de només lectura amb el límit de connexions
+     */
+    public <T> CompletableFuture<T> llegir(Supplier<T> operacio) {
+        return executar(null, operacio);
+    }
+
+    /**
+     * Executa una operació que escriu amb el límit de connexions i el
+     * d'escriptures
+     */
+    public <T> CompletableFuture<T> escriure(Supplier<T> operacio) {
+        return executar(escriptures, operacio);
+    }
+
+    private <T> CompletableFuture<T> executar(Semaphore escriptura, Supplier<T> operacio) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                // Primer el permís d'escriptura: una escriptura en espera no reté cap connexió
+                if (escriptura != null) {
+                    escriptura.acquire();
+                }
+                try {
+                    connexions.acquire();
+                    try {
+                        return operacio.get();
+                    } finally {
+                        connexions.release();
+                    }
+                } finally {
+                    if (escriptura != null) {
+                        escriptura.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Deixa d'acceptar operacions i espera que acabin les pendents
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() per reflexió, perquè el
+     * projecte compila per a Java 17. Null si la JVM no té fils virtuals.
+     */
+    private static ExecutorService executorVirtual() {
+        try {
+            Method metode = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) metode.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService executorPlataforma(int fils) {
+        AtomicInteger comptador = new AtomicInteger();
+        return Executors.newFixedThreadPool(fils, tasca -> {
+            Thread fil = new Thread(tasca, "servei-asincron-" + comptador.incrementAndGet());
+            fil.setDaemon(true);
+            return fil;
+        });
+    }
+}
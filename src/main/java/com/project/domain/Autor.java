@@ -5,16 +5,22 @@ import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 @Entity
 @Table(name = "autors")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "autors")
 public class Autor implements Serializable {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @IdPoolat
     private long autorId;
 
     @Column(nullable = false)
     private String nom;
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "autors-llibres")
     @ManyToMany(mappedBy = "autors")
     private Set<Llibre> llibres = new HashSet<>();
 
@@ -63,22 +69,14 @@ public class Autor implements Serializable {
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Autor[id=%d, nom='%s'", autorId, nom));
-        
-        if (!llibres.isEmpty()) {
-            sb.append(", llibres={");
-            boolean first = true;
-            for (Llibre ll : llibres) {
-                if (!first) sb.append(", ");
-                sb.append(String.format("'%s'", ll.getTitol()));
-                first = false;
-            }
-            sb.append("}");
-        }
-        
-        sb.append("]");
-        return sb.toString();
+        return Descripcio.de("Autor", autorId)
+            .text("nom", nom)
+            .elements("llibres", llibres, Autor::titolEntreCometes)
+            .fi();
+    }
+
+    private static String titolEntreCometes(Llibre llibre) {
+        return "'" + llibre.getTitol() + "'";
     }
 
     @Override
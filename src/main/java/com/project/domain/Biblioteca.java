@@ -5,11 +5,17 @@ import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 @Entity
 @Table(name = "biblioteques")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "biblioteques")
 public class Biblioteca implements Serializable {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @IdPoolat
     private long bibliotecaId;
 
     @Column(nullable = false)
@@ -103,41 +109,22 @@ public class Biblioteca implements Serializable {
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Biblioteca[id=%d, nom='%s', ciutat='%s'", 
-            bibliotecaId, nom, ciutat));
-        
-        if (adreca != null) {
-            sb.append(String.format(", adreca='%s'", adreca));
-        }
-        if (telefon != null) {
-            sb.append(String.format(", tel='%s'", telefon));
-        }
-        if (email != null) {
-            sb.append(String.format(", email='%s'", email));
-        }
-        
-        if (!exemplars.isEmpty()) {
-            sb.append(", exemplars={");
-            boolean first = true;
-            for (Exemplar e : exemplars) {
-                if (!first) sb.append(", ");
-                sb.append(e.getCodiBarres());
-                first = false;
-            }
-            sb.append("}");
-        }
-        
-        sb.append("]");
-        return sb.toString();
+        return Descripcio.de("Biblioteca", bibliotecaId)
+            .text("nom", nom)
+            .text("ciutat", ciutat)
+            .text("adreca", adreca)
+            .text("tel", telefon)
+            .text("email", email)
+            .elements("exemplars", exemplars, Exemplar::getCodiBarres)
+            .fi();
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (o == null || Hibernate.getClassLazy(this) != Hibernate.getClassLazy(o)) return false;
         Biblioteca that = (Biblioteca) o;
-        return bibliotecaId == that.bibliotecaId;
+        return getBibliotecaId() == that.getBibliotecaId();
     }
 
     @Override
@@ -0,0 +1,158 @@
+package com.project.domain;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.function.Function;
+
+import org.hibernate.Hibernate;
+
+/**
+ * Text dels toString de les entitats.
+ *
+ * Reaprofita un StringBuilder per fil en lloc de fer un String.format per
+ * camp, i no toca cap associació ni col·lecció que no estigui carregada
+ * (Hibernate.isInitialized): escriure una entitat en un log no ha de llançar
+ * consultes ni LazyInitializationException, encara que la sessió estigui
+ * tancada. D'una associació sense carregar només s'escriu l'identificador,
+ * que el proxy ja té, i d'una col·lecció sense carregar, que no ho està.
+ * De les col·leccions només s'escriuen els primers MAX_ELEMENTS elements.
+ */
+final class Descripcio {
+    static final int MAX_ELEMENTS = 5;
+    static final String SENSE_CARREGAR = "(sense carregar)";
+
+    private static final int CAPACITAT_INICIAL = 256;
+    private static final int CAPACITAT_MAXIMA = 4096;
+    private static final ThreadLocal<StringBuilder> BUFFER =
+        ThreadLocal.withInitial(() -> new StringBuilder(CAPACITAT_INICIAL));
+
+    private final StringBuilder sb;
+    private final boolean reaprofitat;
+
+    private Descripcio(StringBuilder sb, boolean reaprofitat) {
+        this.sb = sb;
+        this.reaprofitat = reaprofitat;
+    }
+
+    /**
+     * Comença el text amb el nom de l'entitat i l'identificador
+     */
+    static Descripcio de(String entitat, long id) {
+        StringBuilder sb = BUFFER.get();
+        // Si el buffer del fil està en ús (un toString dins d'un altre), se'n fa un de nou
+        boolean lliure = sb.length() == 0;
+        Descripcio descripcio = new Descripcio(lliure ? sb : new StringBuilder(CAPACITAT_INICIAL), lliure);
+        descripcio.sb.append(entitat).append("[id=").append(id);
+        return descripcio;
+    }
+
+    static boolean carregat(Object entitatOColleccio) {
+        return Hibernate.isInitialized(entitatOColleccio);
+    }
+
+    /**
+     * Text entre cometes, si no és null
+     */
+    Descripcio text(String nom, String valor) {
+        if (valor != null) {
+            sb.append(", ").append(nom).append("='").append(valor).append('\'');
+        }
+        return this;
+    }
+
+    Descripcio valor(String nom, long valor) {
+        sb.append(", ").append(nom).append('=').append(valor);
+        return this;
+    }
+
+    Descripcio valor(String nom, boolean valor) {
+        sb.append(", ").append(nom).append('=').append(valor);
+        return this;
+    }
+
+    Descripcio valor(String nom, Object valor) {
+        if (valor != null) {
+            sb.append(", ").append(nom).append('=').append(valor);
+        }
+        return this;
+    }
+
+    /**
+     * Data entre cometes (aaaa-mm-dd), si no és null, sense passar per LocalDate.toString
+     */
+    Descripcio data(String nom, LocalDate data) {
+        if (data != null) {
+            sb.append(", ").append(nom).append("='").append(data.getYear()).append('-');
+            dosDigits(data.getMonthValue());
+            sb.append('-');
+            dosDigits(data.getDayOfMonth());
+            sb.append('\'');
+        }
+        return this;
+    }
+
+    /**
+     * Text lliure a continuació del que ja hi ha
+     */
+    Descripcio afegir(String text) {
+        sb.append(text);
+        return this;
+    }
+
+    Descripcio afegir(long valor) {
+        sb.append(valor);
+        return this;
+    }
+
+    /**
+     * Els primers elements d'una col·lecció carregada amb el text de cadascun
+     * ({a, b, ... +n}). No escriu res si és buida.
+     */
+    <T> Descripcio elements(String nom, Collection<T> elements, Function<T, String> text) {
+        if (!carregat(elements)) {
+            sb.append(", ").append(nom).append('=').append(SENSE_CARREGAR);
+            return this;
+        }
+        if (elements.isEmpty()) {
+            return this;
+        }
+        sb.append(", ").append(nom).append("={");
+        int escrits = 0;
+        for (T element : elements) {
+            if (escrits == MAX_ELEMENTS) {
+                sb.append(", ... +").append(elements.size() - escrits);
+                break;
+            }
+            if (escrits > 0) {
+                sb.append(", ");
+            }
+            sb.append(carregat(element) ? text.apply(element) : "?");
+            escrits++;
+        }
+        sb.append('}');
+        return this;
+    }
+
+    /**
+     * Tanca el text i deixa el buffer a punt per al següent toString del fil
+     */
+    String fi() {
+        sb.append(']');
+        String resultat = sb.toString();
+        if (reaprofitat) {
+            if (sb.capacity() > CAPACITAT_MAXIMA) {
+                BUFFER.set(new StringBuilder(CAPACITAT_INICIAL));
+            } else {
+                sb.setLength(0);
+            }
+        }
+        return resultat;
+    }
+
+    private void dosDigits(int valor) {
+        if (valor < 10) {
+            sb.append('0');
+        }
+        sb.append(valor);
+    }
+}
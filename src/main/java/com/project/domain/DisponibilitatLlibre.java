@@ -0,0 +1,122 @@
+package com.project.domain;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Comptadors d'exemplars d'un llibre a una biblioteca: quants n'hi ha i
+ * quants estan disponibles. Els manté el Manager a la mateixa transacció que
+ * els préstecs, els retorns i les altes i baixes d'exemplars, de manera que
+ * saber la disponibilitat és llegir una fila per clau primària en lloc de
+ * comptar exemplars. Es poden reconstruir amb ReconciliacioComptadors.
+ */
+@Entity
+@Table(name = "disponibilitat_llibres", indexes = {
+    // Disponibilitat d'un llibre a totes les biblioteques
+    @Index(name = "idx_disponibilitat_llibre", columnList = "llibre_id")
+})
+@IdClass(DisponibilitatLlibre.Clau.class)
+public class DisponibilitatLlibre implements Serializable {
+    @Id
+    @Column(name = "llibre_id")
+    private long llibreId;
+
+    @Id
+    @Column(name = "biblioteca_id")
+    private long bibliotecaId;
+
+    private long totalExemplars;
+
+    private long exemplarsDisponibles;
+
+    // Constructors
+    public DisponibilitatLlibre() {}
+
+    public DisponibilitatLlibre(long llibreId, long bibliotecaId, long totalExemplars, long exemplarsDisponibles) {
+        this.llibreId = llibreId;
+        this.bibliotecaId = bibliotecaId;
+        this.totalExemplars = totalExemplars;
+        this.exemplarsDisponibles = exemplarsDisponibles;
+    }
+
+    // Getters and Setters
+    public long getLlibreId() {
+        return llibreId;
+    }
+
+    public void setLlibreId(long llibreId) {
+        this.llibreId = llibreId;
+    }
+
+    public long getBibliotecaId() {
+        return bibliotecaId;
+    }
+
+    public void setBibliotecaId(long bibliotecaId) {
+        this.bibliotecaId = bibliotecaId;
+    }
+
+    public long getTotalExemplars() {
+        return totalExemplars;
+    }
+
+    public void setTotalExemplars(long totalExemplars) {
+        this.totalExemplars = totalExemplars;
+    }
+
+    public long getExemplarsDisponibles() {
+        return exemplarsDisponibles;
+    }
+
+    public void setExemplarsDisponibles(long exemplarsDisponibles) {
+        this.exemplarsDisponibles = exemplarsDisponibles;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DisponibilitatLlibre[llibre=%d, biblioteca=%d, disponibles=%d de %d]",
+            llibreId, bibliotecaId, exemplarsDisponibles, totalExemplars);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DisponibilitatLlibre disponibilitat = (DisponibilitatLlibre) o;
+        return llibreId == disponibilitat.llibreId && bibliotecaId == disponibilitat.bibliotecaId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(llibreId, bibliotecaId);
+    }
+
+    /**
+     * Clau primària: llibre i biblioteca
+     */
+    public static class Clau implements Serializable {
+        private long llibreId;
+        private long bibliotecaId;
+
+        public Clau() {}
+
+        public Clau(long llibreId, long bibliotecaId) {
+            this.llibreId = llibreId;
+            this.bibliotecaId = bibliotecaId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Clau clau = (Clau) o;
+            return llibreId == clau.llibreId && bibliotecaId == clau.bibliotecaId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(llibreId, bibliotecaId);
+        }
+    }
+}
@@ -5,26 +5,65 @@ import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+
 @Entity
-@Table(name = "exemplars")
+@Table(name = "exemplars", indexes = {
+    // Exemplars disponibles (a SQLite es substitueix per un índex parcial, veure IndexosSqlite)
+    @Index(name = Exemplar.INDEX_DISPONIBLES, columnList = "disponible"),
+    // Exemplars d'un llibre
+    @Index(name = "idx_exemplars_llibre", columnList = "llibre_id"),
+    // Exemplars d'una biblioteca (informes per biblioteca)
+    @Index(name = "idx_exemplars_biblioteca", columnList = "biblioteca_id")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "exemplars")
+@NaturalIdCache(region = "exemplars-codis")
+@NamedEntityGraph(
+    name = Exemplar.GRAF_DETALL,
+    attributeNodes = {@NamedAttributeNode("llibre"), @NamedAttributeNode("biblioteca")}
+)
+@NamedEntityGraph(
+    name = Exemplar.GRAF_HISTORIAL,
+    attributeNodes = @NamedAttributeNode(value = "historialPrestecs", subgraph = "prestec"),
+    subgraphs = @NamedSubgraph(name = "prestec", attributeNodes = @NamedAttributeNode("persona"))
+)
 public class Exemplar implements Serializable {
+    /**
+     * Llibre i biblioteca de l'exemplar
+     */
+    public static final String GRAF_DETALL = "Exemplar.detall";
+    /**
+     * Historial de préstecs amb la persona de cada préstec
+     */
+    public static final String GRAF_HISTORIAL = "Exemplar.historial";
+    public static final String INDEX_DISPONIBLES = "idx_exemplars_disponible";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @IdPoolat
     private long exemplarId;
 
+    @NaturalId
     @Column(nullable = false, unique = true)
     private String codiBarres;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "llibre_id", nullable = false)
     private Llibre llibre;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "biblioteca_id", nullable = false)
     private Biblioteca biblioteca;
 
     private boolean disponible = true;
 
+    @Version
+    private long versio;
+
     @OneToMany(mappedBy = "exemplar", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<Prestec> historialPrestecs = new HashSet<>();
 
@@ -46,6 +85,14 @@ public class Exemplar implements Serializable {
         this.exemplarId = exemplarId;
     }
 
+    public long getVersio() {
+        return versio;
+    }
+
+    public void setVersio(long versio) {
+        this.versio = versio;
+    }
+
     public String getCodiBarres() {
         return codiBarres;
     }
@@ -101,36 +148,42 @@ public class Exemplar implements Serializable {
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Exemplar[id=%d, codi='%s', disponible=%s", 
-            exemplarId, codiBarres, disponible));
-        
+        Descripcio d = Descripcio.de("Exemplar", exemplarId)
+            .text("codi", codiBarres)
+            .valor("disponible", disponible);
         if (llibre != null) {
-            sb.append(String.format(", llibre='%s'", llibre.getTitol()));
+            if (Descripcio.carregat(llibre)) {
+                d.text("llibre", llibre.getTitol());
+            } else {
+                d.valor("llibreId", llibre.getLlibreId());
+            }
         }
-        
         if (biblioteca != null) {
-            sb.append(String.format(", biblioteca='%s'", biblioteca.getNom()));
+            if (Descripcio.carregat(biblioteca)) {
+                d.text("biblioteca", biblioteca.getNom());
+            } else {
+                d.valor("bibliotecaId", biblioteca.getBibliotecaId());
+            }
         }
-        
-        if (!historialPrestecs.isEmpty()) {
-            long prestectsActius = historialPrestecs.stream()
-                .filter(p -> p.isActiu())
-                .count();
-            sb.append(String.format(", prestecs=%d (actius=%d)", 
-                historialPrestecs.size(), prestectsActius));
+        if (!Descripcio.carregat(historialPrestecs)) {
+            d.valor("prestecs", Descripcio.SENSE_CARREGAR);
+        } else if (!historialPrestecs.isEmpty()) {
+            int actius = 0;
+            for (Prestec p : historialPrestecs) {
+                if (p.isActiu()) actius++;
+            }
+            d.valor("prestecs", historialPrestecs.size()).afegir(" (actius=").afegir(actius).afegir(")");
         }
-        
-        sb.append("]");
-        return sb.toString();
+        return d.fi();
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        // Les associacions LAZY donen proxies: classe i identificador sense inicialitzar-los
+        if (o == null || Hibernate.getClassLazy(this) != Hibernate.getClassLazy(o)) return false;
         Exemplar exemplar = (Exemplar) o;
-        return exemplarId == exemplar.exemplarId;
+        return getExemplarId() == exemplar.getExemplarId();
     }
 
     @Override
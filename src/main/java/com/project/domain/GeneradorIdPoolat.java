@@ -0,0 +1,111 @@
+package com.project.domain;
+
+import java.lang.reflect.Member;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.boot.model.relational.SqlStringGenerationContext;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Generador d'identificadors configurable amb la propietat 'project.id.estrategia':
+ *
+ * increment: (per defecte) llegeix max(id) la primera vegada i reparteix els
+ *            següents valors en memòria. No necessita cap connexió extra, cosa
+ *            important amb SQLite, on un generador basat en taula hauria d'escriure
+ *            des d'una altra connexió mentre la transacció actual té el bloqueig
+ *            d'escriptura. Només és segur si aquesta JVM és l'única que insereix.
+ * taula:     seqüència pooled (emulada amb una taula si la base de dades no té
+ *            seqüències) que reserva blocs de 'project.id.mida_bloc' identificadors.
+ *            Segur amb diverses instàncies, pensat per a MySQL.
+ */
+public class GeneradorIdPoolat implements IdentifierGenerator {
+    public static final String ESTRATEGIA = "project.id.estrategia";
+    public static final String MIDA_BLOC = "project.id.mida_bloc";
+
+    private SequenceStyleGenerator sequencia;
+    private String selectMax;
+    private long seguent = -1;
+
+    /**
+     * Constructor que fa servir Hibernate per a @IdPoolat: l'estratègia es
+     * tria aquí perquè configure() ja sàpiga si ha de delegar en la seqüència
+     */
+    public GeneradorIdPoolat(IdPoolat config, Member member, CustomIdGeneratorCreationContext context) {
+        String estrategia = context.getServiceRegistry().requireService(ConfigurationService.class)
+            .getSetting(ESTRATEGIA, String::valueOf, "increment");
+        switch (estrategia) {
+            case "increment" -> sequencia = null;
+            case "taula" -> {
+                sequencia = new SequenceStyleGenerator();
+                sequencia.create(context);
+            }
+            default -> throw new MappingException("Estratègia d'identificadors desconeguda: " + estrategia);
+        }
+    }
+
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) throws MappingException {
+        String taula = parameters.getProperty(PersistentIdentifierGenerator.TABLE);
+        String columna = parameters.getProperty(PersistentIdentifierGenerator.PK);
+        if (sequencia == null) {
+            selectMax = "select max(" + columna + ") from " + taula;
+            return;
+        }
+        String midaBloc = serviceRegistry.requireService(ConfigurationService.class)
+            .getSetting(MIDA_BLOC, String::valueOf, "50");
+        parameters.put(SequenceStyleGenerator.SEQUENCE_PARAM, taula + "_seq");
+        parameters.put(SequenceStyleGenerator.INCREMENT_PARAM, midaBloc);
+        parameters.put(SequenceStyleGenerator.OPT_PARAM, "pooled");
+        sequencia.configure(type, parameters, serviceRegistry);
+    }
+
+    @Override
+    public void registerExportables(Database database) {
+        if (sequencia != null) sequencia.registerExportables(database);
+    }
+
+    @Override
+    public void initialize(SqlStringGenerationContext context) {
+        if (sequencia != null) sequencia.initialize(context);
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        if (sequencia != null) {
+            return sequencia.generate(session, object);
+        }
+        return generarIncrement(session);
+    }
+
+    private synchronized long generarIncrement(SharedSessionContractImplementor session) {
+        if (seguent < 0) {
+            // Es llegeix amb la mateixa connexió de la sessió: cap bloqueig nou a SQLite
+            JdbcCoordinator jdbc = session.getJdbcCoordinator();
+            PreparedStatement ps = jdbc.getStatementPreparer().prepareStatement(selectMax);
+            try {
+                ResultSet rs = jdbc.getResultSetReturn().extract(ps, selectMax);
+                seguent = rs.next() ? rs.getLong(1) + 1 : 1;
+            } catch (SQLException e) {
+                throw session.getJdbcServices().getSqlExceptionHelper()
+                    .convert(e, "No s'ha pogut llegir el darrer identificador", selectMax);
+            } finally {
+                jdbc.getLogicalConnection().getResourceRegistry().release(ps);
+                jdbc.afterStatementExecution();
+            }
+        }
+        return seguent++;
+    }
+}
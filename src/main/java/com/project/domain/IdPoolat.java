@@ -0,0 +1,18 @@
+package com.project.domain;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+/**
+ * Identificador generat per GeneradorIdPoolat en comptes de IDENTITY,
+ * perquè Hibernate pugui agrupar les insercions en lots JDBC
+ */
+@IdGeneratorType(GeneradorIdPoolat.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface IdPoolat {
+}
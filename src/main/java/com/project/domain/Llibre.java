@@ -5,13 +5,38 @@ import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+
 @Entity
 @Table(name = "llibres")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "llibres")
+@NaturalIdCache(region = "llibres-isbn")
+@NamedEntityGraph(name = Llibre.GRAF_AUTORS, attributeNodes = @NamedAttributeNode("autors"))
+@NamedEntityGraph(
+    name = Llibre.GRAF_EXEMPLARS,
+    attributeNodes = @NamedAttributeNode(value = "exemplars", subgraph = "exemplar"),
+    subgraphs = @NamedSubgraph(name = "exemplar", attributeNodes = @NamedAttributeNode("biblioteca"))
+)
 public class Llibre implements Serializable {
+    /**
+     * Autors del llibre
+     */
+    public static final String GRAF_AUTORS = "Llibre.autors";
+    /**
+     * Exemplars del llibre amb la biblioteca de cadascun
+     */
+    public static final String GRAF_EXEMPLARS = "Llibre.exemplars";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @IdPoolat
     private long llibreId;
 
+    @NaturalId
     @Column(nullable = false, unique = true)
     private String isbn;
 
@@ -21,6 +46,7 @@ public class Llibre implements Serializable {
     private String editorial;
     private Integer anyPublicacio;
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "llibres-autors")
     @ManyToMany
     @JoinTable(
         name = "llibre_autor",
@@ -29,6 +55,7 @@ public class Llibre implements Serializable {
     )
     private Set<Autor> autors = new HashSet<>();
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "llibres-exemplars")
     @OneToMany(mappedBy = "llibre", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<Exemplar> exemplars = new HashSet<>();
 
@@ -120,49 +147,22 @@ public class Llibre implements Serializable {
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Llibre[id=%d, isbn='%s', titol='%s'", 
-            llibreId, isbn, titol));
-        
-        if (editorial != null) {
-            sb.append(String.format(", editorial='%s'", editorial));
-        }
-        if (anyPublicacio != null) {
-            sb.append(String.format(", any=%d", anyPublicacio));
-        }
-        
-        if (!autors.isEmpty()) {
-            sb.append(", autors={");
-            boolean first = true;
-            for (Autor a : autors) {
-                if (!first) sb.append(", ");
-                sb.append(a.getNom());
-                first = false;
-            }
-            sb.append("}");
-        }
-        
-        if (!exemplars.isEmpty()) {
-            sb.append(", exemplars={");
-            boolean first = true;
-            for (Exemplar e : exemplars) {
-                if (!first) sb.append(", ");
-                sb.append(e.getCodiBarres());
-                first = false;
-            }
-            sb.append("}");
-        }
-        
-        sb.append("]");
-        return sb.toString();
+        return Descripcio.de("Llibre", llibreId)
+            .text("isbn", isbn)
+            .text("titol", titol)
+            .text("editorial", editorial)
+            .valor("any", anyPublicacio)
+            .elements("autors", autors, Autor::getNom)
+            .elements("exemplars", exemplars, Exemplar::getCodiBarres)
+            .fi();
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (o == null || Hibernate.getClassLazy(this) != Hibernate.getClassLazy(o)) return false;
         Llibre llibre = (Llibre) o;
-        return llibreId == llibre.llibreId;
+        return getLlibreId() == llibre.getLlibreId();
     }
 
     @Override
@@ -0,0 +1,108 @@
+package com.project.domain;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Tros del procés de retards d'una data de referència: els préstecs
+ * retardats amb prestecId entre primerPrestecId i darrerPrestecId. Es marca
+ * com a completada a la mateixa transacció que desa les seves sancions, de
+ * manera que si el procés s'atura només cal repetir les que no ho estan.
+ */
+@Entity
+@Table(name = "particions_retards",
+    uniqueConstraints = @UniqueConstraint(name = "uk_particions_retards", columnNames = {"dataReferencia", "primerPrestecId"}))
+public class ParticioRetards implements Serializable {
+    @Id
+    @IdPoolat
+    private long particioId;
+
+    @Column(nullable = false)
+    private LocalDate dataReferencia;
+
+    private long primerPrestecId;
+
+    private long darrerPrestecId;
+
+    private boolean completada = false;
+
+    private int sancions;
+
+    // Constructors
+    public ParticioRetards() {}
+
+    public ParticioRetards(LocalDate dataReferencia, long primerPrestecId, long darrerPrestecId) {
+        this.dataReferencia = dataReferencia;
+        this.primerPrestecId = primerPrestecId;
+        this.darrerPrestecId = darrerPrestecId;
+    }
+
+    // Getters and Setters
+    public long getParticioId() {
+        return particioId;
+    }
+
+    public void setParticioId(long particioId) {
+        this.particioId = particioId;
+    }
+
+    public LocalDate getDataReferencia() {
+        return dataReferencia;
+    }
+
+    public void setDataReferencia(LocalDate dataReferencia) {
+        this.dataReferencia = dataReferencia;
+    }
+
+    public long getPrimerPrestecId() {
+        return primerPrestecId;
+    }
+
+    public void setPrimerPrestecId(long primerPrestecId) {
+        this.primerPrestecId = primerPrestecId;
+    }
+
+    public long getDarrerPrestecId() {
+        return darrerPrestecId;
+    }
+
+    public void setDarrerPrestecId(long darrerPrestecId) {
+        this.darrerPrestecId = darrerPrestecId;
+    }
+
+    public boolean isCompletada() {
+        return completada;
+    }
+
+    public void setCompletada(boolean completada) {
+        this.completada = completada;
+    }
+
+    public int getSancions() {
+        return sancions;
+    }
+
+    public void setSancions(int sancions) {
+        this.sancions = sancions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ParticioRetards[id=%d, dataReferencia='%s', prestecs=%d..%d, completada=%s, sancions=%d]",
+            particioId, dataReferencia, primerPrestecId, darrerPrestecId, completada, sancions);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ParticioRetards particio = (ParticioRetards) o;
+        return particioId == particio.particioId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(particioId);
+    }
+}
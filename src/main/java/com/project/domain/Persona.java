@@ -2,16 +2,27 @@ package com.project.domain;
 
 import jakarta.persistence.*;
 import java.io.Serializable;
+import java.time.LocalDate;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+
 @Entity
 @Table(name = "persones")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "persones")
+@NaturalIdCache(region = "persones-dni")
 public class Persona implements Serializable {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @IdPoolat
     private long personaId;
 
+    @NaturalId
     @Column(nullable = false, unique = true)
     private String dni;
 
@@ -99,41 +110,45 @@ public class Persona implements Serializable {
     }
 
     public boolean tePrestecsRetardats() {
+        LocalDate avui = LocalDate.now();
         return prestecs.stream()
-            .anyMatch(p -> p.isActiu() && p.estaRetardat());
+            .anyMatch(p -> p.estaRetardat(avui));
     }
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Persona[id=%d, dni='%s', nom='%s'", 
-            personaId, dni, nom));
-        
-        if (telefon != null) {
-            sb.append(String.format(", tel='%s'", telefon));
-        }
-        if (email != null) {
-            sb.append(String.format(", email='%s'", email));
-        }
-        
-        int prestecsActius = getNumPrestecsActius();
-        if (prestecsActius > 0) {
-            sb.append(String.format(", prestecsActius=%d", prestecsActius));
-            if (tePrestecsRetardats()) {
-                sb.append(" (amb retards)");
+        Descripcio d = Descripcio.de("Persona", personaId)
+            .text("dni", dni)
+            .text("nom", nom)
+            .text("tel", telefon)
+            .text("email", email);
+        if (!Descripcio.carregat(prestecs)) {
+            d.valor("prestecs", Descripcio.SENSE_CARREGAR);
+        } else {
+            int actius = 0;
+            boolean ambRetards = false;
+            LocalDate avui = null;
+            for (Prestec p : prestecs) {
+                if (p.isActiu()) {
+                    actius++;
+                    if (avui == null) avui = LocalDate.now();
+                    ambRetards |= p.estaRetardat(avui);
+                }
+            }
+            if (actius > 0) {
+                d.valor("prestecsActius", actius);
+                if (ambRetards) d.afegir(" (amb retards)");
             }
         }
-        
-        sb.append("]");
-        return sb.toString();
+        return d.fi();
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (o == null || Hibernate.getClassLazy(this) != Hibernate.getClassLazy(o)) return false;
         Persona persona = (Persona) o;
-        return personaId == persona.personaId;
+        return getPersonaId() == persona.getPersonaId();
     }
 
     @Override
@@ -5,18 +5,48 @@ import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 
+import org.hibernate.Hibernate;
+
 @Entity
-@Table(name = "prestecs")
+@Table(name = "prestecs", indexes = {
+    // Préstecs actius i retardats (a SQLite es substitueix per un índex parcial, veure IndexosSqlite)
+    @Index(name = Prestec.INDEX_ACTIUS, columnList = "actiu, dataRetornPrevista"),
+    // Historial d'una persona per data i per pàgines de prestecId
+    @Index(name = "idx_prestecs_persona_data", columnList = "persona_id, dataPrestec"),
+    @Index(name = "idx_prestecs_persona_id", columnList = "persona_id, prestecId"),
+    // Historial d'un exemplar; amb les dates, cobreix també els informes d'una biblioteca
+    @Index(name = "idx_prestecs_exemplar", columnList = "exemplar_id, dataPrestec, dataRetornReal, dataRetornPrevista"),
+    // Informes per període (veure InformesPrestecs): préstecs per data d'inici i retorns per data de retorn
+    @Index(name = "idx_prestecs_data", columnList = "dataPrestec, exemplar_id"),
+    @Index(name = "idx_prestecs_retorn", columnList = "dataRetornReal, dataRetornPrevista, exemplar_id")
+})
+@NamedEntityGraph(
+    name = Prestec.GRAF_DETALL,
+    attributeNodes = {
+        @NamedAttributeNode(value = "exemplar", subgraph = "exemplar"),
+        @NamedAttributeNode("persona")
+    },
+    subgraphs = @NamedSubgraph(name = "exemplar", attributeNodes = {
+        @NamedAttributeNode("llibre"),
+        @NamedAttributeNode("biblioteca")
+    })
+)
 public class Prestec implements Serializable {
+    /**
+     * Exemplar (amb llibre i biblioteca) i persona: el que mostren les llistes de préstecs
+     */
+    public static final String GRAF_DETALL = "Prestec.detall";
+    public static final String INDEX_ACTIUS = "idx_prestecs_actius";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @IdPoolat
     private long prestecId;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "exemplar_id", nullable = false)
     private Exemplar exemplar;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "persona_id", nullable = false)
     private Persona persona;
 
@@ -30,6 +60,9 @@ public class Prestec implements Serializable {
 
     private boolean actiu = true;
 
+    @Version
+    private long versio;
+
     // Constructors
     public Prestec() {}
 
@@ -49,6 +82,14 @@ public class Prestec implements Serializable {
         this.prestecId = prestecId;
     }
 
+    public long getVersio() {
+        return versio;
+    }
+
+    public void setVersio(long versio) {
+        this.versio = versio;
+    }
+
     public Exemplar getExemplar() {
         return exemplar;
     }
@@ -85,11 +126,15 @@ public class Prestec implements Serializable {
         return dataRetornReal;
     }
 
+    /**
+     * També marca el préstec com a inactiu i l'exemplar com a disponible, si
+     * està carregat: un proxy sense inicialitzar no es toca
+     */
     public void setDataRetornReal(LocalDate dataRetornReal) {
         this.dataRetornReal = dataRetornReal;
         if (dataRetornReal != null) {
             this.actiu = false;
-            if (this.exemplar != null) {
+            if (this.exemplar != null && Hibernate.isInitialized(this.exemplar)) {
                 this.exemplar.setDisponible(true);
             }
         }
@@ -105,53 +150,60 @@ public class Prestec implements Serializable {
 
     // Helper methods
     public boolean estaRetardat() {
-        if (!actiu) return false;
-        LocalDate dataActual = LocalDate.now();
-        return dataActual.isAfter(dataRetornPrevista);
+        return estaRetardat(LocalDate.now());
+    }
+
+    /**
+     * Amb una data de referència fixa, per processar molts préstecs amb el mateix criteri
+     */
+    public boolean estaRetardat(LocalDate dataReferencia) {
+        return actiu && dataReferencia.isAfter(dataRetornPrevista);
     }
 
     public long getDiesRetard() {
-        if (!estaRetardat()) return 0;
-        LocalDate dataActual = LocalDate.now();
-        return ChronoUnit.DAYS.between(dataRetornPrevista, dataActual);
+        return getDiesRetard(LocalDate.now());
+    }
+
+    public long getDiesRetard(LocalDate dataReferencia) {
+        if (!estaRetardat(dataReferencia)) return 0;
+        return ChronoUnit.DAYS.between(dataRetornPrevista, dataReferencia);
     }
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Prestec[id=%d", prestecId));
-        
+        Descripcio d = Descripcio.de("Prestec", prestecId);
         if (exemplar != null) {
-            sb.append(String.format(", exemplar='%s'", exemplar.getCodiBarres()));
+            if (Descripcio.carregat(exemplar)) {
+                d.text("exemplar", exemplar.getCodiBarres());
+            } else {
+                d.valor("exemplarId", exemplar.getExemplarId());
+            }
         }
-        
         if (persona != null) {
-            sb.append(String.format(", persona='%s'", persona.getNom()));
-        }
-        
-        sb.append(String.format(", dataPrestec='%s'", dataPrestec));
-        sb.append(String.format(", dataRetornPrevista='%s'", dataRetornPrevista));
-        
-        if (dataRetornReal != null) {
-            sb.append(String.format(", dataRetornReal='%s'", dataRetornReal));
+            if (Descripcio.carregat(persona)) {
+                d.text("persona", persona.getNom());
+            } else {
+                d.valor("personaId", persona.getPersonaId());
+            }
         }
-        
-        sb.append(String.format(", actiu=%s", actiu));
-        
-        if (estaRetardat()) {
-            sb.append(String.format(", diesRetard=%d", getDiesRetard()));
+        d.data("dataPrestec", dataPrestec)
+            .data("dataRetornPrevista", dataRetornPrevista)
+            .data("dataRetornReal", dataRetornReal)
+            .valor("actiu", actiu);
+        // Només els préstecs actius poden tenir retard: així no cal LocalDate.now() per als retornats
+        long diesRetard = actiu ? getDiesRetard() : 0;
+        if (diesRetard > 0) {
+            d.valor("diesRetard", diesRetard);
         }
-        
-        sb.append("]");
-        return sb.toString();
+        return d.fi();
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (o == null || Hibernate.getClassLazy(this) != Hibernate.getClassLazy(o)) return false;
         Prestec prestec = (Prestec) o;
-        return prestecId == prestec.prestecId;
+        return getPrestecId() == prestec.getPrestecId();
     }
 
     @Override
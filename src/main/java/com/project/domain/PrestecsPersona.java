@@ -0,0 +1,62 @@
+package com.project.domain;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Nombre de préstecs actius d'una persona, mantingut pel Manager a la
+ * mateixa transacció que els préstecs i els retorns. És una taula a part de
+ * persones perquè les actualitzacions en bloc del comptador no invalidin la
+ * regió de cache de Persona.
+ */
+@Entity
+@Table(name = "prestecs_persones")
+public class PrestecsPersona implements Serializable {
+    @Id
+    private long personaId;
+
+    private long actius;
+
+    // Constructors
+    public PrestecsPersona() {}
+
+    public PrestecsPersona(long personaId, long actius) {
+        this.personaId = personaId;
+        this.actius = actius;
+    }
+
+    // Getters and Setters
+    public long getPersonaId() {
+        return personaId;
+    }
+
+    public void setPersonaId(long personaId) {
+        this.personaId = personaId;
+    }
+
+    public long getActius() {
+        return actius;
+    }
+
+    public void setActius(long actius) {
+        this.actius = actius;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PrestecsPersona[persona=%d, actius=%d]", personaId, actius);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PrestecsPersona prestecs = (PrestecsPersona) o;
+        return personaId == prestecs.personaId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(personaId);
+    }
+}
@@ -0,0 +1,160 @@
+package com.project.domain;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Activitat d'un dia d'un llibre, comptant tots els seus exemplars: préstecs
+ * començats, retorns, retorns amb retard i la suma dels dies de retard
+ * d'aquests, i préstecs en retard aquell dia. El Manager la manté a la
+ * mateixa transacció que els préstecs i els retorns, i ReconstruccioResums
+ * la construeix a partir de l'historial. L'historial d'un llibre és llegir
+ * una fila per dia amb activitat en lloc de recórrer els préstecs dels seus
+ * exemplars.
+ */
+@Entity
+@Table(name = "resums_diaris_llibres", indexes = {
+    // Historial d'un llibre per dies
+    @Index(name = "idx_resums_diaris_llibre", columnList = "llibre_id, dia")
+})
+@IdClass(ResumDiariLlibre.Clau.class)
+public class ResumDiariLlibre implements Serializable {
+    @Id
+    private LocalDate dia;
+
+    @Id
+    @Column(name = "llibre_id")
+    private long llibreId;
+
+    private long prestecs;
+
+    private long retorns;
+
+    private long retornsAmbRetard;
+
+    private long diesRetard;
+
+    // Préstecs que aquell dia ja havien passat la data prevista sense
+    // retornar; només dels dies tancats (fins a ahir)
+    private long prestecsEnRetard;
+
+    // Constructors
+    public ResumDiariLlibre() {}
+
+    public ResumDiariLlibre(LocalDate dia, long llibreId, long prestecs, long retorns, long retornsAmbRetard,
+            long diesRetard, long prestecsEnRetard) {
+        this.dia = dia;
+        this.llibreId = llibreId;
+        this.prestecs = prestecs;
+        this.retorns = retorns;
+        this.retornsAmbRetard = retornsAmbRetard;
+        this.diesRetard = diesRetard;
+        this.prestecsEnRetard = prestecsEnRetard;
+    }
+
+    // Getters and Setters
+    public LocalDate getDia() {
+        return dia;
+    }
+
+    public void setDia(LocalDate dia) {
+        this.dia = dia;
+    }
+
+    public long getLlibreId() {
+        return llibreId;
+    }
+
+    public void setLlibreId(long llibreId) {
+        this.llibreId = llibreId;
+    }
+
+    public long getPrestecs() {
+        return prestecs;
+    }
+
+    public void setPrestecs(long prestecs) {
+        this.prestecs = prestecs;
+    }
+
+    public long getRetorns() {
+        return retorns;
+    }
+
+    public void setRetorns(long retorns) {
+        this.retorns = retorns;
+    }
+
+    public long getRetornsAmbRetard() {
+        return retornsAmbRetard;
+    }
+
+    public void setRetornsAmbRetard(long retornsAmbRetard) {
+        this.retornsAmbRetard = retornsAmbRetard;
+    }
+
+    public long getDiesRetard() {
+        return diesRetard;
+    }
+
+    public void setDiesRetard(long diesRetard) {
+        this.diesRetard = diesRetard;
+    }
+
+    public long getPrestecsEnRetard() {
+        return prestecsEnRetard;
+    }
+
+    public void setPrestecsEnRetard(long prestecsEnRetard) {
+        this.prestecsEnRetard = prestecsEnRetard;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ResumDiariLlibre[dia=%s, llibre=%d, prestecs=%d, retorns=%d (amb retard=%d, dies=%d), " +
+            "en retard=%d]", dia, llibreId, prestecs, retorns, retornsAmbRetard, diesRetard, prestecsEnRetard);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ResumDiariLlibre resum = (ResumDiariLlibre) o;
+        return llibreId == resum.llibreId && Objects.equals(dia, resum.dia);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dia, llibreId);
+    }
+
+    /**
+     * Clau primària: dia i llibre
+     */
+    public static class Clau implements Serializable {
+        private LocalDate dia;
+        private long llibreId;
+
+        public Clau() {}
+
+        public Clau(LocalDate dia, long llibreId) {
+            this.dia = dia;
+            this.llibreId = llibreId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Clau clau = (Clau) o;
+            return llibreId == clau.llibreId && Objects.equals(dia, clau.dia);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dia, llibreId);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.project.domain;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Sanció per retard d'un préstec calculada en una data de referència.
+ * Cada préstec té com a molt una sanció per data de referència (a SQLite
+ * l'índex únic el crea IndexosSqlite).
+ */
+@Entity
+@Table(name = "sancions",
+    uniqueConstraints = @UniqueConstraint(name = "uk_sancions_prestec_data", columnNames = {"prestec_id", "dataReferencia"}),
+    indexes = @Index(name = "idx_sancions_persona", columnList = "persona_id, dataReferencia"))
+public class Sancio implements Serializable {
+    @Id
+    @IdPoolat
+    private long sancioId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "prestec_id", nullable = false)
+    private Prestec prestec;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "persona_id", nullable = false)
+    private Persona persona;
+
+    @Column(nullable = false)
+    private LocalDate dataReferencia;
+
+    private long diesRetard;
+
+    @Column(nullable = false, precision = 10, scale = 2)
+    private BigDecimal quantia;
+
+    // Constructors
+    public Sancio() {}
+
+    public Sancio(Prestec prestec, Persona persona, LocalDate dataReferencia, long diesRetard, BigDecimal quantia) {
+        this.prestec = prestec;
+        this.persona = persona;
+        this.dataReferencia = dataReferencia;
+        this.diesRetard = diesRetard;
+        this.quantia = quantia;
+    }
+
+    // Getters and Setters
+    public long getSancioId() {
+        return sancioId;
+    }
+
+    public void setSancioId(long sancioId) {
+        this.sancioId = sancioId;
+    }
+
+    public Prestec getPrestec() {
+        return prestec;
+    }
+
+    public void setPrestec(Prestec prestec) {
+        this.prestec = prestec;
+    }
+
+    public Persona getPersona() {
+        return persona;
+    }
+
+    public void setPersona(Persona persona) {
+        this.persona = persona;
+    }
+
+    public LocalDate getDataReferencia() {
+        return dataReferencia;
+    }
+
+    public void setDataReferencia(LocalDate dataReferencia) {
+        this.dataReferencia = dataReferencia;
+    }
+
+    public long getDiesRetard() {
+        return diesRetard;
+    }
+
+    public void setDiesRetard(long diesRetard) {
+        this.diesRetard = diesRetard;
+    }
+
+    public BigDecimal getQuantia() {
+        return quantia;
+    }
+
+    public void setQuantia(BigDecimal quantia) {
+        this.quantia = quantia;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Sancio[id=%d, dataReferencia='%s', diesRetard=%d, quantia=%s]",
+            sancioId, dataReferencia, diesRetard, quantia);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Sancio sancio = (Sancio) o;
+        return sancioId == sancio.sancioId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(sancioId);
+    }
+}